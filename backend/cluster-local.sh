@@ -0,0 +1,114 @@
+#!/bin/bash
+# Local scaling check for partitioned crawls. For each cluster size it starts that many
+# backend processes against one H2 file database, runs a partitioned crawl of a synthetic
+# site and prints the pages fetched per second once the crawl has warmed up.
+#
+# The site spreads its pages over HOSTS loopback addresses (127.0.0.x), so per-host
+# politeness is never the limit. Each node is capped at FETCH_SLOTS concurrent fetches
+# instead, which makes one node the bottleneck the way CPU or bandwidth would in production;
+# with the hosts split between nodes, throughput should grow about linearly with the nodes.
+#
+# Usage: ./cluster-local.sh [node counts...]    (default: 1 2 4)
+# Needs java 21, python3 and curl; builds the jar with mvn if target/ has none.
+
+set -euo pipefail
+cd "$(dirname "$0")"
+
+COUNTS=${*:-1 2 4}
+HOSTS=${HOSTS:-200}
+FETCH_SLOTS=${FETCH_SLOTS:-16}
+LATENCY_MS=${LATENCY_MS:-50}
+WARMUP_SECONDS=${WARMUP_SECONDS:-15}
+MEASURE_SECONDS=${MEASURE_SECONDS:-30}
+SITE_PORT=${SITE_PORT:-8900}
+BASE_PORT=${BASE_PORT:-8081}
+export CLUSTER_WORK=${CLUSTER_WORK:-/tmp/crawler-cluster}
+export CLUSTER_DB=$CLUSTER_WORK/db
+
+JAR=$(ls target/*.jar 2>/dev/null | grep -v '\.original$' | head -1 || true)
+if [ -z "$JAR" ]; then
+    mvn -q -DskipTests package
+    JAR=$(ls target/*.jar | grep -v '\.original$' | head -1)
+fi
+
+PIDS=()
+cleanup() {
+    for pid in "${PIDS[@]}"; do
+        kill "$pid" 2>/dev/null || true
+    done
+    wait 2>/dev/null || true
+}
+trap cleanup EXIT
+
+# Synthetic site: every page links to 20 pages on random loopback hosts, after LATENCY_MS.
+python3 - "$SITE_PORT" "$HOSTS" "$LATENCY_MS" <<'PY' &
+import random, sys, time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+port, hosts, latency = int(sys.argv[1]), int(sys.argv[2]), int(sys.argv[3]) / 1000
+
+class Page(BaseHTTPRequestHandler):
+    def do_GET(self):
+        if self.path == "/robots.txt":
+            self.send_error(404)
+            return
+        time.sleep(latency)
+        links = "".join('<a href="http://127.0.0.%d:%d/p/%d">p</a>\n'
+                        % (random.randint(1, hosts), port, random.getrandbits(40)) for _ in range(20))
+        body = ("<html><head><title>%s</title></head><body>%s</body></html>" % (self.path, links)).encode()
+        self.send_response(200)
+        self.send_header("Content-Type", "text/html")
+        self.send_header("Content-Length", str(len(body)))
+        self.end_headers()
+        self.wfile.write(body)
+
+    def log_message(self, *args):
+        pass
+
+ThreadingHTTPServer.daemon_threads = True
+ThreadingHTTPServer(("0.0.0.0", port), Page).serve_forever()
+PY
+PIDS+=($!)
+
+json() {
+    python3 -c "import json,sys; print(json.load(sys.stdin)$1)"
+}
+
+for count in $COUNTS; do
+    rm -rf "$CLUSTER_WORK"
+    mkdir -p "$CLUSTER_WORK"
+    nodes=()
+    for i in $(seq 1 "$count"); do
+        port=$((BASE_PORT + i - 1))
+        java -jar "$JAR" --spring.profiles.active=cluster --server.port="$port" \
+            --crawler.lease.node-id="node-$i" --crawler.fair.fetch-slots="$FETCH_SLOTS" \
+            --crawler.max-pages=100000000 --crawler.lease.heartbeat-ms=2000 \
+            > "$CLUSTER_WORK/node-$i.log" 2>&1 &
+        nodes+=($!)
+        PIDS+=($!)
+        # H2's AUTO_SERVER needs the first process to own the file before the others start.
+        until curl -sf "http://localhost:$port/api/crawl/health" > /dev/null; do sleep 1; done
+    done
+
+    api="http://localhost:$BASE_PORT/api"
+    curl -sf -H 'Content-Type: application/json' -d '{"username":"bench","email":"bench@example.com","password":"benchpass"}' \
+        "$api/auth/signup" > /dev/null || true
+    token=$(curl -sf -H 'Content-Type: application/json' -d '{"username":"bench","password":"benchpass"}' \
+        "$api/auth/login" | json '["token"]')
+    auth="Authorization: Bearer $token"
+    job=$(curl -sf -H "$auth" -H 'Content-Type: application/json' \
+        -d "{\"url\":\"http://127.0.0.1:$SITE_PORT/\",\"maxDepth\":10,\"speed\":\"fast\",\"partitioned\":true}" \
+        "$api/crawl/start" | json '["jobId"]')
+
+    sleep "$WARMUP_SECONDS"
+    before=$(curl -sf -H "$auth" "$api/crawl/live?jobId=$job" | json '["pagesVisited"]')
+    sleep "$MEASURE_SECONDS"
+    after=$(curl -sf -H "$auth" "$api/crawl/live?jobId=$job" | json '["pagesVisited"]')
+    echo "nodes=$count pages/s=$(( (after - before) / MEASURE_SECONDS ))"
+
+    curl -sf -X POST -H "$auth" "$api/crawl/$job/cancel" > /dev/null || true
+    for pid in "${nodes[@]}"; do
+        kill "$pid" 2>/dev/null || true
+        wait "$pid" 2>/dev/null || true
+    done
+done
@@ -1,21 +1,28 @@
 package com.example.crawler.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
 
 @Configuration
 @EnableAsync
+@EnableScheduling
 public class AsyncConfig {
 
+    /**
+     * One driver thread per running job. CrawlService admits QUEUED jobs from the database
+     * only while a thread is free, so the queue here stays empty.
+     */
     @Bean(name = "crawlExecutor")
-    public Executor crawlExecutor() {
+    public Executor crawlExecutor(@Value("${crawler.fair.max-active-jobs:4}") int maxActiveJobs) {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(2);
-        executor.setMaxPoolSize(4);
+        executor.setCorePoolSize(maxActiveJobs);
+        executor.setMaxPoolSize(maxActiveJobs);
         executor.setQueueCapacity(100);
         executor.setThreadNamePrefix("crawl-");
         executor.initialize();
@@ -0,0 +1,117 @@
+package com.example.crawler.config;
+
+import com.example.crawler.crawl.CachingDnsResolver;
+import com.example.crawler.crawl.FairShare;
+import com.example.crawler.crawl.FetchMetrics;
+import com.example.crawler.crawl.MeteredHttpClient;
+import com.example.crawler.crawl.RobotsCache;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.net.ssl.SSLContext;
+import java.net.http.HttpClient;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class CrawlerConfig {
+
+    @Value("${crawler.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${crawler.http.keepalive-seconds:60}")
+    private int keepAliveSeconds;
+
+    @Value("${crawler.http.pool-size:10000}")
+    private int poolSize;
+
+    @Value("${crawler.dns.ttl-seconds:300}")
+    private long dnsTtlSeconds;
+
+    @Value("${crawler.dns.negative-ttl-seconds:60}")
+    private long dnsNegativeTtlSeconds;
+
+    @Value("${crawler.dns.max-entries:100000}")
+    private int dnsMaxEntries;
+
+    @Value("${crawler.request-timeout-ms:10000}")
+    private long requestTimeoutMs;
+
+    @Value("${crawler.user-agent:WebCrawlBackend/0.0.1}")
+    private String userAgent;
+
+    @Value("${crawler.robots.cache-size:10000}")
+    private int robotsCacheSize;
+
+    @Value("${crawler.robots.ttl-minutes:1440}")
+    private long robotsTtlMinutes;
+
+    @Value("${crawler.fair.fetch-slots:512}")
+    private int fairFetchSlots;
+
+    @Value("${crawler.fair.quantum-ms:1000}")
+    private long fairQuantumMs;
+
+    /**
+     * Concurrent fetches across all jobs, shared between them by deficit round-robin.
+     */
+    @Bean
+    public FairShare fairShare() {
+        return new FairShare(fairFetchSlots, fairQuantumMs);
+    }
+
+    @Bean
+    public FetchMetrics fetchMetrics() {
+        return new FetchMetrics();
+    }
+
+    /**
+     * Shared client for all crawl jobs. Its internal executor runs on virtual threads so
+     * response handling never competes with the platform threads of crawlExecutor.
+     * Redirects are not followed: the crawl engine queues the Location like any other link
+     * so every hop is deduplicated, scoped and recorded with its own status.
+     * <p>
+     * Connections are kept alive and reused; HTTP/2 is negotiated via ALPN where the origin
+     * offers it, so concurrent requests to that host share one multiplexed connection. The
+     * JDK pool has no per-host limit of its own, but HostScheduler never runs more than the
+     * preset's maxConnections requests per host, which bounds the idle connections per host
+     * to the same number. The pool-wide bound and keep-alive timeout are JDK system properties
+     * read once when the first client is built, so they are set here unless given on the
+     * command line.
+     */
+    @Bean(name = "crawlHttpClient")
+    public HttpClient crawlHttpClient(FetchMetrics fetchMetrics) throws NoSuchAlgorithmException {
+        setIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(keepAliveSeconds));
+        setIfAbsent("jdk.httpclient.keepalive.timeout.h2", String.valueOf(keepAliveSeconds));
+        setIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(poolSize));
+        CachingDnsResolver.configure(Duration.ofSeconds(dnsTtlSeconds),
+                Duration.ofSeconds(dnsNegativeTtlSeconds), dnsMaxEntries);
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .sslContext(fetchMetrics.countingContext(SSLContext.getDefault()))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        return new MeteredHttpClient(client, fetchMetrics);
+    }
+
+    /**
+     * robots.txt rules shared by every job in this JVM, so each origin is fetched once per TTL.
+     */
+    @Bean
+    public RobotsCache robotsCache(@Qualifier("crawlHttpClient") HttpClient crawlHttpClient) {
+        return new RobotsCache(crawlHttpClient, userAgent, robotsCacheSize,
+                Duration.ofMinutes(robotsTtlMinutes), Duration.ofMillis(requestTimeoutMs));
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+}
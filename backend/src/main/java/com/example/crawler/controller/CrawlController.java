@@ -1,11 +1,15 @@
 package com.example.crawler.controller;
 
+import com.example.crawler.crawl.FetchMetrics;
+import com.example.crawler.crawl.PageMetadata;
 import com.example.crawler.model.*;
 import com.example.crawler.service.CrawlService;
+import com.example.crawler.service.PageGraph;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.security.Principal;
 import java.util.List;
 import java.util.Map;
 
@@ -25,11 +29,39 @@ public class CrawlController {
      * Returns: basic job info you can use in the frontend.
      */
     @PostMapping("/start")
-    public ResponseEntity<CrawlJobStatus> start(@Valid @RequestBody CrawlRequest request) {
-        CrawlJobStatus status = crawlService.startCrawl(request);
+    public ResponseEntity<CrawlJobStatus> start(@Valid @RequestBody CrawlRequest request, Principal principal) {
+        CrawlJobStatus status = crawlService.startCrawl(request, principal != null ? principal.getName() : null);
         return ResponseEntity.ok(status);
     }
 
+    /**
+     * POST /api/crawl/{jobId}/pause
+     * Stops the job's fetches and keeps its checkpoint for a later resume. 403 unless the
+     * caller started the job, as for resume and cancel.
+     */
+    @PostMapping("/{jobId}/pause")
+    public ResponseEntity<CrawlJobStatus> pause(@PathVariable String jobId, Principal principal) throws InterruptedException {
+        return ResponseEntity.ok(crawlService.pauseCrawl(jobId, principal != null ? principal.getName() : null));
+    }
+
+    /**
+     * POST /api/crawl/{jobId}/resume
+     * Continues a paused job.
+     */
+    @PostMapping("/{jobId}/resume")
+    public ResponseEntity<CrawlJobStatus> resume(@PathVariable String jobId, Principal principal) {
+        return ResponseEntity.ok(crawlService.resumeCrawl(jobId, principal != null ? principal.getName() : null));
+    }
+
+    /**
+     * POST /api/crawl/{jobId}/cancel
+     * Stops the job for good and drops its queued work.
+     */
+    @PostMapping("/{jobId}/cancel")
+    public ResponseEntity<CrawlJobStatus> cancel(@PathVariable String jobId, Principal principal) throws InterruptedException {
+        return ResponseEntity.ok(crawlService.cancelCrawl(jobId, principal != null ? principal.getName() : null));
+    }
+
     /**
      * GET /api/crawl/summary
      * Returns: high-level numbers for the dashboard.
@@ -58,12 +90,31 @@ public class CrawlController {
     }
 
     /**
-     * GET /api/crawl/graph?jobId=...
-     * Returns: nodes + links for the graph view.
+     * GET /api/crawl/page-metadata?jobId=...&url=...
+     * Returns: title, description, robots, canonical, hreflang and og:* of a fetched page,
+     * or 404 if the page was not fetched or declared none.
+     */
+    @GetMapping("/page-metadata")
+    public ResponseEntity<PageMetadata> pageMetadata(@RequestParam(required = false) String jobId,
+                                                     @RequestParam String url) {
+        return ResponseEntity.of(crawlService.getPageMetadata(jobId, url));
+    }
+
+    /**
+     * GET /api/crawl/graph?jobId=...&focus=...&hops=...&groupBy=host|path&depth=...&viewport=...&limit=...
+     * Returns: positioned nodes + links for the graph view; the neighborhood of page
+     * {@code focus}, pages collapsed by host or path prefix, the most linked pages inside
+     * {@code viewport} (minX,minY,maxX,maxY), or else the most linked pages, at most {@code limit}.
      */
     @GetMapping("/graph")
-    public ResponseEntity<GraphResponse> graph(@RequestParam(required = false) String jobId) {
-        return ResponseEntity.ok(crawlService.getGraph(jobId));
+    public ResponseEntity<GraphResponse> graph(@RequestParam(required = false) String jobId,
+                                               @RequestParam(required = false) Integer focus,
+                                               @RequestParam(defaultValue = "1") int hops,
+                                               @RequestParam(required = false) String groupBy,
+                                               @RequestParam(defaultValue = "1") int depth,
+                                               @RequestParam(required = false) double[] viewport,
+                                               @RequestParam(defaultValue = "0") int limit) {
+        return ResponseEntity.ok(crawlService.getGraph(jobId, new PageGraph.View(focus, hops, groupBy, depth, viewport, limit)));
     }
 
     /**
@@ -75,6 +126,15 @@ public class CrawlController {
         return ResponseEntity.ok(crawlService.getAnalytics(jobId));
     }
 
+    /**
+     * GET /api/crawl/fetch-stats
+     * Returns: connection reuse rate, HTTP/2 share and DNS cache counters of the fetch layer.
+     */
+    @GetMapping("/fetch-stats")
+    public ResponseEntity<FetchMetrics.Snapshot> fetchStats() {
+        return ResponseEntity.ok(crawlService.getFetchStats());
+    }
+
     /**
      * Simple health endpoint the frontend can hit if needed.
      */
@@ -0,0 +1,25 @@
+package com.example.crawler.crawl;
+
+/**
+ * Tuning of the per-host additive-increase / multiplicative-decrease controller in
+ * {@link HostScheduler}.
+ *
+ * @param enabled        adapt at all; when false every host keeps its preset budget
+ * @param window         fetch results per evaluation
+ * @param latencyFactor  a window is degraded when its p90 latency exceeds the host's
+ *                       baseline p90 by this factor
+ * @param maxErrorRate   a window is degraded when more than this share of fetches failed
+ *                       with 5xx, 429, a timeout or a connection error
+ * @param maxDelayFactor how far the request spacing may be stretched beyond the preset
+ *                       once concurrency is already down to one
+ */
+public record AimdPolicy(boolean enabled, int window, double latencyFactor, double maxErrorRate, int maxDelayFactor) {
+
+    public static final AimdPolicy DISABLED = new AimdPolicy(false, 20, 2.0, 0.05, 16);
+
+    public AimdPolicy {
+        if (window < 1 || latencyFactor < 1 || maxErrorRate < 0 || maxDelayFactor < 1) {
+            throw new IllegalArgumentException("Invalid adaptive concurrency settings");
+        }
+    }
+}
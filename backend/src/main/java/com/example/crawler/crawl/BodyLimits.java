@@ -0,0 +1,57 @@
+package com.example.crawler.crawl;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-MIME-type caps on how many decoded body bytes the fetcher reads for parsing.
+ * Types without a cap are not parsed at all and are classified from their headers alone.
+ * Configured as {@code type/subtype=bytes} pairs separated by commas; {@code type/*}
+ * covers a whole top-level type.
+ */
+public final class BodyLimits {
+
+    private final Map<String, Long> caps;
+
+    private BodyLimits(Map<String, Long> caps) {
+        this.caps = caps;
+    }
+
+    public static BodyLimits parse(String spec) {
+        Map<String, Long> caps = new HashMap<>();
+        for (String entry : spec.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int eq = entry.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Body limit must be type/subtype=bytes: " + entry.trim());
+            }
+            String type = entry.substring(0, eq).trim().toLowerCase(Locale.ROOT);
+            try {
+                caps.put(type, Long.parseLong(entry.substring(eq + 1).trim()));
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Body limit must be a byte count: " + entry.trim());
+            }
+        }
+        return new BodyLimits(Map.copyOf(caps));
+    }
+
+    /**
+     * Byte cap for a Content-Type header value, or 0 if bodies of that type are not parsed.
+     */
+    public long capFor(String contentType) {
+        if (contentType == null) {
+            return 0;
+        }
+        int semicolon = contentType.indexOf(';');
+        String mime = (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim().toLowerCase(Locale.ROOT);
+        Long cap = caps.get(mime);
+        if (cap == null) {
+            int slash = mime.indexOf('/');
+            cap = slash > 0 ? caps.get(mime.substring(0, slash) + "/*") : null;
+        }
+        return cap == null ? 0 : Math.max(0, cap);
+    }
+}
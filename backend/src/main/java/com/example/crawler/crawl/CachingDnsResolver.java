@@ -0,0 +1,164 @@
+package com.example.crawler.crawl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.net.spi.InetAddressResolver;
+import java.net.spi.InetAddressResolverProvider;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * JVM-wide DNS cache installed through the {@link InetAddressResolverProvider} SPI
+ * (registered in {@code META-INF/services}), so every lookup the HttpClient makes goes
+ * through it.
+ * <p>
+ * Successful lookups are kept for {@code ttl} and failures ({@link UnknownHostException})
+ * for {@code negativeTtl}, so a crawl full of dead links does not hammer the resolver.
+ * Concurrent misses for the same name share one lookup. The cache is bounded: once it
+ * holds {@code maxEntries} names, expired entries are purged and, if that is not enough,
+ * the whole cache is dropped.
+ * <p>
+ * The provider is created by the JDK, not by Spring, so settings arrive through
+ * {@link #configure}; until then defaults apply.
+ */
+public final class CachingDnsResolver extends InetAddressResolverProvider {
+
+    private static volatile long ttlNanos = Duration.ofMinutes(5).toNanos();
+    private static volatile long negativeTtlNanos = Duration.ofMinutes(1).toNanos();
+    private static volatile int maxEntries = 100_000;
+
+    private static final ConcurrentHashMap<String, Entry> CACHE = new ConcurrentHashMap<>();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder NEGATIVE_HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    public static void configure(Duration ttl, Duration negativeTtl, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("DNS cache size must be positive");
+        }
+        CachingDnsResolver.ttlNanos = ttl.toNanos();
+        CachingDnsResolver.negativeTtlNanos = negativeTtl.toNanos();
+        CachingDnsResolver.maxEntries = maxEntries;
+    }
+
+    /**
+     * Lookups answered from a cached address list.
+     */
+    public static long hits() {
+        return HITS.sum();
+    }
+
+    /**
+     * Lookups answered from a cached failure.
+     */
+    public static long negativeHits() {
+        return NEGATIVE_HITS.sum();
+    }
+
+    /**
+     * Lookups that went to the system resolver.
+     */
+    public static long misses() {
+        return MISSES.sum();
+    }
+
+    @Override
+    public InetAddressResolver get(Configuration configuration) {
+        return new Resolver(configuration.builtinResolver());
+    }
+
+    @Override
+    public String name() {
+        return "crawler-caching-dns";
+    }
+
+    // Package-private so tests can put it in front of a stub resolver.
+    static final class Resolver implements InetAddressResolver {
+        private final InetAddressResolver builtin;
+
+        Resolver(InetAddressResolver builtin) {
+            this.builtin = builtin;
+        }
+
+        @Override
+        public Stream<InetAddress> lookupByName(String host, LookupPolicy policy) throws UnknownHostException {
+            String key = policy.characteristics() + "|" + host;
+            Entry entry = CACHE.get(key);
+            if (entry != null && entry.result.isDone() && entry.expiresAt - System.nanoTime() <= 0) {
+                CACHE.remove(key, entry);
+                entry = null;
+            }
+            boolean owner = false;
+            if (entry == null) {
+                Entry fresh = new Entry();
+                entry = CACHE.putIfAbsent(key, fresh);
+                if (entry == null) {
+                    entry = fresh;
+                    owner = true;
+                    MISSES.increment();
+                    resolve(host, policy, fresh);
+                    trim();
+                }
+            }
+            try {
+                List<InetAddress> addresses = entry.result.get();
+                if (!owner) {
+                    HITS.increment();
+                }
+                return addresses.stream();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof UnknownHostException unknown) {
+                    if (!owner) {
+                        NEGATIVE_HITS.increment();
+                    }
+                    throw new UnknownHostException(unknown.getMessage());
+                }
+                throw new UnknownHostException(host + ": " + ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new UnknownHostException(host + ": interrupted");
+            }
+        }
+
+        @Override
+        public String lookupByAddress(byte[] addr) throws UnknownHostException {
+            return builtin.lookupByAddress(addr);
+        }
+
+        private void resolve(String host, LookupPolicy policy, Entry entry) {
+            try {
+                List<InetAddress> addresses = builtin.lookupByName(host, policy).toList();
+                entry.expiresAt = System.nanoTime() + ttlNanos;
+                entry.result.complete(addresses);
+            } catch (UnknownHostException ex) {
+                entry.expiresAt = System.nanoTime() + negativeTtlNanos;
+                entry.result.completeExceptionally(ex);
+            } catch (RuntimeException ex) {
+                // not a DNS answer; don't cache it
+                entry.expiresAt = System.nanoTime();
+                entry.result.completeExceptionally(ex);
+            }
+        }
+
+        private void trim() {
+            if (CACHE.size() <= maxEntries) {
+                return;
+            }
+            long now = System.nanoTime();
+            CACHE.values().removeIf(e -> e.result.isDone() && e.expiresAt - now <= 0);
+            if (CACHE.size() > maxEntries) {
+                CACHE.clear();
+            }
+        }
+    }
+
+    private static final class Entry {
+        final CompletableFuture<List<InetAddress>> result = new CompletableFuture<>();
+        volatile long expiresAt;
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.crawler.crawl;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Push-mode decoder for {@code Content-Encoding: gzip} and {@code deflate} bodies.
+ * <p>
+ * Compressed chunks go in as they arrive and decoded bytes come out through a single
+ * reusable output buffer, so memory per fetch stays at one {@link Inflater} plus
+ * {@value #OUTPUT_BYTES} bytes however large the body is. The caller enforces its byte cap
+ * on the decoded side, which also defuses compression bombs.
+ * <p>
+ * gzip trailers (CRC and length) are not verified; a corrupt body just yields garbage text
+ * to the HTML scanner, which tolerates it.
+ */
+public final class ContentDecoder {
+
+    /**
+     * Encodings the fetcher advertises in {@code Accept-Encoding}.
+     */
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int OUTPUT_BYTES = 16 * 1024;
+    private static final int GZIP_FEXTRA = 4;
+    private static final int GZIP_FNAME = 8;
+    private static final int GZIP_FCOMMENT = 16;
+    private static final int GZIP_FHCRC = 2;
+
+    private final boolean gzip;
+    private Inflater inflater;
+    private final byte[] output = new byte[OUTPUT_BYTES];
+    private final ByteBuffer outputView = ByteBuffer.wrap(output);
+
+    // gzip header parsing state; the header may be split across chunks.
+    private static final int H_FIXED = 0;
+    private static final int H_XLEN = 1;
+    private static final int H_EXTRA = 2;
+    private static final int H_NAME = 3;
+    private static final int H_COMMENT = 4;
+    private static final int H_CRC = 5;
+    private static final int H_DONE = 6;
+
+    private int headerState;
+    private int headerCount;
+    private int flags;
+    private int extraRemaining;
+    private boolean headerDone;
+
+    /**
+     * Receives decoded bytes; returns false to stop decoding the rest of the chunk.
+     */
+    public interface Sink {
+        boolean accept(ByteBuffer decoded);
+    }
+
+    private ContentDecoder(boolean gzip) {
+        this.gzip = gzip;
+        this.headerDone = !gzip;
+    }
+
+    /**
+     * Decoder for a Content-Encoding value, or null for identity.
+     *
+     * @throws IllegalArgumentException for encodings that were not advertised
+     */
+    public static ContentDecoder forEncoding(String contentEncoding) {
+        if (contentEncoding == null) {
+            return null;
+        }
+        String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        return switch (encoding) {
+            case "", "identity" -> null;
+            case "gzip", "x-gzip" -> new ContentDecoder(true);
+            case "deflate" -> new ContentDecoder(false);
+            default -> throw new IllegalArgumentException("Unsupported Content-Encoding: " + contentEncoding);
+        };
+    }
+
+    /**
+     * Decode one compressed chunk, handing decoded slices to {@code sink}. The slice is only
+     * valid during the callback.
+     */
+    public void decode(ByteBuffer chunk, Sink sink) {
+        if (!headerDone) {
+            skipGzipHeader(chunk);
+            if (!headerDone) {
+                return;
+            }
+        }
+        if (inflater == null) {
+            if (!chunk.hasRemaining()) {
+                return;
+            }
+            inflater = new Inflater(gzip || !looksLikeZlib(chunk));
+        }
+        if (inflater.finished()) {
+            chunk.position(chunk.limit());
+            return;
+        }
+        inflater.setInput(chunk);
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(output);
+                if (n > 0) {
+                    outputView.clear().limit(n);
+                    if (!sink.accept(outputView)) {
+                        break;
+                    }
+                } else if (inflater.needsInput() || inflater.needsDictionary()) {
+                    break;
+                }
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Corrupt " + (gzip ? "gzip" : "deflate") + " body", ex);
+        }
+        // Anything after the end of the stream (gzip trailer) is ignored.
+        chunk.position(chunk.limit());
+    }
+
+    /**
+     * Release the native inflater. Safe to call more than once.
+     */
+    public void end() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    // "deflate" is meant to be zlib-wrapped, but some servers send raw deflate. A zlib
+    // header is CM=8 with a check value that makes the first two bytes a multiple of 31.
+    private static boolean looksLikeZlib(ByteBuffer chunk) {
+        if (chunk.remaining() < 2) {
+            return true;
+        }
+        int cmf = chunk.get(chunk.position()) & 0xff;
+        int flg = chunk.get(chunk.position() + 1) & 0xff;
+        return (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    // Consume the gzip member header: 10 fixed bytes plus optional extra, name, comment, CRC.
+    private void skipGzipHeader(ByteBuffer chunk) {
+        while (headerState != H_DONE && chunk.hasRemaining()) {
+            int b = chunk.get() & 0xff;
+            switch (headerState) {
+                case H_FIXED -> {
+                    if ((headerCount == 0 && b != 0x1f) || (headerCount == 1 && b != 0x8b) || (headerCount == 2 && b != 8)) {
+                        throw new IllegalStateException("Not a gzip body");
+                    }
+                    if (headerCount == 3) {
+                        flags = b;
+                    }
+                    if (++headerCount == 10) {
+                        nextHeaderField(H_FIXED);
+                    }
+                }
+                case H_XLEN -> {
+                    extraRemaining |= b << (8 * headerCount);
+                    if (++headerCount == 2) {
+                        if (extraRemaining > 0) {
+                            headerState = H_EXTRA;
+                        } else {
+                            nextHeaderField(H_EXTRA);
+                        }
+                    }
+                }
+                case H_EXTRA -> {
+                    if (--extraRemaining == 0) {
+                        nextHeaderField(H_EXTRA);
+                    }
+                }
+                case H_NAME, H_COMMENT -> {
+                    if (b == 0) {
+                        nextHeaderField(headerState);
+                    }
+                }
+                case H_CRC -> {
+                    if (++headerCount == 2) {
+                        nextHeaderField(H_CRC);
+                    }
+                }
+                default -> throw new IllegalStateException();
+            }
+        }
+        headerDone = headerState == H_DONE;
+    }
+
+    // Move to the first optional header field after {@code done} that the flags announce.
+    private void nextHeaderField(int done) {
+        headerCount = 0;
+        int next = done + 1;
+        if (next == H_XLEN && (flags & GZIP_FEXTRA) == 0) {
+            next = H_NAME;
+        }
+        if (next == H_NAME && (flags & GZIP_FNAME) == 0) {
+            next = H_COMMENT;
+        }
+        if (next == H_COMMENT && (flags & GZIP_FCOMMENT) == 0) {
+            next = H_CRC;
+        }
+        if (next == H_CRC && (flags & GZIP_FHCRC) == 0) {
+            next = H_DONE;
+        }
+        headerState = next;
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.crawler.crawl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only checkpoint log of one crawl job, from which {@link #replay} rebuilds the
+ * seen-set and the frontier after a restart.
+ * <p>
+ * Three record types are written:
+ * <ul>
+ *   <li>{@code P fingerprint depth id url}: the URL passed the seen check and was queued
+ *   under page id {@code id}; journals written before page ids have {@code Q fingerprint
+ *   depth url} instead, and their URLs get fresh ids on replay</li>
+ *   <li>{@code D fingerprint}: the URL reached its final outcome</li>
+ *   <li>{@code C responses totalResponseMs}: the run's response-time counters</li>
+ * </ul>
+ * A page's {@code D} is written only after the {@code P}s of its outlinks, so every prefix
+ * of the log describes a consistent crawl state. Replaying a log that was cut off by a crash
+ * therefore just re-fetches the last few pages.
+ * <p>
+ * Workers append to an in-memory buffer under a short lock. {@link #checkpoint} swaps that
+ * buffer for an empty one and then writes and forces the full one without holding the lock,
+ * so the crawl never waits for the disk.
+ */
+public final class CrawlJournal implements Closeable {
+
+    private static final byte QUEUED_WITHOUT_ID = 'Q';
+    private static final byte QUEUED = 'P';
+    private static final byte DONE = 'D';
+    private static final byte COUNTERS = 'C';
+
+    private final FileChannel channel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(64 * 1024);
+    private DataOutputStream out = new DataOutputStream(pending);
+
+    /**
+     * State rebuilt by {@link #replay}.
+     *
+     * @param queued          URLs put back into the frontier
+     * @param done            URLs that had already been finished
+     * @param responses       response-time samples recorded by the last checkpoint
+     * @param totalResponseMs their sum
+     */
+    public record Recovered(long queued, long done, long responses, long totalResponseMs) {
+    }
+
+    /**
+     * Open {@code file} for appending, creating it if needed.
+     */
+    public CrawlJournal(Path file) {
+        try {
+            Files.createDirectories(file.getParent());
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot open crawl journal " + file, ex);
+        }
+    }
+
+    public void queued(long fingerprint, int id, CrawlTask task) {
+        byte[] url = task.url().getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            out.writeByte(QUEUED);
+            out.writeLong(fingerprint);
+            out.writeByte(task.depth());
+            out.writeInt(id);
+            out.writeInt(url.length);
+            out.write(url);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void done(long fingerprint) {
+        lock.lock();
+        try {
+            out.writeByte(DONE);
+            out.writeLong(fingerprint);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Append the counters and make everything recorded so far durable.
+     */
+    public void checkpoint(long responses, long totalResponseMs) {
+        writeLock.lock();
+        try {
+            ByteArrayOutputStream full;
+            lock.lock();
+            try {
+                out.writeByte(COUNTERS);
+                out.writeLong(responses);
+                out.writeLong(totalResponseMs);
+                full = pending;
+                pending = new ByteArrayOutputStream(Math.max(64 * 1024, full.size()));
+                out = new DataOutputStream(pending);
+            } finally {
+                lock.unlock();
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(full.toByteArray());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Crawl journal write failed", ex);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Write out what is buffered and close the file. The journal stays on disk.
+     */
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            byte[] rest;
+            lock.lock();
+            try {
+                rest = pending.toByteArray();
+                pending.reset();
+            } finally {
+                lock.unlock();
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(rest);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+            channel.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Crawl journal close failed", ex);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Rebuild a run from {@code file}: every queued fingerprint goes into {@code seen} and
+     * {@code ids}, every queued but unfinished URL back into {@code frontier}. A torn record
+     * at the end of the file is cut off, so the journal can be reopened for appending afterwards.
+     */
+    public static Recovered replay(Path file, SeenUrlSet seen, PageIds ids, DiskFrontier frontier,
+                                   long expectedUrls) throws IOException {
+        // First pass: which URLs were finished, and where the last complete record ends.
+        SeenUrlSet done = new SeenUrlSet(expectedUrls);
+        long doneCount = 0;
+        long responses = 0;
+        long totalResponseMs = 0;
+        long validBytes = 0;
+        try (CountingInput in = new CountingInput(Files.newInputStream(file))) {
+            DataInputStream data = new DataInputStream(in);
+            while (true) {
+                try {
+                    byte type = data.readByte();
+                    switch (type) {
+                        case QUEUED, QUEUED_WITHOUT_ID -> {
+                            data.readLong();
+                            data.readByte();
+                            if (type == QUEUED) {
+                                data.readInt();
+                            }
+                            data.skipNBytes(data.readInt());
+                        }
+                        case DONE -> {
+                            if (done.add(data.readLong())) {
+                                doneCount++;
+                            }
+                        }
+                        case COUNTERS -> {
+                            responses = data.readLong();
+                            totalResponseMs = data.readLong();
+                        }
+                        default -> throw new EOFException("Unknown journal record " + type);
+                    }
+                    validBytes = in.count;
+                } catch (EOFException ex) {
+                    break;
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(validBytes);
+        }
+        // Second pass: restore the seen-set and requeue the unfinished URLs in their original order.
+        long queued = 0;
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] url = new byte[256];
+            while (true) {
+                byte type;
+                try {
+                    type = data.readByte();
+                } catch (EOFException ex) {
+                    break;
+                }
+                switch (type) {
+                    case QUEUED, QUEUED_WITHOUT_ID -> {
+                        long fingerprint = data.readLong();
+                        int depth = data.readByte();
+                        if (type == QUEUED) {
+                            ids.adopt(fingerprint, data.readInt());
+                        } else {
+                            ids.assign(fingerprint);
+                        }
+                        int length = data.readInt();
+                        if (url.length < length) {
+                            url = new byte[Math.max(length, url.length * 2)];
+                        }
+                        data.readFully(url, 0, length);
+                        if (seen.add(fingerprint) && !done.contains(fingerprint)) {
+                            frontier.add(CrawlTask.of(new String(url, 0, length, StandardCharsets.UTF_8), depth));
+                            queued++;
+                        }
+                    }
+                    case DONE -> data.readLong();
+                    default -> data.skipNBytes(2L * Long.BYTES);
+                }
+            }
+        }
+        return new Recovered(queued, doneCount, responses, totalResponseMs);
+    }
+
+    public static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    // Tracks how many bytes have been consumed, to find the end of the last complete record.
+    private static final class CountingInput extends BufferedInputStream {
+        long count;
+
+        CountingInput(InputStream in) {
+            super(in, 64 * 1024);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.crawler.crawl;
+
+/**
+ * A single canonical URL waiting to be fetched, together with its host (the politeness key)
+ * and the BFS depth it was discovered at. The seed URL is depth 0. {@code attempt} counts
+ * the retries that led to this task; fresh tasks start at 0.
+ */
+public record CrawlTask(String url, String host, int depth, int attempt) {
+
+    public CrawlTask(String url, String host, int depth) {
+        this(url, host, depth, 0);
+    }
+
+    public static CrawlTask of(String canonicalUrl, int depth) {
+        return new CrawlTask(canonicalUrl, UrlCanonicalizer.hostOf(canonicalUrl), depth);
+    }
+
+    /**
+     * The same URL, one attempt later.
+     */
+    public CrawlTask retry() {
+        return new CrawlTask(url, host, depth, attempt + 1);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.crawler.crawl;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Body subscriber for responses that are classified from their headers alone. Small bodies
+ * are read and dropped so an HTTP/1.1 connection stays reusable; anything larger than
+ * {@code drainBytes}, known up front from Content-Length or discovered while draining,
+ * cancels the transfer instead. Nothing is buffered. Completes with 0.
+ */
+public final class DiscardingBodySubscriber implements HttpResponse.BodySubscriber<Long> {
+
+    private final long drainBytes;
+    private final long contentLength;
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private long drained;
+
+    /**
+     * @param contentLength declared body length, or -1 if unknown
+     */
+    public DiscardingBodySubscriber(long contentLength, long drainBytes) {
+        this.contentLength = contentLength;
+        this.drainBytes = drainBytes;
+    }
+
+    @Override
+    public CompletionStage<Long> getBody() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (contentLength > drainBytes) {
+            subscription.cancel();
+            result.complete(0L);
+        } else {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> chunks) {
+        for (ByteBuffer chunk : chunks) {
+            drained += chunk.remaining();
+        }
+        if (drained > drainBytes) {
+            subscription.cancel();
+            result.complete(0L);
+        } else {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        // The body was never wanted; a broken transfer doesn't fail the fetch.
+        result.complete(0L);
+    }
+
+    @Override
+    public void onComplete() {
+        result.complete(0L);
+    }
+}
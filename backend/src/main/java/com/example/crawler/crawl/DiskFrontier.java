@@ -0,0 +1,277 @@
+package com.example.crawler.crawl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.stream.Stream;
+
+/**
+ * URL frontier that keeps only a small head buffer per depth level on the heap and spills
+ * everything else to append-only segment files, read back through {@link MappedByteBuffer}.
+ * <p>
+ * Each level is FIFO: the head holds the oldest tasks, older segments come next and newly
+ * discovered URLs are appended to the tail segment. Heap use is therefore bounded by
+ * {@code levels * headCapacity} tasks plus one write buffer per level, no matter how many
+ * URLs are queued. Fully consumed segments are deleted.
+ * <p>
+ * Not thread-safe; the owning {@code CrawlRun} serializes access.
+ */
+public final class DiskFrontier implements Closeable {
+
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+    private final Path dir;
+    private final int headCapacity;
+    private final long segmentBytes;
+    private final Level[] levels;
+    private int segmentSeq;
+
+    public DiskFrontier(Path dir, int levelCount, int headCapacity, long segmentBytes) {
+        this.dir = dir;
+        this.headCapacity = headCapacity;
+        this.segmentBytes = segmentBytes;
+        this.levels = new Level[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            levels[i] = new Level(i);
+        }
+        try {
+            Files.createDirectories(dir);
+            // Segments left behind by a process that died mid-crawl; a resumed job rebuilds
+            // its frontier from the crawl journal instead.
+            try (Stream<Path> stale = Files.list(dir)) {
+                stale.forEach(DiskFrontier::deleteQuietly);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot create frontier directory " + dir, ex);
+        }
+    }
+
+    public void add(CrawlTask task) {
+        try {
+            levels[task.depth()].add(task);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Frontier write failed", ex);
+        }
+    }
+
+    /**
+     * Remove and return the oldest task of the shallowest non-empty level, or null.
+     */
+    public CrawlTask poll() {
+        try {
+            for (Level level : levels) {
+                CrawlTask task = level.poll();
+                if (task != null) {
+                    return task;
+                }
+            }
+            return null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Frontier read failed", ex);
+        }
+    }
+
+    /**
+     * Queued task count, derived from the write and read positions of every level.
+     */
+    public long size() {
+        long size = 0;
+        for (Level level : levels) {
+            size += level.appended - level.consumed;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Bytes currently held in segment files.
+     */
+    public long diskBytes() {
+        long bytes = 0;
+        for (Level level : levels) {
+            for (Segment segment : level.segments) {
+                bytes += segment.length - segment.readPos;
+            }
+            if (level.writeBuffer != null) {
+                bytes += level.writeBuffer.position();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Close every segment and delete the frontier directory.
+     */
+    @Override
+    public void close() {
+        for (Level level : levels) {
+            level.closeAll();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(DiskFrontier::deleteQuietly);
+        } catch (IOException ignored) {
+            // directory already gone
+        }
+        deleteQuietly(dir);
+    }
+
+    private Segment newSegment(int depth) throws IOException {
+        Path path = dir.resolve("level-%02d-%06d.seg".formatted(depth, segmentSeq++));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(path, channel);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            // a mapped segment may still be open on some platforms; the OS cleans up temp files
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    private final class Level {
+        final int depth;
+        final ArrayDeque<CrawlTask> head = new ArrayDeque<>();
+        final ArrayDeque<Segment> segments = new ArrayDeque<>();
+        ByteBuffer writeBuffer;
+        byte[] scratch = new byte[256];
+        long appended;
+        long consumed;
+        // Tasks that went to disk and have not been read back yet.
+        long spilled;
+
+        Level(int depth) {
+            this.depth = depth;
+        }
+
+        void add(CrawlTask task) throws IOException {
+            appended++;
+            if (spilled == 0 && head.size() < headCapacity) {
+                head.addLast(task);
+                return;
+            }
+            byte[] bytes = task.url().getBytes(StandardCharsets.UTF_8);
+            if (writeBuffer == null) {
+                writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+            }
+            if (writeBuffer.remaining() < Integer.BYTES + bytes.length) {
+                flush();
+            }
+            if (Integer.BYTES + bytes.length > writeBuffer.capacity()) {
+                ByteBuffer large = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+                large.putInt(bytes.length).put(bytes).flip();
+                write(large);
+            } else {
+                writeBuffer.putInt(bytes.length).put(bytes);
+            }
+            spilled++;
+        }
+
+        CrawlTask poll() throws IOException {
+            if (head.isEmpty() && spilled > 0) {
+                refill();
+            }
+            CrawlTask task = head.pollFirst();
+            if (task != null) {
+                consumed++;
+            }
+            return task;
+        }
+
+        // Pull up to headCapacity tasks back from the oldest segments.
+        private void refill() throws IOException {
+            flush();
+            while (head.size() < headCapacity && spilled > 0) {
+                Segment segment = segments.peekFirst();
+                if (segment.readMap == null) {
+                    segment.seal();
+                }
+                MappedByteBuffer map = segment.readMap;
+                while (head.size() < headCapacity && map.hasRemaining()) {
+                    int length = map.getInt();
+                    if (scratch.length < length) {
+                        scratch = new byte[Math.max(length, scratch.length * 2)];
+                    }
+                    map.get(scratch, 0, length);
+                    String url = new String(scratch, 0, length, StandardCharsets.UTF_8);
+                    head.addLast(CrawlTask.of(url, depth));
+                    spilled--;
+                }
+                segment.readPos = map.position();
+                if (!map.hasRemaining()) {
+                    segments.pollFirst();
+                    segment.close();
+                    deleteQuietly(segment.path);
+                }
+            }
+        }
+
+        private void flush() throws IOException {
+            if (writeBuffer == null || writeBuffer.position() == 0) {
+                return;
+            }
+            writeBuffer.flip();
+            write(writeBuffer);
+            writeBuffer.clear();
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            Segment tail = segments.peekLast();
+            if (tail == null || tail.readMap != null || tail.length >= segmentBytes) {
+                tail = newSegment(depth);
+                segments.addLast(tail);
+            }
+            while (buffer.hasRemaining()) {
+                tail.length += tail.channel.write(buffer, tail.length);
+            }
+        }
+
+        void closeAll() {
+            for (Segment segment : segments) {
+                segment.close();
+            }
+            segments.clear();
+            head.clear();
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final FileChannel channel;
+        long length;
+        long readPos;
+        MappedByteBuffer readMap;
+
+        Segment(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        // Stop appending to this segment and map it for reading.
+        void seal() throws IOException {
+            readMap = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+
+        void close() {
+            readMap = null;
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // nothing left to release
+            }
+        }
+    }
+}
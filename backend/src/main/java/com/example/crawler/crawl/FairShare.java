@@ -0,0 +1,187 @@
+package com.example.crawler.crawl;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shares a fixed number of fetch slots between running jobs with deficit round-robin.
+ * <p>
+ * Each job is a flow, and every registered flow sits in a ring. The flow at the front is
+ * served while it is waiting for a slot and has credit. A flow that isn't waiting is skipped.
+ * Once a flow's credit runs out it gets a fresh quantum and moves to the back. Flows keep
+ * their place in the ring between requests: a job's driver asks for one slot at a time, so
+ * its queue is empty for a moment after every grant. Credit never exceeds one quantum,
+ * so an idle flow cannot bank a burst.
+ * <p>
+ * A slot's cost is the wall time it was held, covering fetch and parse together, so a job
+ * whose pages are slow or heavy gets fewer slots. Since that cost is only known on release,
+ * each grant is charged the flow's average cost up front and corrected on release.
+ * <p>
+ * Quanta are weighted by owner: a flow's weight is one divided by the number of running jobs
+ * of the same user. Every user therefore gets an equal share, split evenly among that user's
+ * jobs. A flow that has just become active starts with a full quantum, so a small job is
+ * served at the next free slot however big the other jobs are.
+ */
+public final class FairShare {
+
+    private final long quantumNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Flow> flows = new HashMap<>();
+    private final Map<String, Integer> jobsPerUser = new HashMap<>();
+    private final ArrayDeque<Flow> ring = new ArrayDeque<>();
+    private int free;
+
+    public FairShare(int slots, long quantumMs) {
+        if (slots < 1 || quantumMs < 1) {
+            throw new IllegalArgumentException("Fair share needs at least one slot and a positive quantum");
+        }
+        this.free = slots;
+        this.quantumNanos = TimeUnit.MILLISECONDS.toNanos(quantumMs);
+    }
+
+    /**
+     * Start sharing slots with {@code jobId}, owned by {@code user}.
+     */
+    public void register(String jobId, String user) {
+        lock.lock();
+        try {
+            if (flows.containsKey(jobId)) {
+                return;
+            }
+            Flow flow = new Flow(user, lock.newCondition());
+            flow.averageCost = quantumNanos / 8;
+            flows.put(jobId, flow);
+            jobsPerUser.merge(user, 1, Integer::sum);
+            flow.deficit = quantum(flow);
+            ring.addLast(flow);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop sharing with a job. Its slots must all have been released.
+     */
+    public void unregister(String jobId) {
+        lock.lock();
+        try {
+            Flow flow = flows.remove(jobId);
+            if (flow == null) {
+                return;
+            }
+            jobsPerUser.computeIfPresent(flow.user, (user, jobs) -> jobs > 1 ? jobs - 1 : null);
+            ring.remove(flow);
+            free += flow.grants;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Block until the job is granted a slot. Every successful call must be paired with a
+     * {@link #release}.
+     */
+    public void acquire(String jobId) throws InterruptedException {
+        lock.lock();
+        try {
+            Flow flow = flows.get(jobId);
+            if (flow == null) {
+                throw new IllegalStateException("Job " + jobId + " is not registered");
+            }
+            flow.waiting++;
+            dispatch();
+            try {
+                while (flow.grants == 0) {
+                    flow.granted.await();
+                }
+                flow.grants--;
+            } catch (InterruptedException ex) {
+                flow.waiting--;
+                // A grant may have raced with the interrupt; hand it on.
+                free += flow.grants;
+                flow.grants = 0;
+                dispatch();
+                throw ex;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give back a slot that was held for {@code heldNanos}.
+     */
+    public void release(String jobId, long heldNanos) {
+        lock.lock();
+        try {
+            free++;
+            Flow flow = flows.get(jobId);
+            if (flow != null) {
+                flow.deficit = Math.min(quantum(flow), flow.deficit - (heldNanos - flow.averageCost));
+                flow.averageCost += (heldNanos - flow.averageCost) / 8;
+            }
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Slots not held by any job right now.
+     */
+    public int freeSlots() {
+        lock.lock();
+        try {
+            return free;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long quantum(Flow flow) {
+        return quantumNanos / jobsPerUser.getOrDefault(flow.user, 1);
+    }
+
+    // Hand free slots to waiting flows in ring order. Caller holds the lock.
+    private void dispatch() {
+        int idle = 0;
+        while (free > 0 && idle < ring.size()) {
+            Flow flow = ring.peekFirst();
+            if (flow.waiting == 0) {
+                ring.addLast(ring.pollFirst());
+                idle++;
+                continue;
+            }
+            if (flow.deficit <= 0) {
+                flow.deficit += quantum(flow);
+                ring.addLast(ring.pollFirst());
+                continue;
+            }
+            flow.deficit -= flow.averageCost;
+            flow.waiting--;
+            flow.grants++;
+            free--;
+            idle = 0;
+            flow.granted.signal();
+        }
+    }
+
+    private static final class Flow {
+        final String user;
+        final Condition granted;
+        long deficit;
+        long averageCost;
+        int waiting;
+        int grants;
+
+        Flow(String user, Condition granted) {
+            this.user = user;
+            this.granted = granted;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.crawler.crawl;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.net.http.HttpClient;
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection-level counters for the shared crawl HttpClient.
+ * <p>
+ * The client opens exactly one {@link SSLEngine} per new TLS connection, so wrapping its
+ * {@link SSLContext} with {@link #countingContext} counts connections rather than requests.
+ * Together with the per-response counts kept by {@link MeteredHttpClient} this yields the
+ * connection reuse rate for HTTPS, covering both HTTP/1.1 keep-alive and HTTP/2 streams.
+ */
+public final class FetchMetrics {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder httpsRequests = new LongAdder();
+    private final LongAdder http2Responses = new LongAdder();
+    private final LongAdder tlsConnections = new LongAdder();
+
+    public record Snapshot(long requests,
+                           long httpsRequests,
+                           long http2Responses,
+                           long tlsConnections,
+                           double connectionReuseRate,
+                           long dnsHits,
+                           long dnsNegativeHits,
+                           long dnsMisses) {
+    }
+
+    /**
+     * An SSLContext that behaves like {@code delegate} but counts every engine it creates.
+     */
+    public SSLContext countingContext(SSLContext delegate) {
+        return new CountingContext(delegate, tlsConnections);
+    }
+
+    void recordResponse(boolean https, HttpClient.Version version) {
+        requests.increment();
+        if (https) {
+            httpsRequests.increment();
+        }
+        if (version == HttpClient.Version.HTTP_2) {
+            http2Responses.increment();
+        }
+    }
+
+    public Snapshot snapshot() {
+        long https = httpsRequests.sum();
+        long connections = tlsConnections.sum();
+        double reuse = https == 0 ? 0 : Math.max(0, 1 - (double) connections / https);
+        return new Snapshot(requests.sum(), https, http2Responses.sum(), connections, reuse,
+                CachingDnsResolver.hits(), CachingDnsResolver.negativeHits(), CachingDnsResolver.misses());
+    }
+
+    private static final class CountingContext extends SSLContext {
+        CountingContext(SSLContext delegate, LongAdder counter) {
+            super(new CountingSpi(delegate, counter), delegate.getProvider(), delegate.getProtocol());
+        }
+    }
+
+    private static final class CountingSpi extends SSLContextSpi {
+        private final SSLContext delegate;
+        private final LongAdder counter;
+
+        CountingSpi(SSLContext delegate, LongAdder counter) {
+            this.delegate = delegate;
+            this.counter = counter;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom random) throws KeyManagementException {
+            delegate.init(km, tm, random);
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            counter.increment();
+            return delegate.createSSLEngine();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            counter.increment();
+            return delegate.createSSLEngine(host, port);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
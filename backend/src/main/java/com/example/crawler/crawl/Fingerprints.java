@@ -0,0 +1,46 @@
+package com.example.crawler.crawl;
+
+/**
+ * Stable 64-bit fingerprints for URLs and other strings. FNV-1a over the UTF-16 code units,
+ * finished with the MurmurHash3 avalanche step so every output bit depends on every input bit
+ * (the seen-set takes stripe, slot and Bloom positions from different bit ranges).
+ */
+public final class Fingerprints {
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    private Fingerprints() {
+    }
+
+    public static long fingerprint64(CharSequence value) {
+        long hash = FNV_OFFSET;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Same value as {@link #fingerprint64(CharSequence)} over {@code chars[offset, offset + length)}.
+     */
+    public static long fingerprint64(char[] chars, int offset, int length) {
+        long hash = FNV_OFFSET;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = (hash ^ chars[i]) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * MurmurHash3 fmix64 finalizer.
+     */
+    public static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
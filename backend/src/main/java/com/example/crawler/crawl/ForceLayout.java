@@ -0,0 +1,383 @@
+package com.example.crawler.crawl;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Force-directed layout of a {@link GraphIndex}, Fruchterman-Reingold style: linked nodes pull
+ * together, all nodes push apart, and a weak pull to the origin keeps components together.
+ * <p>
+ * Repulsion is approximated with Barnes-Hut: each step builds a quadtree of the positions and
+ * a node far enough from a cell feels it as one body at its centre of mass, so a step costs
+ * O(n log n) instead of O(n²). The forces of a step are computed in parallel over ranges of
+ * nodes on a {@link ForkJoinPool}; the tree is only read while they are.
+ * <p>
+ * A layout may start from a previous layout of the same job, so a graph that grew keeps its
+ * shape: known pages keep their place and new ones start next to a linked neighbour. Positions
+ * are published every few steps and can be read while the layout is still running.
+ */
+public final class ForceLayout {
+
+    // Ideal distance between linked nodes, in layout units.
+    private static final double SPREAD = 30.0;
+    private static final double THETA = 0.9;
+    private static final double GRAVITY = 0.02;
+    private static final int PUBLISH_EVERY = 10;
+    private static final int SPLIT = 512;
+
+    private final GraphIndex graph;
+    private final int n;
+    private double[] x;
+    private double[] y;
+    private double[] nextX;
+    private double[] nextY;
+    private final int steps;
+    private double temperature;
+    private final double cooling;
+
+    private volatile float[] published;
+    private volatile boolean cancelled;
+
+    /**
+     * @param previous a layout of an earlier index of the same job, or null
+     * @param steps    steps for a layout from scratch; a layout mostly seeded from
+     *                 {@code previous} settles in a fifth of them
+     */
+    public ForceLayout(GraphIndex graph, ForceLayout previous, int steps) {
+        this.graph = graph;
+        this.n = graph.size();
+        this.x = new double[n];
+        this.y = new double[n];
+        this.nextX = new double[n];
+        this.nextY = new double[n];
+        int kept = seed(previous);
+        boolean settled = n > 0 && kept >= n / 2;
+        this.steps = settled ? Math.max(1, steps / 5) : steps;
+        // Far enough to untangle a fresh layout, gentle on one that only grew.
+        this.temperature = settled ? SPREAD * 2 : SPREAD * Math.sqrt(n + 1);
+        this.cooling = Math.pow(0.01, 1.0 / Math.max(1, this.steps));
+        publish();
+    }
+
+    public GraphIndex graph() {
+        return graph;
+    }
+
+    /**
+     * Run every step, or until cancelled, computing forces on {@code pool}.
+     */
+    public void run(ForkJoinPool pool) {
+        if (n == 0) {
+            return;
+        }
+        QuadTree tree = new QuadTree(n);
+        for (int step = 0; step < steps && !cancelled; step++) {
+            tree.build(x, y, n);
+            pool.invoke(new Step(tree, 0, n, temperature));
+            double[] swap = x;
+            x = nextX;
+            nextX = swap;
+            swap = y;
+            y = nextY;
+            nextY = swap;
+            temperature *= cooling;
+            if ((step + 1) % PUBLISH_EVERY == 0) {
+                publish();
+            }
+        }
+        publish();
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * The last published positions, x and y of node i at {@code 2i} and {@code 2i + 1}.
+     * Never modified once published.
+     */
+    public float[] positions() {
+        return published;
+    }
+
+    private void publish() {
+        float[] snapshot = new float[2 * n];
+        for (int i = 0; i < n; i++) {
+            snapshot[2 * i] = (float) x[i];
+            snapshot[2 * i + 1] = (float) y[i];
+        }
+        published = snapshot;
+    }
+
+    // Place every node; returns how many kept their position from the previous layout.
+    private int seed(ForceLayout previous) {
+        boolean[] placed = new boolean[n];
+        int kept = 0;
+        if (previous != null) {
+            float[] old = previous.published;
+            for (int i = 0; i < n; i++) {
+                int before = previous.graph.node(graph.pageId(i));
+                if (before >= 0) {
+                    x[i] = old[2 * before];
+                    y[i] = old[2 * before + 1];
+                    placed[i] = true;
+                    kept++;
+                }
+            }
+        }
+        SplittableRandom random = new SplittableRandom(n);
+        double radius = SPREAD * Math.sqrt(n + 1);
+        for (int i = 0; i < n; i++) {
+            if (placed[i]) {
+                continue;
+            }
+            int anchor = placedNeighbour(i, placed);
+            if (anchor >= 0) {
+                x[i] = x[anchor] + (random.nextDouble() - 0.5) * SPREAD;
+                y[i] = y[anchor] + (random.nextDouble() - 0.5) * SPREAD;
+            } else {
+                x[i] = (random.nextDouble() - 0.5) * 2 * radius;
+                y[i] = (random.nextDouble() - 0.5) * 2 * radius;
+            }
+            placed[i] = true;
+        }
+        return kept;
+    }
+
+    private int placedNeighbour(int node, boolean[] placed) {
+        for (int e = graph.outStart[node]; e < graph.outStart[node + 1]; e++) {
+            if (placed[graph.outEdges[e]]) {
+                return graph.outEdges[e];
+            }
+        }
+        for (int e = graph.inStart[node]; e < graph.inStart[node + 1]; e++) {
+            if (placed[graph.inEdges[e]]) {
+                return graph.inEdges[e];
+            }
+        }
+        return -1;
+    }
+
+    // Moves the nodes of [from, to) into nextX/nextY, splitting large ranges.
+    @SuppressWarnings("serial") // RecursiveAction is Serializable, but steps never leave the pool.
+    private final class Step extends RecursiveAction {
+
+        private final QuadTree tree;
+        private final int from;
+        private final int to;
+        private final double limit;
+
+        Step(QuadTree tree, int from, int to, double limit) {
+            this.tree = tree;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Step(tree, from, middle, limit), new Step(tree, middle, to, limit));
+                return;
+            }
+            int[] stack = new int[64];
+            for (int i = from; i < to; i++) {
+                double[] force = tree.repulsion(i, x[i], y[i], stack);
+                double fx = force[0] - GRAVITY * x[i];
+                double fy = force[1] - GRAVITY * y[i];
+                // A link pulls with d² / SPREAD, whichever way it points.
+                for (int e = graph.outStart[i]; e < graph.outStart[i + 1]; e++) {
+                    int j = graph.outEdges[e];
+                    double dx = x[i] - x[j];
+                    double dy = y[i] - y[j];
+                    double pull = Math.sqrt(dx * dx + dy * dy) / SPREAD;
+                    fx -= dx * pull;
+                    fy -= dy * pull;
+                }
+                for (int e = graph.inStart[i]; e < graph.inStart[i + 1]; e++) {
+                    int j = graph.inEdges[e];
+                    double dx = x[i] - x[j];
+                    double dy = y[i] - y[j];
+                    double pull = Math.sqrt(dx * dx + dy * dy) / SPREAD;
+                    fx -= dx * pull;
+                    fy -= dy * pull;
+                }
+                double length = Math.hypot(fx, fy);
+                double scale = length > limit ? limit / length : 1.0;
+                nextX[i] = x[i] + fx * scale;
+                nextY[i] = y[i] + fy * scale;
+            }
+        }
+    }
+
+    /**
+     * Quadtree over flat arrays, rebuilt in place every step. Cell 0 is the root; a cell's
+     * children are found through {@code child}, and its body is a node, or one of the markers
+     * below.
+     */
+    private static final class QuadTree {
+
+        private static final int EMPTY = -1;
+        private static final int INTERNAL = -2;
+        // A smallest cell holding several nodes, at practically the same position.
+        private static final int MERGED = -3;
+
+        private int[] child;
+        private int[] body;
+        private double[] mass;
+        private double[] sumX;
+        private double[] sumY;
+        private double[] minX;
+        private double[] minY;
+        private double[] size;
+        private int cells;
+        private double minSize;
+
+        QuadTree(int bodies) {
+            allocate(Math.max(16, bodies * 2));
+        }
+
+        void build(double[] x, double[] y, int n) {
+            double loX = Double.MAX_VALUE;
+            double loY = Double.MAX_VALUE;
+            double hiX = -Double.MAX_VALUE;
+            double hiY = -Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                loX = Math.min(loX, x[i]);
+                loY = Math.min(loY, y[i]);
+                hiX = Math.max(hiX, x[i]);
+                hiY = Math.max(hiY, y[i]);
+            }
+            double side = Math.max(hiX - loX, hiY - loY) + 1.0;
+            minSize = side * 1e-9;
+            cells = 0;
+            newCell(loX, loY, side);
+            for (int i = 0; i < n; i++) {
+                insert(i, x[i], y[i], x, y);
+            }
+        }
+
+        private void insert(int node, double px, double py, double[] x, double[] y) {
+            int cell = 0;
+            while (true) {
+                mass[cell]++;
+                sumX[cell] += px;
+                sumY[cell] += py;
+                int occupant = body[cell];
+                if (occupant == EMPTY) {
+                    body[cell] = node;
+                    return;
+                }
+                if (occupant == MERGED) {
+                    return;
+                }
+                if (occupant >= 0) {
+                    if (size[cell] < minSize) {
+                        body[cell] = MERGED;
+                        return;
+                    }
+                    body[cell] = INTERNAL;
+                    int moved = childFor(cell, x[occupant], y[occupant]);
+                    mass[moved] = 1;
+                    sumX[moved] = x[occupant];
+                    sumY[moved] = y[occupant];
+                    body[moved] = occupant;
+                }
+                cell = childFor(cell, px, py);
+            }
+        }
+
+        // The child of cell containing the point, created empty if missing.
+        private int childFor(int cell, double px, double py) {
+            double half = size[cell] / 2;
+            int east = px >= minX[cell] + half ? 1 : 0;
+            int south = py >= minY[cell] + half ? 1 : 0;
+            int slot = 4 * cell + 2 * south + east;
+            if (child[slot] == EMPTY) {
+                // newCell may grow the arrays, so the slot is written after it returns.
+                int created = newCell(minX[cell] + east * half, minY[cell] + south * half, half);
+                child[slot] = created;
+            }
+            return child[slot];
+        }
+
+        private int newCell(double x0, double y0, double side) {
+            if (cells == body.length) {
+                grow();
+            }
+            int cell = cells++;
+            Arrays.fill(child, 4 * cell, 4 * cell + 4, EMPTY);
+            body[cell] = EMPTY;
+            mass[cell] = 0;
+            sumX[cell] = 0;
+            sumY[cell] = 0;
+            minX[cell] = x0;
+            minY[cell] = y0;
+            size[cell] = side;
+            return cell;
+        }
+
+        /**
+         * Repulsion on a node at (px, py) from all the others, as {fx, fy}. Uses the caller's
+         * stack so concurrent callers share nothing but the tree.
+         */
+        double[] repulsion(int node, double px, double py, int[] stack) {
+            double fx = 0;
+            double fy = 0;
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int cell = stack[--top];
+                if (mass[cell] == 0 || body[cell] == node) {
+                    continue;
+                }
+                double dx = px - sumX[cell] / mass[cell];
+                double dy = py - sumY[cell] / mass[cell];
+                double d2 = dx * dx + dy * dy;
+                if (body[cell] != INTERNAL || size[cell] * size[cell] < THETA * THETA * d2) {
+                    if (d2 > 1e-9) {
+                        double push = mass[cell] * SPREAD * SPREAD / d2;
+                        fx += dx * push;
+                        fy += dy * push;
+                    }
+                    continue;
+                }
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                for (int q = 0; q < 4; q++) {
+                    if (child[4 * cell + q] != EMPTY) {
+                        stack[top++] = child[4 * cell + q];
+                    }
+                }
+            }
+            return new double[]{fx, fy};
+        }
+
+        private void allocate(int capacity) {
+            child = new int[4 * capacity];
+            body = new int[capacity];
+            mass = new double[capacity];
+            sumX = new double[capacity];
+            sumY = new double[capacity];
+            minX = new double[capacity];
+            minY = new double[capacity];
+            size = new double[capacity];
+        }
+
+        private void grow() {
+            int capacity = body.length * 2;
+            child = Arrays.copyOf(child, 4 * capacity);
+            body = Arrays.copyOf(body, capacity);
+            mass = Arrays.copyOf(mass, capacity);
+            sumX = Arrays.copyOf(sumX, capacity);
+            sumY = Arrays.copyOf(sumY, capacity);
+            minX = Arrays.copyOf(minX, capacity);
+            minY = Arrays.copyOf(minY, capacity);
+            size = Arrays.copyOf(size, capacity);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.example.crawler.crawl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Compact adjacency index of a job's link graph, from which level-of-detail views are cut.
+ * <p>
+ * Nodes are numbered {@code 0..size-1}; edges are kept twice in compressed sparse row form,
+ * by source and by target, so a node's out- and in-links are contiguous slices of one
+ * {@code int[]} each, and nodes are ranked by degree once. Views then only touch the nodes
+ * they return and those nodes' links; a grouping is aggregated on first use and kept with
+ * the index.
+ * <p>
+ * Immutable apart from that memo, and safe to share between request threads.
+ */
+public final class GraphIndex {
+
+    private final int[] pageIds;
+    private final String[] urls;
+    private final int[] depths;
+    private final int[] statusCodes;
+    private final int[] byPageId;
+    // Read directly by ForceLayout.
+    final int[] outStart;
+    final int[] outEdges;
+    final int[] inStart;
+    final int[] inEdges;
+    private final int[] byDegree;
+    private final Map<String, Grouping> groupings = new ConcurrentHashMap<>();
+
+    /**
+     * @param pageIds page id of each node; ids must be positive and unique
+     * @param pairs   edges as source/target page ids, laid out source, target, source, ...;
+     *                edges to unknown pages, self-links and repeats are dropped
+     * @param edges   number of pairs used from {@code pairs}
+     */
+    public GraphIndex(int[] pageIds, String[] urls, int[] depths, int[] statusCodes, int[] pairs, int edges) {
+        int n = pageIds.length;
+        this.pageIds = pageIds;
+        this.urls = urls;
+        this.depths = depths;
+        this.statusCodes = statusCodes;
+        int maxId = 0;
+        for (int id : pageIds) {
+            maxId = Math.max(maxId, id);
+        }
+        this.byPageId = new int[maxId + 1];
+        Arrays.fill(byPageId, -1);
+        for (int i = 0; i < n; i++) {
+            byPageId[pageIds[i]] = i;
+        }
+
+        long[] packed = new long[edges];
+        int count = 0;
+        for (int i = 0; i < edges; i++) {
+            int source = node(pairs[2 * i]);
+            int target = node(pairs[2 * i + 1]);
+            if (source >= 0 && target >= 0 && source != target) {
+                packed[count++] = (long) source << 32 | target;
+            }
+        }
+        Arrays.sort(packed, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || packed[i] != packed[unique - 1]) {
+                packed[unique++] = packed[i];
+            }
+        }
+
+        this.outStart = new int[n + 1];
+        this.inStart = new int[n + 1];
+        for (int i = 0; i < unique; i++) {
+            outStart[(int) (packed[i] >>> 32) + 1]++;
+            inStart[(int) packed[i] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            outStart[i + 1] += outStart[i];
+            inStart[i + 1] += inStart[i];
+        }
+        this.outEdges = new int[unique];
+        this.inEdges = new int[unique];
+        int[] inFill = Arrays.copyOf(inStart, n);
+        for (int i = 0; i < unique; i++) {
+            int source = (int) (packed[i] >>> 32);
+            int target = (int) packed[i];
+            // Sorted by source, so each source's slice fills in order.
+            outEdges[i] = target;
+            inEdges[inFill[target]++] = source;
+        }
+        this.byDegree = descending(n, this::degree);
+    }
+
+    public int size() {
+        return pageIds.length;
+    }
+
+    public int edgeCount() {
+        return outEdges.length;
+    }
+
+    /**
+     * The node of a page id, or -1 if the page is not in the graph.
+     */
+    public int node(int pageId) {
+        return pageId > 0 && pageId < byPageId.length ? byPageId[pageId] : -1;
+    }
+
+    public int pageId(int node) {
+        return pageIds[node];
+    }
+
+    public String url(int node) {
+        return urls[node];
+    }
+
+    public int depth(int node) {
+        return depths[node];
+    }
+
+    public int statusCode(int node) {
+        return statusCodes[node];
+    }
+
+    public int degree(int node) {
+        return outStart[node + 1] - outStart[node] + inStart[node + 1] - inStart[node];
+    }
+
+    /**
+     * Every node, in index order.
+     */
+    public int[] all() {
+        int[] nodes = new int[size()];
+        Arrays.setAll(nodes, i -> i);
+        return nodes;
+    }
+
+    /**
+     * The {@code k} nodes with the most links in and out, most linked first.
+     */
+    public int[] topByDegree(int k) {
+        return Arrays.copyOf(byDegree, Math.max(0, Math.min(k, byDegree.length)));
+    }
+
+    /**
+     * The {@code k} most linked nodes that {@code accept} lets through, most linked first.
+     */
+    public int[] topByDegree(int k, IntPredicate accept) {
+        int[] top = new int[Math.max(0, Math.min(k, byDegree.length))];
+        int count = 0;
+        for (int i = 0; i < byDegree.length && count < top.length; i++) {
+            if (accept.test(byDegree[i])) {
+                top[count++] = byDegree[i];
+            }
+        }
+        return Arrays.copyOf(top, count);
+    }
+
+    /**
+     * {@code center} and the nodes within {@code hops} links of it in either direction,
+     * nearest first, at most {@code limit} in all.
+     */
+    public int[] neighborhood(int center, int hops, int limit) {
+        int[] found = new int[Math.min(limit, size())];
+        if (found.length == 0) {
+            return found;
+        }
+        boolean[] seen = new boolean[size()];
+        found[0] = center;
+        seen[center] = true;
+        int count = 1;
+        int levelStart = 0;
+        for (int hop = 0; hop < hops && count < found.length && levelStart < count; hop++) {
+            int levelEnd = count;
+            for (int i = levelStart; i < levelEnd && count < found.length; i++) {
+                int node = found[i];
+                count = visit(outEdges, outStart[node], outStart[node + 1], seen, found, count);
+                count = visit(inEdges, inStart[node], inStart[node + 1], seen, found, count);
+            }
+            levelStart = levelEnd;
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * The links between the given nodes, laid out source, target, source, ...
+     */
+    public int[] linksAmong(int[] nodes) {
+        boolean[] member = new boolean[size()];
+        for (int node : nodes) {
+            member[node] = true;
+        }
+        int[] pairs = new int[64];
+        int count = 0;
+        for (int source : nodes) {
+            for (int e = outStart[source]; e < outStart[source + 1]; e++) {
+                if (member[outEdges[e]]) {
+                    if (count + 2 > pairs.length) {
+                        pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                    }
+                    pairs[count++] = source;
+                    pairs[count++] = outEdges[e];
+                }
+            }
+        }
+        return Arrays.copyOf(pairs, count);
+    }
+
+    /**
+     * Nodes collapsed by {@code key}, computed on first use and kept under {@code name}.
+     */
+    public Grouping grouping(String name, Function<String, String> key) {
+        return groupings.computeIfAbsent(name, unused -> new Grouping(this, key));
+    }
+
+    private static int visit(int[] edges, int from, int to, boolean[] seen, int[] found, int count) {
+        for (int e = from; e < to && count < found.length; e++) {
+            if (!seen[edges[e]]) {
+                seen[edges[e]] = true;
+                found[count++] = edges[e];
+            }
+        }
+        return count;
+    }
+
+    // 0..n-1 by descending weight, lower index first among equals; a counting sort, as
+    // weights are degrees and group sizes, bounded by the graph's size.
+    private static int[] descending(int n, IntUnaryOperator weight) {
+        int max = 0;
+        int[] weights = new int[n];
+        for (int i = 0; i < n; i++) {
+            weights[i] = weight.applyAsInt(i);
+            max = Math.max(max, weights[i]);
+        }
+        int[] start = new int[max + 2];
+        for (int w : weights) {
+            start[max - w + 1]++;
+        }
+        for (int i = 1; i < start.length; i++) {
+            start[i] += start[i - 1];
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[start[max - weights[i]]++] = i;
+        }
+        return order;
+    }
+
+    /**
+     * The graph with every node replaced by its group, and parallel links merged into one
+     * weighted link between groups.
+     */
+    public static final class Grouping {
+
+        private final String[] keys;
+        private final int[] groupOf;
+        private final int[] sizes;
+        private final int[] bySize;
+        // Group links sorted by source group, packed as source << 32 | target, with their weights.
+        private final long[] links;
+        private final int[] weights;
+
+        private Grouping(GraphIndex index, Function<String, String> key) {
+            int n = index.size();
+            Map<String, Integer> ids = new HashMap<>();
+            this.groupOf = new int[n];
+            for (int i = 0; i < n; i++) {
+                groupOf[i] = ids.computeIfAbsent(key.apply(index.url(i)), k -> ids.size());
+            }
+            this.keys = new String[ids.size()];
+            ids.forEach((k, id) -> keys[id] = k);
+            this.sizes = new int[keys.length];
+            for (int g : groupOf) {
+                sizes[g]++;
+            }
+            this.bySize = descending(keys.length, g -> sizes[g]);
+            long[] packed = new long[index.edgeCount()];
+            int count = 0;
+            for (int source = 0; source < n; source++) {
+                for (int e = index.outStart[source]; e < index.outStart[source + 1]; e++) {
+                    int from = groupOf[source];
+                    int to = groupOf[index.outEdges[e]];
+                    if (from != to) {
+                        packed[count++] = (long) from << 32 | to;
+                    }
+                }
+            }
+            Arrays.sort(packed, 0, count);
+            long[] merged = new long[count];
+            int[] mergedWeights = new int[count];
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                if (unique > 0 && merged[unique - 1] == packed[i]) {
+                    mergedWeights[unique - 1]++;
+                } else {
+                    merged[unique] = packed[i];
+                    mergedWeights[unique++] = 1;
+                }
+            }
+            this.links = Arrays.copyOf(merged, unique);
+            this.weights = Arrays.copyOf(mergedWeights, unique);
+        }
+
+        public int size() {
+            return keys.length;
+        }
+
+        public String key(int group) {
+            return keys[group];
+        }
+
+        public int members(int group) {
+            return sizes[group];
+        }
+
+        public int groupOf(int node) {
+            return groupOf[node];
+        }
+
+        /**
+         * The {@code k} largest groups, largest first.
+         */
+        public int[] largest(int k) {
+            return Arrays.copyOf(bySize, Math.max(0, Math.min(k, bySize.length)));
+        }
+
+        /**
+         * The weighted links between the given groups, laid out source, target, weight, ...
+         */
+        public int[] linksAmong(int[] groups) {
+            boolean[] member = new boolean[keys.length];
+            for (int g : groups) {
+                member[g] = true;
+            }
+            int[] triples = new int[64];
+            int count = 0;
+            for (int i = 0; i < links.length; i++) {
+                int from = (int) (links[i] >>> 32);
+                int to = (int) links[i];
+                if (member[from] && member[to]) {
+                    if (count + 3 > triples.length) {
+                        triples = Arrays.copyOf(triples, triples.length * 2);
+                    }
+                    triples[count++] = from;
+                    triples[count++] = to;
+                    triples[count++] = weights[i];
+                }
+            }
+            return Arrays.copyOf(triples, count);
+        }
+    }
+}
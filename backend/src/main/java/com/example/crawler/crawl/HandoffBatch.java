@@ -0,0 +1,74 @@
+package com.example.crawler.crawl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Wire format of the URLs one node hands to another: a count followed by
+ * {@code depth source id url-length url} per entry, deflated as a whole. URLs of one site
+ * share long prefixes, so a batch typically shrinks to a fifth of its size.
+ */
+public final class HandoffBatch {
+
+    private HandoffBatch() {
+    }
+
+    /**
+     * A handed-off task with its place in the link graph.
+     *
+     * @param source page id of the page that links to the task's URL, or -1 if the entry
+     *               only moves the task, such as after a ring change
+     * @param id     page id the sender already gave the URL, or -1 if it has none
+     */
+    public record Entry(CrawlTask task, int source, int id) {
+    }
+
+    public static byte[] encode(List<Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 32);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                byte[] url = entry.task().url().getBytes(StandardCharsets.UTF_8);
+                out.writeByte(entry.task().depth());
+                out.writeInt(entry.source());
+                out.writeInt(entry.id());
+                out.writeInt(url.length);
+                out.write(url);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<Entry> decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(payload)))) {
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int depth = in.readByte();
+                int source = in.readInt();
+                int id = in.readInt();
+                byte[] url = new byte[in.readInt()];
+                in.readFully(url);
+                entries.add(new Entry(CrawlTask.of(new String(url, StandardCharsets.UTF_8), depth), source, id));
+            }
+            return entries;
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Corrupt handoff batch", ex);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.crawler.crawl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Consistent-hash ring that maps hosts to the nodes crawling them.
+ * <p>
+ * Every node is placed on the ring {@code virtualNodes} times, and a host belongs to the
+ * first node point at or after the host's fingerprint. When a node joins or leaves, only
+ * the hosts between its points and their predecessors change owner, about {@code 1/n} of
+ * them, and each host keeps a single owner so its politeness state lives in one place.
+ * <p>
+ * Immutable; a membership change builds a new ring.
+ */
+public final class HashRing {
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final String[] owners;
+
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("A hash ring needs at least one node and one point per node");
+        }
+        this.nodes = List.copyOf(new TreeSet<>(nodes));
+        List<Point> ring = new ArrayList<>(this.nodes.size() * virtualNodes);
+        for (String node : this.nodes) {
+            for (int v = 0; v < virtualNodes; v++) {
+                ring.add(new Point(Fingerprints.fingerprint64(node + '#' + v), node));
+            }
+        }
+        ring.sort(Comparator.comparingLong(Point::hash).thenComparing(Point::node));
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        for (int i = 0; i < ring.size(); i++) {
+            points[i] = ring.get(i).hash();
+            owners[i] = ring.get(i).node();
+        }
+    }
+
+    /**
+     * The node that crawls {@code host}.
+     */
+    public String ownerOf(String host) {
+        int at = Arrays.binarySearch(points, Fingerprints.fingerprint64(host));
+        if (at < 0) {
+            at = -at - 1;
+            if (at == points.length) {
+                at = 0;
+            }
+        }
+        return owners[at];
+    }
+
+    /**
+     * Member node ids, sorted.
+     */
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public boolean contains(String node) {
+        return nodes.contains(node);
+    }
+
+    private record Point(long hash, String node) {
+    }
+}
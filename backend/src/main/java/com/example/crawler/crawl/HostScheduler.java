@@ -0,0 +1,438 @@
+package com.example.crawler.crawl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Per-host politeness scheduler. Every host owns a ready queue plus a connection budget,
+ * and a timer queue ordered by "next allowed start" hands out the next host that is due.
+ * <p>
+ * A host sits in the timer queue only while it has queued work and a free connection
+ * slot, so {@link #take()} sleeps exactly until the earliest host becomes due instead of
+ * polling hosts that aren't ready. Throughput therefore scales with the number of distinct
+ * hosts while each individual origin sees at most {@code maxConnections} concurrent
+ * requests spaced at least {@code minDelay} apart.
+ * <p>
+ * With an {@link AimdPolicy} enabled, each host's budget adapts to how it responds. Fetch
+ * results are reported through {@link #recordResult}, and every {@code window} results
+ * the host is judged on its p90 latency against its own baseline and on its failure rate.
+ * While healthy, its connection limit grows by one up to the preset's ceiling. When
+ * degraded, the limit halves; once it is down to one, the spacing between requests doubles
+ * instead, up to {@code maxDelayFactor} times the floor. Recovery undoes the spacing first.
+ * <p>
+ * Failed tasks come back through {@link #retry}, which holds them on a delay queue until
+ * their backoff has passed; no thread sleeps on their behalf. A host whose fetches keep
+ * failing trips its circuit breaker: the host is parked, meaning it stays off the timer
+ * queue until the breaker's open period ends. One probe task is then let through, and its
+ * outcome either closes the breaker or parks the host again for twice as long. Results of
+ * fetches that were already in flight when the breaker opened don't move it either way.
+ */
+public final class HostScheduler {
+
+    private final long defaultMinDelayNanos;
+    private final int defaultMaxConnections;
+    private final int connectionCeiling;
+    private final AimdPolicy aimd;
+    private final RetryPolicy retryPolicy;
+
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final PriorityQueue<HostQueue> timer =
+            new PriorityQueue<>(Comparator.comparingLong((HostQueue h) -> h.readyAt));
+    private final PriorityQueue<DelayedTask> delayed =
+            new PriorityQueue<>(Comparator.comparingLong(DelayedTask::dueAt));
+    private final Set<HostQueue> parkedHosts = new HashSet<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private int buffered;
+    private boolean closed;
+
+    public HostScheduler(SpeedPreset preset) {
+        this(preset, AimdPolicy.DISABLED, RetryPolicy.NONE);
+    }
+
+    public HostScheduler(SpeedPreset preset, AimdPolicy aimd, RetryPolicy retryPolicy) {
+        this.defaultMinDelayNanos = TimeUnit.MILLISECONDS.toNanos(preset.minDelayMs());
+        this.defaultMaxConnections = preset.maxConnections();
+        this.connectionCeiling = Math.max(preset.maxConnections(), preset.connectionCeiling());
+        this.aimd = aimd;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Append a task to its host's ready queue.
+     */
+    public void submit(CrawlTask task) {
+        lock.lock();
+        try {
+            HostQueue queue = hosts.computeIfAbsent(task.host(), this::newQueue);
+            queue.tasks.addLast(task);
+            buffered++;
+            schedule(queue);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue a task again once {@code delayNanos} have passed. It counts as buffered meanwhile.
+     */
+    public void retry(CrawlTask task, long delayNanos) {
+        lock.lock();
+        try {
+            delayed.add(new DelayedTask(System.nanoTime() + delayNanos, task));
+            buffered++;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Block until some host is due, then take its next task and charge one connection to it.
+     * The caller must hand the task back through {@link #release(CrawlTask)} when the fetch ends.
+     *
+     * @return the next task, or null once the scheduler has been closed
+     */
+    public CrawlTask take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!closed) {
+                long now = System.nanoTime();
+                promoteRetries(now);
+                HostQueue queue = timer.peek();
+                long wait = queue != null ? queue.readyAt - now : Long.MAX_VALUE;
+                if (!delayed.isEmpty()) {
+                    wait = Math.min(wait, delayed.peek().dueAt() - now);
+                }
+                if (wait == Long.MAX_VALUE) {
+                    changed.await();
+                    continue;
+                }
+                if (wait > 0) {
+                    changed.awaitNanos(wait);
+                    continue;
+                }
+                if (queue == null || queue.readyAt - now > 0) {
+                    continue;
+                }
+                timer.poll();
+                queue.scheduled = false;
+                CrawlTask task = queue.tasks.pollFirst();
+                buffered--;
+                queue.active++;
+                if (queue.parked) {
+                    queue.probe = task;
+                }
+                queue.readyAt = now + queue.minDelayNanos;
+                schedule(queue);
+                return task;
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give the connection slot taken by {@link #take()} back to the task's host.
+     */
+    public void release(CrawlTask task) {
+        lock.lock();
+        try {
+            HostQueue queue = hosts.get(task.host());
+            if (queue == null) {
+                return;
+            }
+            queue.active--;
+            if (queue.probe == task) {
+                // Ended without a result, e.g. skipped by robots.txt: let another task probe.
+                queue.probe = null;
+            }
+            // Forget idle hosts, but only once their delay has elapsed and nothing was overridden
+            // or learned about them.
+            if (queue.active == 0 && queue.tasks.isEmpty()
+                    && queue.floorDelayNanos == defaultMinDelayNanos
+                    && queue.minDelayNanos == defaultMinDelayNanos
+                    && queue.maxConnections == defaultMaxConnections
+                    && queue.consecutiveFailures == 0 && !queue.parked
+                    && queue.readyAt - System.nanoTime() <= 0) {
+                hosts.remove(task.host());
+            } else {
+                schedule(queue);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Override the minimum delay for one host, e.g. from a robots.txt Crawl-delay.
+     * The larger of the preset and the override wins.
+     */
+    public void setMinDelay(String host, long delay, TimeUnit unit) {
+        lock.lock();
+        try {
+            HostQueue queue = hosts.computeIfAbsent(host, this::newQueue);
+            queue.floorDelayNanos = Math.max(defaultMinDelayNanos, unit.toNanos(delay));
+            queue.minDelayNanos = Math.max(queue.minDelayNanos, queue.floorDelayNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Feed one finished fetch into its host's adaptive controller and circuit breaker. While
+     * the host is parked, only the result of its probe task reaches the breaker.
+     *
+     * @param task       the task as returned by {@link #take()}
+     * @param latencyMs  the fetch's response time, the same sample that goes into avgResponseMs
+     * @param overloaded the fetch failed in a way that suggests the origin is struggling
+     *                   (5xx, 429, timeout, connection error)
+     * @return true if this result opened the host's breaker and parked the host
+     */
+    public boolean recordResult(CrawlTask task, long latencyMs, boolean overloaded) {
+        lock.lock();
+        try {
+            HostQueue queue = hosts.get(task.host());
+            if (queue == null) {
+                return false;
+            }
+            boolean opened = retryPolicy.breakerEnabled() && updateBreaker(queue, task, overloaded);
+            if (!aimd.enabled()) {
+                return opened;
+            }
+            if (queue.samples == null) {
+                queue.samples = new int[aimd.window()];
+            }
+            queue.samples[queue.sampleCount++] = (int) Math.min(Integer.MAX_VALUE, latencyMs);
+            if (overloaded) {
+                queue.failures++;
+            }
+            if (queue.sampleCount == queue.samples.length) {
+                adapt(queue);
+            }
+            return opened;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Current concurrency limit of a host, for diagnostics.
+     */
+    public int connectionLimit(String host) {
+        lock.lock();
+        try {
+            HostQueue queue = hosts.get(host);
+            return queue == null ? defaultMaxConnections : queue.maxConnections;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of buffered tasks that belong to parked hosts.
+     */
+    public int parked() {
+        lock.lock();
+        try {
+            int parked = 0;
+            for (HostQueue queue : parkedHosts) {
+                parked += queue.tasks.size();
+            }
+            return parked;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of tasks waiting in host queues or for a retry (not counting in-flight ones).
+     */
+    public int buffered() {
+        lock.lock();
+        try {
+            return buffered;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove and return the waiting tasks and pending retries of every host matching
+     * {@code hosts}. In-flight tasks stay charged to their host until released.
+     */
+    public List<CrawlTask> evict(Predicate<String> hosts) {
+        lock.lock();
+        try {
+            List<CrawlTask> evicted = new ArrayList<>();
+            for (HostQueue queue : this.hosts.values()) {
+                if (queue.tasks.isEmpty() || !hosts.test(queue.host)) {
+                    continue;
+                }
+                evicted.addAll(queue.tasks);
+                queue.tasks.clear();
+                if (queue.scheduled) {
+                    timer.remove(queue);
+                    queue.scheduled = false;
+                }
+            }
+            delayed.removeIf(retry -> hosts.test(retry.task().host()) && evicted.add(retry.task()));
+            buffered -= evicted.size();
+            return evicted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wake every waiter and make {@link #take()} return null from now on.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private HostQueue newQueue(String host) {
+        return new HostQueue(host, defaultMinDelayNanos, defaultMaxConnections);
+    }
+
+    // Move retries whose backoff has passed into their host queues. Caller holds the lock.
+    private void promoteRetries(long now) {
+        while (!delayed.isEmpty() && delayed.peek().dueAt() - now <= 0) {
+            CrawlTask task = delayed.poll().task();
+            HostQueue queue = hosts.computeIfAbsent(task.host(), this::newQueue);
+            queue.tasks.addLast(task);
+            schedule(queue);
+        }
+    }
+
+    // Closed: count consecutive failures and open at the threshold. Parked: only the probe's
+    // result counts, and either closes the breaker or parks the host for twice as long; the
+    // stragglers of before the breaker opened are ignored. Caller holds the lock.
+    private boolean updateBreaker(HostQueue queue, CrawlTask task, boolean failed) {
+        if (queue.parked) {
+            // Tasks are records; the probe is the very instance take() handed out.
+            if (queue.probe != task) {
+                return false;
+            }
+            queue.probe = null;
+        }
+        if (!failed) {
+            queue.consecutiveFailures = 0;
+            if (queue.parked) {
+                queue.parked = false;
+                queue.parkNanos = 0;
+                parkedHosts.remove(queue);
+                schedule(queue);
+            }
+            return false;
+        }
+        queue.consecutiveFailures++;
+        if (!queue.parked && queue.consecutiveFailures < retryPolicy.breakerThreshold()) {
+            return false;
+        }
+        queue.parkNanos = queue.parked
+                ? Math.min(TimeUnit.MILLISECONDS.toNanos(retryPolicy.breakerMaxOpenMs()), queue.parkNanos * 2)
+                : TimeUnit.MILLISECONDS.toNanos(retryPolicy.breakerOpenMs());
+        queue.parked = true;
+        parkedHosts.add(queue);
+        if (queue.scheduled) {
+            // readyAt is the timer's sort key, so the host has to leave the queue to move.
+            timer.remove(queue);
+            queue.scheduled = false;
+        }
+        queue.readyAt = System.nanoTime() + queue.parkNanos;
+        schedule(queue);
+        return true;
+    }
+
+    // Judge one full window of results and move the host's budget. Caller holds the lock.
+    private void adapt(HostQueue queue) {
+        int[] window = queue.samples;
+        Arrays.sort(window);
+        int p90 = window[Math.min(window.length - 1, (int) Math.ceil(window.length * 0.9) - 1)];
+        boolean healthy = queue.failures <= aimd.maxErrorRate() * window.length
+                && (queue.baselineP90 < 0 || p90 <= queue.baselineP90 * aimd.latencyFactor());
+        if (healthy) {
+            // The baseline follows healthy windows, quickly down and slowly up.
+            queue.baselineP90 = queue.baselineP90 < 0 || p90 < queue.baselineP90
+                    ? p90
+                    : queue.baselineP90 + (p90 - queue.baselineP90) / 8;
+            if (queue.minDelayNanos > queue.floorDelayNanos) {
+                queue.minDelayNanos = Math.max(queue.floorDelayNanos, queue.minDelayNanos / 2);
+            } else if (queue.maxConnections < connectionCeiling) {
+                queue.maxConnections++;
+            }
+        } else if (queue.maxConnections > 1) {
+            queue.maxConnections = Math.max(1, queue.maxConnections / 2);
+        } else {
+            long floor = Math.max(queue.floorDelayNanos, TimeUnit.MILLISECONDS.toNanos(100));
+            queue.minDelayNanos = Math.min(floor * aimd.maxDelayFactor(), Math.max(floor, queue.minDelayNanos * 2));
+        }
+        queue.sampleCount = 0;
+        queue.failures = 0;
+        schedule(queue);
+    }
+
+    // Put the host on the timer queue if it has work and a free slot; a parked host only gets
+    // the single slot for its probe. Caller holds the lock.
+    private void schedule(HostQueue queue) {
+        int limit = queue.parked ? 1 : queue.maxConnections;
+        if (queue.scheduled || queue.tasks.isEmpty() || queue.active >= limit) {
+            return;
+        }
+        queue.scheduled = true;
+        timer.add(queue);
+        changed.signalAll();
+    }
+
+    private record DelayedTask(long dueAt, CrawlTask task) {
+    }
+
+    private static final class HostQueue {
+        final String host;
+        final ArrayDeque<CrawlTask> tasks = new ArrayDeque<>();
+        long minDelayNanos;
+        // Lowest spacing allowed: the preset or the robots.txt Crawl-delay, whichever is larger.
+        long floorDelayNanos;
+        int maxConnections;
+        int active;
+        int[] samples;
+        int sampleCount;
+        int failures;
+        int baselineP90 = -1;
+        int consecutiveFailures;
+        boolean parked;
+        long parkNanos;
+        // The task let through to test a parked host, while it is in flight.
+        CrawlTask probe;
+        long readyAt = System.nanoTime();
+        boolean scheduled;
+
+        HostQueue(String host, long minDelayNanos, int maxConnections) {
+            this.host = host;
+            this.minDelayNanos = minDelayNanos;
+            this.floorDelayNanos = minDelayNanos;
+            this.maxConnections = maxConnections;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.crawler.crawl;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Body subscriber that pushes every chunk straight into an {@link HtmlLinkScanner} as it
+ * arrives from the HttpClient, instead of aggregating the body. Compressed bodies pass
+ * through a {@link ContentDecoder} on the way. Completes with the number of decoded bytes
+ * scanned.
+ * <p>
+ * The subscription is cancelled, so the rest of the body is never downloaded, once
+ * {@code maxBytes} decoded bytes have been scanned or once the scanner reports it has
+ * nothing left to learn (metadata-only fetches past the head). Heap use per fetch is the
+ * client's chunk buffers plus the decoder's output buffer, whatever the response size.
+ */
+public final class HtmlBodySubscriber implements HttpResponse.BodySubscriber<Long> {
+
+    private final HtmlLinkScanner scanner;
+    private final ContentDecoder decoder;
+    private final long maxBytes;
+    private final ContentDecoder.Sink sink = this::scan;
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private boolean stopped;
+
+    /**
+     * @param decoder  decoder for the response's Content-Encoding, or null for identity
+     * @param maxBytes decoded bytes to scan at most
+     */
+    public HtmlBodySubscriber(HtmlLinkScanner scanner, ContentDecoder decoder, long maxBytes) {
+        this.scanner = scanner;
+        this.decoder = decoder;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public CompletionStage<Long> getBody() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> chunks) {
+        try {
+            for (ByteBuffer chunk : chunks) {
+                if (decoder != null) {
+                    decoder.decode(chunk, sink);
+                } else {
+                    scan(chunk);
+                }
+                if (stopped) {
+                    subscription.cancel();
+                    finish();
+                    return;
+                }
+            }
+        } catch (RuntimeException ex) {
+            subscription.cancel();
+            release();
+            result.completeExceptionally(ex);
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        release();
+        result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        finish();
+    }
+
+    // Feed decoded bytes to the scanner, up to the cap; false once nothing more is wanted.
+    private boolean scan(ByteBuffer bytes) {
+        if (stopped) {
+            return false;
+        }
+        long room = maxBytes - scanner.bytesScanned();
+        if (bytes.remaining() >= room) {
+            ByteBuffer head = bytes.duplicate();
+            head.limit(head.position() + (int) room);
+            scanner.feed(head);
+            bytes.position(bytes.limit());
+            stopped = true;
+        } else {
+            scanner.feed(bytes);
+            stopped = scanner.isDone();
+        }
+        return !stopped;
+    }
+
+    private void finish() {
+        release();
+        result.complete(scanner.bytesScanned());
+    }
+
+    private void release() {
+        if (decoder != null) {
+            decoder.end();
+        }
+    }
+}
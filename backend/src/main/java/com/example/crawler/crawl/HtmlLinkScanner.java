@@ -0,0 +1,736 @@
+package com.example.crawler.crawl;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Streaming HTML tokenizer that pulls link attributes and head metadata out of raw response bytes.
+ * <p>
+ * Bytes are fed chunk by chunk via {@link #feed(ByteBuffer)}; the tokenizer keeps its state
+ * between chunks, so it never needs the whole document in memory and never builds a DOM or a
+ * body {@code String}. Only the values of interesting attributes ({@code href}, {@code src})
+ * are copied and decoded (UTF-8 plus character references), into reusable buffers that are
+ * handed to the {@link Listener} as a {@link CharSequence} valid only for the duration of the
+ * callback. Comments and the contents of {@code script}/{@code style} are skipped.
+ * <p>
+ * When metadata extraction is on, the same pass also reports the title, meta description,
+ * robots meta, canonical, hreflang alternates and OpenGraph properties. That part stops as
+ * soon as {@code </head>} or {@code <body>} is seen, or the metadata byte cap is reached.
+ * <p>
+ * A scanner can be {@link #reset(Listener) reset} and reused for the next page, which makes
+ * the steady state allocation-free. Not thread-safe.
+ */
+public final class HtmlLinkScanner {
+
+    /**
+     * What kind of reference an attribute value is.
+     */
+    public enum LinkKind {
+        /** A navigable page: a/area href, frame/iframe src. */
+        PAGE,
+        /** A sub-resource: link href, img/script/source/embed/audio/video src. */
+        RESOURCE
+    }
+
+    /**
+     * Head metadata fields. {@code key} is the hreflang code for HREFLANG and the
+     * {@code og:} property name for OPEN_GRAPH, null otherwise.
+     */
+    public enum MetaField {
+        TITLE, DESCRIPTION, ROBOTS, CANONICAL, HREFLANG, OPEN_GRAPH
+    }
+
+    public interface Listener {
+        void onLink(CharSequence url, LinkKind kind);
+
+        /**
+         * The document's {@code <base href>}; later relative links resolve against it.
+         */
+        default void onBase(CharSequence url) {
+        }
+
+        default void onMetadata(MetaField field, String key, String value) {
+        }
+
+        /**
+         * Metadata extraction has finished for this document (end of head or byte cap).
+         */
+        default void onHeadEnd() {
+        }
+    }
+
+    private static final int MAX_NAME = 16;
+    private static final int MAX_VALUE = 8 * 1024;
+
+    private static final int TEXT = 0;
+    private static final int TAG_OPEN = 1;
+    private static final int TAG_NAME = 2;
+    private static final int BEFORE_ATTR = 3;
+    private static final int ATTR_NAME = 4;
+    private static final int AFTER_ATTR_NAME = 5;
+    private static final int BEFORE_VALUE = 6;
+    private static final int VALUE_DQ = 7;
+    private static final int VALUE_SQ = 8;
+    private static final int VALUE_UNQ = 9;
+    private static final int MARKUP_DECL = 10;
+    private static final int COMMENT = 11;
+    private static final int SKIP_TAG = 12;
+    private static final int RAW_TEXT = 13;
+
+    // Attribute slots kept per meta/link/title tag while metadata is being extracted.
+    private static final int SLOT_NAME = 0;
+    private static final int SLOT_PROPERTY = 1;
+    private static final int SLOT_CONTENT = 2;
+    private static final int SLOT_REL = 3;
+    private static final int SLOT_HREFLANG = 4;
+    private static final int SLOT_HREF = 5;
+    private static final int SLOT_TITLE = 6;
+    private static final int SLOT_COUNT = 7;
+    private static final int MAX_SLOT = 2 * 1024;
+
+    // What the attribute currently being read should produce when its value ends.
+    private static final int CAPTURE_NONE = 0;
+    private static final int CAPTURE_PAGE = 1;
+    private static final int CAPTURE_RESOURCE = 2;
+    private static final int CAPTURE_BASE = 3;
+
+    private Listener listener;
+    private int state;
+    private boolean linksEnabled;
+    private boolean metadataActive;
+    private long metadataByteCap;
+    private SimHash textHash;
+
+    private final byte[] tag = new byte[MAX_NAME];
+    private int tagLen;
+    private boolean endTag;
+    private final byte[] attr = new byte[MAX_NAME];
+    private int attrLen;
+    private int capture;
+
+    private byte[] value = new byte[256];
+    private int valueLen;
+    private boolean valueOverflow;
+
+    private char[] chars = new char[256];
+    private CharBuffer charView = CharBuffer.wrap(chars);
+
+    private int dashes;
+    private int rawMatch;
+    private final byte[] rawTag = new byte[MAX_NAME];
+    private int rawTagLen;
+    private int rawMatchStart;
+    private boolean rawTitle;
+
+    private final byte[][] slots = new byte[SLOT_COUNT][64];
+    private final int[] slotLen = new int[SLOT_COUNT];
+    private int metaSlot = -1;
+
+    private long bytesScanned;
+
+    public HtmlLinkScanner(Listener listener) {
+        reset(listener, true, 0, null);
+    }
+
+    /**
+     * Prepare the scanner for a new document.
+     *
+     * @param links           report href/src links
+     * @param metadataByteCap scan at most this many bytes for head metadata; 0 disables it
+     * @param textHash        receives the visible text outside tags, scripts and styles; may be null
+     */
+    public void reset(Listener listener, boolean links, long metadataByteCap, SimHash textHash) {
+        this.listener = listener;
+        this.textHash = textHash;
+        this.linksEnabled = links;
+        this.metadataActive = metadataByteCap > 0;
+        this.metadataByteCap = metadataByteCap;
+        this.metaSlot = -1;
+        this.state = TEXT;
+        this.tagLen = 0;
+        this.attrLen = 0;
+        this.capture = CAPTURE_NONE;
+        this.valueLen = 0;
+        this.valueOverflow = false;
+        this.bytesScanned = 0;
+    }
+
+    public long bytesScanned() {
+        return bytesScanned;
+    }
+
+    /**
+     * True once nothing more can be learned from the rest of the document, so the caller
+     * may stop reading the body.
+     */
+    public boolean isDone() {
+        return !linksEnabled && !metadataActive;
+    }
+
+    /**
+     * Scan the remaining bytes of {@code chunk}. The buffer's position is advanced to its limit.
+     */
+    public void feed(ByteBuffer chunk) {
+        int n = chunk.remaining();
+        bytesScanned += n;
+        if (chunk.hasArray()) {
+            byte[] array = chunk.array();
+            int offset = chunk.arrayOffset() + chunk.position();
+            for (int i = 0; i < n; i++) {
+                step(array[offset + i]);
+            }
+            chunk.position(chunk.limit());
+        } else {
+            while (chunk.hasRemaining()) {
+                step(chunk.get());
+            }
+        }
+        if (metadataActive && bytesScanned >= metadataByteCap) {
+            endOfHead();
+        }
+    }
+
+    private void step(byte b) {
+        switch (state) {
+            case TEXT -> {
+                if (b == '<') {
+                    state = TAG_OPEN;
+                    if (textHash != null) {
+                        textHash.separator();
+                    }
+                } else if (textHash != null) {
+                    textHash.accept(b);
+                }
+            }
+            case TAG_OPEN -> {
+                if (isLetter(b)) {
+                    endTag = false;
+                    tagLen = 0;
+                    if (metadataActive) {
+                        Arrays.fill(slotLen, -1);
+                    }
+                    appendName(tag, b, true);
+                    state = TAG_NAME;
+                } else if (b == '/') {
+                    endTag = true;
+                    tagLen = 0;
+                    state = TAG_NAME;
+                } else if (b == '!') {
+                    dashes = 0;
+                    state = MARKUP_DECL;
+                } else if (b == '<') {
+                    state = TAG_OPEN;
+                } else {
+                    state = TEXT;
+                }
+            }
+            case TAG_NAME -> {
+                if (isSpace(b) || b == '/') {
+                    if (endTag) {
+                        endOfEndTagName();
+                        state = SKIP_TAG;
+                    } else {
+                        state = BEFORE_ATTR;
+                    }
+                } else if (b == '>') {
+                    if (endTag) {
+                        endOfEndTagName();
+                    }
+                    endOfTag();
+                } else {
+                    appendName(tag, b, true);
+                }
+            }
+            case BEFORE_ATTR -> {
+                if (b == '>') {
+                    endOfTag();
+                } else if (!isSpace(b) && b != '/') {
+                    attrLen = 0;
+                    appendName(attr, b, false);
+                    state = ATTR_NAME;
+                }
+            }
+            case ATTR_NAME -> {
+                if (b == '=') {
+                    beginValue();
+                } else if (isSpace(b)) {
+                    state = AFTER_ATTR_NAME;
+                } else if (b == '>') {
+                    endOfTag();
+                } else if (b == '/') {
+                    state = BEFORE_ATTR;
+                } else {
+                    appendName(attr, b, false);
+                }
+            }
+            case AFTER_ATTR_NAME -> {
+                if (b == '=') {
+                    beginValue();
+                } else if (b == '>') {
+                    endOfTag();
+                } else if (!isSpace(b) && b != '/') {
+                    attrLen = 0;
+                    appendName(attr, b, false);
+                    state = ATTR_NAME;
+                }
+            }
+            case BEFORE_VALUE -> {
+                if (b == '"') {
+                    state = VALUE_DQ;
+                } else if (b == '\'') {
+                    state = VALUE_SQ;
+                } else if (b == '>') {
+                    endOfTag();
+                } else if (!isSpace(b)) {
+                    appendValue(b);
+                    state = VALUE_UNQ;
+                }
+            }
+            case VALUE_DQ -> {
+                if (b == '"') {
+                    endOfValue();
+                    state = BEFORE_ATTR;
+                } else {
+                    appendValue(b);
+                }
+            }
+            case VALUE_SQ -> {
+                if (b == '\'') {
+                    endOfValue();
+                    state = BEFORE_ATTR;
+                } else {
+                    appendValue(b);
+                }
+            }
+            case VALUE_UNQ -> {
+                if (isSpace(b)) {
+                    endOfValue();
+                    state = BEFORE_ATTR;
+                } else if (b == '>') {
+                    endOfValue();
+                    endOfTag();
+                } else {
+                    appendValue(b);
+                }
+            }
+            case MARKUP_DECL -> {
+                if (b == '-' && ++dashes == 2) {
+                    dashes = 0;
+                    state = COMMENT;
+                } else if (b != '-') {
+                    state = b == '>' ? TEXT : SKIP_TAG;
+                }
+            }
+            case COMMENT -> {
+                if (b == '-') {
+                    dashes++;
+                } else if (b == '>' && dashes >= 2) {
+                    state = TEXT;
+                } else {
+                    dashes = 0;
+                }
+            }
+            case SKIP_TAG -> {
+                if (b == '>') {
+                    state = TEXT;
+                }
+            }
+            case RAW_TEXT -> stepRawText(b);
+            default -> state = TEXT;
+        }
+    }
+
+    // Inside script/style/title: look for "</name" case-insensitively, then skip to '>'.
+    // Title text is captured on the way, and the "</title" bytes are cut off again at the end.
+    private void stepRawText(byte b) {
+        boolean title = rawTitle && metadataActive;
+        if (rawMatch >= 2 && rawMatch - 2 == rawTagLen && (isSpace(b) || b == '>' || b == '/')) {
+            if (title) {
+                slotLen[SLOT_TITLE] = Math.min(rawMatchStart, slotLen[SLOT_TITLE]);
+                emitSlot(MetaField.TITLE, null, SLOT_TITLE);
+            }
+            rawMatch = 0;
+            state = b == '>' ? TEXT : SKIP_TAG;
+            return;
+        }
+        if (b == '<') {
+            rawMatchStart = title ? slotLen[SLOT_TITLE] : 0;
+        }
+        if (title) {
+            appendSlot(SLOT_TITLE, b);
+        }
+        if (rawMatch == 0) {
+            if (b == '<') {
+                rawMatch = 1;
+            }
+        } else if (rawMatch == 1) {
+            rawMatch = b == '/' ? 2 : (b == '<' ? 1 : 0);
+        } else if (rawMatch - 2 < rawTagLen && toLower(b) == rawTag[rawMatch - 2]) {
+            rawMatch++;
+        } else {
+            rawMatch = b == '<' ? 1 : 0;
+        }
+    }
+
+    private void beginValue() {
+        valueLen = 0;
+        valueOverflow = false;
+        capture = endTag || !linksEnabled ? CAPTURE_NONE : captureFor();
+        metaSlot = metadataActive && !endTag ? metaSlotFor() : -1;
+        if (metaSlot >= 0) {
+            slotLen[metaSlot] = 0;
+        }
+        state = BEFORE_VALUE;
+    }
+
+    private void endOfValue() {
+        if (capture != CAPTURE_NONE && !valueOverflow && valueLen > 0) {
+            int n = decode(value, valueLen);
+            if (capture == CAPTURE_BASE) {
+                listener.onBase(charView.clear().limit(n));
+            } else {
+                listener.onLink(charView.clear().limit(n),
+                        capture == CAPTURE_PAGE ? LinkKind.PAGE : LinkKind.RESOURCE);
+            }
+        }
+        capture = CAPTURE_NONE;
+        metaSlot = -1;
+        valueLen = 0;
+    }
+
+    private void endOfTag() {
+        state = TEXT;
+        if (endTag) {
+            return;
+        }
+        if (metadataActive) {
+            endOfHeadTag();
+        }
+        if (tagIs("script") || tagIs("style") || (metadataActive && tagIs("title"))) {
+            System.arraycopy(tag, 0, rawTag, 0, tagLen);
+            rawTagLen = tagLen;
+            rawMatch = 0;
+            rawTitle = tagIs("title");
+            slotLen[SLOT_TITLE] = 0;
+            state = RAW_TEXT;
+        }
+    }
+
+    private void endOfEndTagName() {
+        if (metadataActive && tagIs("head")) {
+            endOfHead();
+        }
+    }
+
+    // A start tag inside the head just closed; report whatever metadata its attributes carry.
+    private void endOfHeadTag() {
+        if (tagIs("body")) {
+            endOfHead();
+        } else if (tagIs("meta")) {
+            if (slotLen[SLOT_CONTENT] < 0) {
+                return;
+            }
+            if (slotIs(SLOT_NAME, "description")) {
+                emitSlot(MetaField.DESCRIPTION, null, SLOT_CONTENT);
+            } else if (slotIs(SLOT_NAME, "robots")) {
+                emitSlot(MetaField.ROBOTS, null, SLOT_CONTENT);
+            } else if (slotStartsWith(SLOT_PROPERTY, "og:")) {
+                emitSlot(MetaField.OPEN_GRAPH, slotString(SLOT_PROPERTY), SLOT_CONTENT);
+            } else if (slotStartsWith(SLOT_NAME, "og:")) {
+                emitSlot(MetaField.OPEN_GRAPH, slotString(SLOT_NAME), SLOT_CONTENT);
+            }
+        } else if (tagIs("link") && slotLen[SLOT_HREF] > 0 && slotLen[SLOT_REL] >= 0) {
+            if (slotContainsWord(SLOT_REL, "canonical")) {
+                emitSlot(MetaField.CANONICAL, null, SLOT_HREF);
+            } else if (slotContainsWord(SLOT_REL, "alternate") && slotLen[SLOT_HREFLANG] > 0) {
+                emitSlot(MetaField.HREFLANG, slotString(SLOT_HREFLANG), SLOT_HREF);
+            }
+        }
+    }
+
+    private void endOfHead() {
+        if (metadataActive) {
+            metadataActive = false;
+            listener.onHeadEnd();
+        }
+    }
+
+    private int metaSlotFor() {
+        if (tagIs("meta")) {
+            if (attrIs("name")) {
+                return SLOT_NAME;
+            }
+            if (attrIs("property")) {
+                return SLOT_PROPERTY;
+            }
+            if (attrIs("content")) {
+                return SLOT_CONTENT;
+            }
+        } else if (tagIs("link")) {
+            if (attrIs("rel")) {
+                return SLOT_REL;
+            }
+            if (attrIs("hreflang")) {
+                return SLOT_HREFLANG;
+            }
+            if (attrIs("href")) {
+                return SLOT_HREF;
+            }
+        }
+        return -1;
+    }
+
+    private void emitSlot(MetaField field, String key, int slot) {
+        if (slotLen[slot] <= 0) {
+            return;
+        }
+        int n = decode(slots[slot], slotLen[slot]);
+        listener.onMetadata(field, key, new String(chars, 0, n).trim());
+    }
+
+    private String slotString(int slot) {
+        int n = decode(slots[slot], slotLen[slot]);
+        return new String(chars, 0, n).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private boolean slotIs(int slot, String lower) {
+        return slotLen[slot] == lower.length() && slotStartsWith(slot, lower);
+    }
+
+    private boolean slotStartsWith(int slot, String lower) {
+        if (slotLen[slot] < lower.length()) {
+            return false;
+        }
+        for (int i = 0; i < lower.length(); i++) {
+            if (toLower(slots[slot][i]) != lower.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // True if the space-separated token list in the slot contains the word (rel="alternate canonical").
+    private boolean slotContainsWord(int slot, String lower) {
+        byte[] bytes = slots[slot];
+        int length = slotLen[slot];
+        int i = 0;
+        while (i < length) {
+            while (i < length && isSpace(bytes[i])) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !isSpace(bytes[i])) {
+                i++;
+            }
+            if (i - start == lower.length()) {
+                boolean match = true;
+                for (int k = 0; k < lower.length() && match; k++) {
+                    match = toLower(bytes[start + k]) == lower.charAt(k);
+                }
+                if (match) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void appendSlot(int slot, byte b) {
+        int length = slotLen[slot];
+        if (length < 0 || length >= MAX_SLOT) {
+            return;
+        }
+        if (length == slots[slot].length) {
+            slots[slot] = Arrays.copyOf(slots[slot], Math.min(MAX_SLOT, length * 2));
+        }
+        slots[slot][length] = b;
+        slotLen[slot] = length + 1;
+    }
+
+    private int captureFor() {
+        if (attrIs("href")) {
+            if (tagIs("a") || tagIs("area")) {
+                return CAPTURE_PAGE;
+            }
+            if (tagIs("link")) {
+                return CAPTURE_RESOURCE;
+            }
+            if (tagIs("base")) {
+                return CAPTURE_BASE;
+            }
+        } else if (attrIs("src")) {
+            if (tagIs("iframe") || tagIs("frame")) {
+                return CAPTURE_PAGE;
+            }
+            if (tagIs("img") || tagIs("script") || tagIs("source") || tagIs("embed")
+                    || tagIs("audio") || tagIs("video")) {
+                return CAPTURE_RESOURCE;
+            }
+        }
+        return CAPTURE_NONE;
+    }
+
+    // UTF-8 and character-reference decoding of src[0, srcLen) into chars.
+    private int decode(byte[] src, int srcLen) {
+        if (chars.length < srcLen) {
+            chars = new char[Math.max(srcLen, chars.length * 2)];
+            charView = CharBuffer.wrap(chars);
+        }
+        int n = 0;
+        int i = 0;
+        while (i < srcLen) {
+            int b = src[i] & 0xff;
+            if (b == '&') {
+                int consumed = decodeReference(src, srcLen, i, n);
+                if (consumed > 0) {
+                    i += consumed;
+                    n++;
+                    continue;
+                }
+                chars[n++] = '&';
+                i++;
+            } else if (b < 0x80) {
+                chars[n++] = (char) b;
+                i++;
+            } else {
+                int extra = b >= 0xf0 ? 3 : b >= 0xe0 ? 2 : b >= 0xc0 ? 1 : 0;
+                int cp = extra == 3 ? b & 0x07 : extra == 2 ? b & 0x0f : b & 0x1f;
+                if (extra == 0 || i + extra >= srcLen) {
+                    chars[n++] = '\uFFFD';
+                    i++;
+                    continue;
+                }
+                for (int k = 1; k <= extra; k++) {
+                    cp = cp << 6 | (src[i + k] & 0x3f);
+                }
+                i += extra + 1;
+                if (Character.isSupplementaryCodePoint(cp)) {
+                    chars[n++] = Character.highSurrogate(cp);
+                    chars[n++] = Character.lowSurrogate(cp);
+                } else {
+                    chars[n++] = (char) cp;
+                }
+            }
+        }
+        return n;
+    }
+
+    // Decode "&amp;", "&#38;", "&#x26;" etc. at src[at]; writes chars[out] and returns bytes consumed, or 0.
+    private int decodeReference(byte[] src, int srcLen, int at, int out) {
+        int semi = -1;
+        for (int i = at + 1; i < srcLen && i <= at + 10; i++) {
+            if (src[i] == ';') {
+                semi = i;
+                break;
+            }
+        }
+        if (semi < 0) {
+            return 0;
+        }
+        int nameStart = at + 1;
+        int nameLen = semi - nameStart;
+        int ch = -1;
+        if (nameLen > 1 && src[nameStart] == '#') {
+            boolean hex = src[nameStart + 1] == 'x' || src[nameStart + 1] == 'X';
+            int cp = 0;
+            for (int i = nameStart + (hex ? 2 : 1); i < semi; i++) {
+                int d = Character.digit(src[i], hex ? 16 : 10);
+                if (d < 0) {
+                    return 0;
+                }
+                cp = cp * (hex ? 16 : 10) + d;
+            }
+            ch = cp > 0 && cp < 0x10000 ? cp : -1;
+        } else if (regionIs(src, nameStart, nameLen, "amp")) {
+            ch = '&';
+        } else if (regionIs(src, nameStart, nameLen, "quot")) {
+            ch = '"';
+        } else if (regionIs(src, nameStart, nameLen, "apos")) {
+            ch = '\'';
+        } else if (regionIs(src, nameStart, nameLen, "lt")) {
+            ch = '<';
+        } else if (regionIs(src, nameStart, nameLen, "gt")) {
+            ch = '>';
+        }
+        if (ch < 0) {
+            return 0;
+        }
+        chars[out] = (char) ch;
+        return semi - at + 1;
+    }
+
+    private static boolean regionIs(byte[] src, int start, int length, String name) {
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (src[start + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendValue(byte b) {
+        if (metaSlot >= 0) {
+            appendSlot(metaSlot, b);
+        }
+        if (capture == CAPTURE_NONE || valueOverflow) {
+            return;
+        }
+        if (valueLen == value.length) {
+            if (valueLen >= MAX_VALUE) {
+                valueOverflow = true;
+                return;
+            }
+            value = Arrays.copyOf(value, Math.min(MAX_VALUE, valueLen * 2));
+        }
+        value[valueLen++] = b;
+    }
+
+    private void appendName(byte[] target, byte b, boolean isTag) {
+        int length = isTag ? tagLen : attrLen;
+        if (length < MAX_NAME) {
+            target[length] = toLower(b);
+        }
+        if (isTag) {
+            tagLen++;
+        } else {
+            attrLen++;
+        }
+    }
+
+    private boolean tagIs(String name) {
+        return nameIs(tag, tagLen, name);
+    }
+
+    private boolean attrIs(String name) {
+        return nameIs(attr, attrLen, name);
+    }
+
+    private static boolean nameIs(byte[] buffer, int length, String name) {
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLetter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f';
+    }
+
+    private static byte toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.crawler.crawl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Storage format of a batch of link-graph edges: a count followed by {@code source target}
+ * page ids as ints, deflated as a whole. A page's outlinks are written together, so sources
+ * repeat and the batch compresses to well under its 8 bytes per edge.
+ */
+public final class LinkBatch {
+
+    private LinkBatch() {
+    }
+
+    /**
+     * Encode the first {@code edges} pairs of {@code pairs}, laid out as source, target, source, ...
+     */
+    public static byte[] encode(int[] pairs, int edges) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(edges * 4);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeInt(edges);
+            for (int i = 0; i < edges * 2; i++) {
+                out.writeInt(pairs[i]);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The pairs of a batch, laid out as in {@link #encode}.
+     */
+    public static int[] decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(payload)))) {
+            int edges = in.readInt();
+            if (edges < 0) {
+                throw new IOException("Negative edge count");
+            }
+            int[] pairs = new int[edges * 2];
+            for (int i = 0; i < pairs.length; i++) {
+                pairs[i] = in.readInt();
+            }
+            return pairs;
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Corrupt link batch", ex);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.crawler.crawl;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-job index of page SimHashes answering "is there a page within {@code maxDistance}
+ * bits of this one?".
+ * <p>
+ * The 64-bit hash is cut into four 16-bit bands. Two hashes at most three bits apart agree
+ * exactly on at least one band, so only pages sharing a band value need an actual distance
+ * check. Each band is a directly indexed array of 65536 buckets, so a lookup is four array
+ * reads plus a scan of the (usually tiny) matching buckets, with no hashing or boxing.
+ */
+public final class NearDuplicateIndex {
+
+    private static final int BANDS = 4;
+    private static final int BAND_BITS = 16;
+    private static final int BUCKETS = 1 << BAND_BITS;
+    public static final int MAX_DISTANCE = BANDS - 1;
+
+    private final int maxDistance;
+    private final long[][][] buckets = new long[BANDS][][];
+    private final int[][] sizes = new int[BANDS][];
+    private final ReentrantLock lock = new ReentrantLock();
+    private int size;
+
+    public NearDuplicateIndex(int maxDistance) {
+        if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("Near-duplicate distance must be between 0 and " + MAX_DISTANCE);
+        }
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Add the hash unless a near-duplicate is already indexed.
+     *
+     * @return true if the hash was new enough to be added, false for a near-duplicate
+     */
+    public boolean addIfUnique(long simHash) {
+        lock.lock();
+        try {
+            for (int band = 0; band < BANDS; band++) {
+                if (buckets[band] == null) {
+                    continue;
+                }
+                int key = bandValue(simHash, band);
+                long[] bucket = buckets[band][key];
+                for (int i = 0, n = sizes[band][key]; i < n; i++) {
+                    if (SimHash.distance(bucket[i], simHash) <= maxDistance) {
+                        return false;
+                    }
+                }
+            }
+            for (int band = 0; band < BANDS; band++) {
+                insert(band, bandValue(simHash, band), simHash);
+            }
+            size++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void insert(int band, int key, long simHash) {
+        if (buckets[band] == null) {
+            buckets[band] = new long[BUCKETS][];
+            sizes[band] = new int[BUCKETS];
+        }
+        long[] bucket = buckets[band][key];
+        int n = sizes[band][key];
+        if (bucket == null) {
+            bucket = new long[2];
+        } else if (n == bucket.length) {
+            bucket = Arrays.copyOf(bucket, n * 2);
+        }
+        bucket[n] = simHash;
+        buckets[band][key] = bucket;
+        sizes[band][key] = n + 1;
+    }
+
+    private static int bandValue(long simHash, int band) {
+        return (int) (simHash >>> (band * BAND_BITS)) & (BUCKETS - 1);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.crawler.crawl;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Dense integer ids for the URLs of one job, keyed by URL fingerprint.
+ * <p>
+ * The link graph refers to pages by these ids, so an edge is a pair of ints instead of two
+ * URLs. Ids are handed out from blocks reserved through {@code reserve}, which returns the
+ * first id of a fresh block of the requested size; every node and every resumed run of a job
+ * reserves its blocks from the same counter, so ids never clash and stay close to dense.
+ * <p>
+ * An open-addressing table of {@code long} keys and {@code int} values under one lock.
+ */
+public final class PageIds {
+
+    private static final int INITIAL_SLOTS = 1024;
+    private static final double MAX_LOAD = 0.75;
+
+    // 0 marks an empty slot, so a real fingerprint of 0 is stored as this value instead.
+    private static final long EMPTY = 0L;
+    private static final long ZERO_SUBSTITUTE = 0x9e3779b97f4a7c15L;
+
+    private final int blockSize;
+    private final IntUnaryOperator reserve;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long[] keys = new long[INITIAL_SLOTS];
+    private int[] ids = new int[INITIAL_SLOTS];
+    private int count;
+    private int next;
+    private int blockEnd;
+
+    public PageIds(int blockSize, IntUnaryOperator reserve) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Id block size must be positive");
+        }
+        this.blockSize = blockSize;
+        this.reserve = reserve;
+    }
+
+    /**
+     * The id of {@code fingerprint}, or -1 if it has none yet.
+     */
+    public int idOf(long fingerprint) {
+        long fp = fingerprint == EMPTY ? ZERO_SUBSTITUTE : fingerprint;
+        lock.lock();
+        try {
+            int slot = find(fp);
+            return keys[slot] == fp ? ids[slot] : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The id of {@code fingerprint}, given a new one if it has none yet.
+     */
+    public int assign(long fingerprint) {
+        long fp = fingerprint == EMPTY ? ZERO_SUBSTITUTE : fingerprint;
+        lock.lock();
+        try {
+            int slot = find(fp);
+            if (keys[slot] == fp) {
+                return ids[slot];
+            }
+            if (next == blockEnd) {
+                next = reserve.applyAsInt(blockSize);
+                blockEnd = next + blockSize;
+            }
+            return put(slot, fp, next++);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take over an id given elsewhere, by a previous run or another node, unless the
+     * fingerprint has one already. Returns the id it ends up with.
+     */
+    public int adopt(long fingerprint, int id) {
+        long fp = fingerprint == EMPTY ? ZERO_SUBSTITUTE : fingerprint;
+        lock.lock();
+        try {
+            int slot = find(fp);
+            return keys[slot] == fp ? ids[slot] : put(slot, fp, id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock. The slot holding fp, or the empty slot where it would go.
+    private int find(long fp) {
+        int mask = keys.length - 1;
+        int slot = (int) Fingerprints.mix(fp) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != fp) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int put(int slot, long fp, int id) {
+        keys[slot] = fp;
+        ids[slot] = id;
+        if (++count > keys.length * MAX_LOAD) {
+            grow();
+        }
+        return id;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldIds = ids;
+        keys = new long[oldKeys.length << 1];
+        ids = new int[oldKeys.length << 1];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.crawler.crawl;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Head metadata of one HTML page, as collected by {@link HtmlLinkScanner}.
+ * Missing fields are null; the maps are empty when the page declares no alternates or
+ * OpenGraph properties. Canonical and hreflang URLs are absolute.
+ */
+public record PageMetadata(String title,
+                           String description,
+                           String robots,
+                           String canonical,
+                           Map<String, String> hreflang,
+                           Map<String, String> openGraph) {
+
+    public PageMetadata {
+        hreflang = Map.copyOf(hreflang);
+        openGraph = Map.copyOf(openGraph);
+    }
+
+    /**
+     * True if the robots meta forbids following this page's links.
+     */
+    public boolean noFollow() {
+        return isNoFollow(robots);
+    }
+
+    public static boolean isNoFollow(String robots) {
+        if (robots == null) {
+            return false;
+        }
+        for (String directive : robots.toLowerCase(Locale.ROOT).split("[\\s,]+")) {
+            if (directive.equals("nofollow") || directive.equals("none")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.crawler.crawl;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A running job's analytics histograms, kept in memory and written behind like
+ * {@link VisitCounters}.
+ * <p>
+ * Every finished page adds itself, with its response time, to one bucket of each histogram:
+ * depth, MIME category, status code and minute since the job was created. Buckets are plain
+ * {@code long}s in one {@link AtomicLongArray}, one stripe of all buckets per group of
+ * workers, picked by thread id, so concurrent workers rarely touch the same cache line.
+ * Reading or flushing sums the stripes, which costs the number of buckets, not of pages.
+ * <p>
+ * The first page seen with each status code is kept as that code's example.
+ */
+public final class PageStats {
+
+    /** Pages this deep or deeper share the last depth bucket. */
+    public static final int DEPTHS = 16;
+    /** Status code buckets; 0 is a fetch that got no response. */
+    public static final int STATUSES = 600;
+    /** Minutes since the job was created; later pages share the last bucket. */
+    public static final int MINUTES = 720;
+    public static final String[] MIME_TYPES = {"HTML", "Images", "CSS", "JS", "JSON", "XML", "PDF", "Text", "Other", "None"};
+
+    private static final int DEPTH_BASE = 0;
+    private static final int MIME_BASE = DEPTH_BASE + DEPTHS;
+    private static final int STATUS_BASE = MIME_BASE + MIME_TYPES.length;
+    private static final int MINUTE_BASE = STATUS_BASE + STATUSES;
+    /** Buckets of all histograms, laid out depth, MIME, status, minute. */
+    public static final int BUCKETS = MINUTE_BASE + MINUTES;
+    // Each bucket holds a page count and a response-time total; 8 longs of padding keep
+    // neighbouring stripes off each other's cache lines.
+    private static final int STRIPE = 2 * BUCKETS + 8;
+
+    private final long createdAtMillis;
+    private final int stripeMask;
+    private final AtomicLongArray counts;
+    private final AtomicReferenceArray<Example> examples = new AtomicReferenceArray<>(STATUSES);
+
+    // Totals already handed to a writer; guarded by flushLock, which is held while it writes.
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final long[] flushed = new long[2 * BUCKETS];
+    private final boolean[] flushedExamples = new boolean[STATUSES];
+
+    public PageStats(long createdAtMillis) {
+        this.createdAtMillis = createdAtMillis;
+        int stripes = Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors() * 2) * 2 - 1);
+        this.stripeMask = stripes - 1;
+        this.counts = new AtomicLongArray(stripes * STRIPE);
+    }
+
+    /**
+     * Count a finished page. {@code statusCode} is 0 if the fetch got no response, and
+     * {@code contentType} the raw header value, or null.
+     */
+    public void record(String url, int depth, int statusCode, String contentType, int elapsedMs) {
+        int status = statusCode > 0 && statusCode < STATUSES ? statusCode : 0;
+        int mime = statusCode > 0 ? mimeOf(contentType) : MIME_TYPES.length - 1;
+        int minute = (int) Math.max(0, Math.min(MINUTES - 1, (System.currentTimeMillis() - createdAtMillis) / 60_000));
+        int stripe = (int) Fingerprints.mix(Thread.currentThread().threadId()) & stripeMask;
+        int base = stripe * STRIPE;
+        add(base, DEPTH_BASE + Math.max(0, Math.min(DEPTHS - 1, depth)), elapsedMs);
+        add(base, MIME_BASE + mime, elapsedMs);
+        add(base, STATUS_BASE + status, elapsedMs);
+        add(base, MINUTE_BASE + minute, elapsedMs);
+        if (examples.get(status) == null) {
+            examples.compareAndSet(status, null, new Example(url, MIME_TYPES[mime], depth));
+        }
+    }
+
+    /**
+     * Increments not yet flushed, as of some moment during the call.
+     */
+    public Delta pending() {
+        flushLock.lock();
+        try {
+            return delta();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Hand the pending increments to {@code writer}, unless there are none. Flushes run one
+     * at a time; if the writer throws, the increments stay pending for the next flush.
+     */
+    public void flush(Consumer<Delta> writer) {
+        flushLock.lock();
+        try {
+            Delta delta = delta();
+            if (delta.isEmpty()) {
+                return;
+            }
+            writer.accept(delta);
+            for (int i = 0; i < flushed.length; i++) {
+                flushed[i] += delta.values[i];
+            }
+            for (int status = 0; status < STATUSES; status++) {
+                flushedExamples[status] |= delta.examples[status] != null;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * The MIME category of a Content-Type header value, an index into {@link #MIME_TYPES}.
+     */
+    public static int mimeOf(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return MIME_TYPES.length - 1;
+        }
+        int semicolon = contentType.indexOf(';');
+        String mime = (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim().toLowerCase(Locale.ROOT);
+        if (mime.equals("text/html") || mime.equals("application/xhtml+xml")) {
+            return 0;
+        }
+        if (mime.startsWith("image/")) {
+            return 1;
+        }
+        if (mime.equals("text/css")) {
+            return 2;
+        }
+        if (mime.contains("javascript") || mime.equals("text/ecmascript")) {
+            return 3;
+        }
+        if (mime.equals("application/json") || mime.endsWith("+json")) {
+            return 4;
+        }
+        if (mime.endsWith("/xml") || mime.endsWith("+xml")) {
+            return 5;
+        }
+        if (mime.equals("application/pdf")) {
+            return 6;
+        }
+        return mime.startsWith("text/") ? 7 : 8;
+    }
+
+    /** Bucket of a depth, for {@link Delta#pages} and {@link Delta#responseMs}. */
+    public static int depthBucket(int depth) {
+        return DEPTH_BASE + depth;
+    }
+
+    public static int mimeBucket(int mime) {
+        return MIME_BASE + mime;
+    }
+
+    public static int statusBucket(int status) {
+        return STATUS_BASE + status;
+    }
+
+    public static int minuteBucket(int minute) {
+        return MINUTE_BASE + minute;
+    }
+
+    private void add(int base, int bucket, int elapsedMs) {
+        counts.getAndIncrement(base + 2 * bucket);
+        counts.getAndAdd(base + 2 * bucket + 1, elapsedMs);
+    }
+
+    private Delta delta() {
+        long[] values = new long[2 * BUCKETS];
+        for (int base = 0; base < counts.length(); base += STRIPE) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] += counts.get(base + i);
+            }
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] -= flushed[i];
+        }
+        Example[] fresh = new Example[STATUSES];
+        for (int status = 0; status < STATUSES; status++) {
+            if (!flushedExamples[status]) {
+                fresh[status] = examples.get(status);
+            }
+        }
+        return new Delta(values, fresh);
+    }
+
+    /**
+     * Increments since the last flush, per bucket, and the status examples not written yet.
+     * A page that races with the snapshot may have reached some of its buckets but not all;
+     * the rest of it shows in the next one.
+     */
+    public static final class Delta {
+
+        private final long[] values;
+        private final Example[] examples;
+
+        private Delta(long[] values, Example[] examples) {
+            this.values = values;
+            this.examples = examples;
+        }
+
+        public long pages(int bucket) {
+            return values[2 * bucket];
+        }
+
+        public long responseMs(int bucket) {
+            return values[2 * bucket + 1];
+        }
+
+        /**
+         * The first page seen with this status code, if it is not written yet.
+         */
+        public Example example(int status) {
+            return examples[status];
+        }
+
+        public boolean isEmpty() {
+            for (long value : values) {
+                if (value != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public record Example(String url, String type, int depth) {
+    }
+}
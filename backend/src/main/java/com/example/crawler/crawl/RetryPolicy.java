@@ -0,0 +1,45 @@
+package com.example.crawler.crawl;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retry and circuit-breaker settings for transient fetch failures.
+ *
+ * @param maxRetries       retries per URL after the first attempt; 0 disables retrying
+ * @param baseDelayMs      backoff before the first retry; doubles with every further attempt
+ * @param maxDelayMs       upper bound for one backoff, including a server's Retry-After
+ * @param breakerThreshold consecutive failures that open a host's breaker; 0 disables it
+ * @param breakerOpenMs    how long a freshly opened breaker parks the host
+ * @param breakerMaxOpenMs upper bound for the park time, which doubles each time a
+ *                         half-open probe fails
+ */
+public record RetryPolicy(int maxRetries, long baseDelayMs, long maxDelayMs,
+                          int breakerThreshold, long breakerOpenMs, long breakerMaxOpenMs) {
+
+    public static final RetryPolicy NONE = new RetryPolicy(0, 1000, 60_000, 0, 30_000, 600_000);
+
+    public RetryPolicy {
+        if (maxRetries < 0 || baseDelayMs < 1 || maxDelayMs < baseDelayMs
+                || breakerThreshold < 0 || breakerOpenMs < 1 || breakerMaxOpenMs < breakerOpenMs) {
+            throw new IllegalArgumentException("Invalid retry settings");
+        }
+    }
+
+    public boolean breakerEnabled() {
+        return breakerThreshold > 0;
+    }
+
+    /**
+     * Delay before retrying a task that has already been tried {@code attempt + 1} times:
+     * exponential in the attempt, with "equal jitter" so workers that failed together
+     * don't come back together.
+     *
+     * @param retryAfterMs the server's Retry-After in milliseconds, or -1; acts as a lower bound
+     */
+    public long backoffNanos(int attempt, long retryAfterMs) {
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt, 30));
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        return TimeUnit.MILLISECONDS.toNanos(Math.min(maxDelayMs, Math.max(delay, retryAfterMs)));
+    }
+}
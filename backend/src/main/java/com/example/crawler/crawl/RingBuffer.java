@@ -0,0 +1,95 @@
+package com.example.crawler.crawl;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer.
+ * <p>
+ * Every slot carries a sequence number that says whose turn it is. A producer claims the
+ * next position with one CAS on the tail and publishes its element by advancing the slot's
+ * sequence; the consumer takes a slot once its sequence shows it was published, and hands
+ * it back to the producers one lap later. A full buffer makes {@link #offer} fail instead
+ * of wait, so producers never block.
+ */
+public final class RingBuffer<T> {
+
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public RingBuffer(int capacity) {
+        if (capacity < 2 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Ring buffer capacity must be between 2 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.elements = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Append an element; false if the buffer is full. Safe to call from any thread.
+     */
+    public boolean offer(T element) {
+        while (true) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[slot] = element;
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                // The consumer hasn't freed this slot from the previous lap yet.
+                return false;
+            }
+            // Another producer took this position; try the next one.
+        }
+    }
+
+    /**
+     * Move up to {@code max} elements into {@code into}, oldest first, and return how many.
+     * Only the single consumer thread may call this.
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(List<? super T> into, int max) {
+        long position = head;
+        int drained = 0;
+        while (drained < max) {
+            int slot = (int) position & mask;
+            if (sequences.get(slot) != position + 1) {
+                break;
+            }
+            into.add((T) elements[slot]);
+            elements[slot] = null;
+            sequences.set(slot, position + elements.length);
+            position++;
+            drained++;
+        }
+        head = position;
+        return drained;
+    }
+
+    /**
+     * Elements waiting, as of some moment during the call.
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(elements.length, tail.get() - head));
+    }
+
+    public int capacity() {
+        return elements.length;
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.crawler.crawl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * JVM-wide cache of compiled robots.txt rules, keyed by origin ({@code scheme://host[:port]}).
+ * <p>
+ * Entries are fetched once, compiled into {@link RobotsRules} and kept in an access-ordered
+ * LRU map bounded to {@code capacity} origins, each expiring after a TTL. The map stores the
+ * fetch future itself, so concurrent misses for the same origin, from any job, wait on one
+ * in-flight request instead of each issuing their own.
+ * <p>
+ * A 4xx means no restrictions, as in RFC 9309. A 5xx or network failure is not cached: the
+ * callers waiting on that fetch get it as an {@link IOException}, so it counts against the
+ * host like any failed fetch and the next caller fetches again. An interrupted fetch is
+ * dropped the same way, without failing the other callers waiting on it; they fetch again.
+ * Redirects are followed up to five hops; a malformed {@code Location} means no restrictions.
+ * At most 500 KiB of a body are read, however much the origin sends.
+ */
+public final class RobotsCache {
+
+    private static final int MAX_REDIRECTS = 5;
+    private static final int MAX_BODY_BYTES = 500 * 1024;
+
+    private final HttpClient httpClient;
+    private final String userAgent;
+    private final int capacity;
+    private final long ttlNanos;
+    private final Duration requestTimeout;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > capacity;
+        }
+    };
+
+    public RobotsCache(HttpClient httpClient, String userAgent, int capacity,
+                       Duration ttl, Duration requestTimeout) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Robots cache capacity must be positive");
+        }
+        this.httpClient = httpClient;
+        this.userAgent = userAgent;
+        this.capacity = capacity;
+        this.ttlNanos = ttl.toNanos();
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Rules for the origin of a canonical URL, fetching them on a miss. Blocks until the
+     * (possibly shared) fetch finishes; meant to be called from fetch worker virtual threads.
+     *
+     * @throws IOException if robots.txt could not be fetched
+     */
+    public RobotsRules rulesFor(String canonicalUrl) throws IOException, InterruptedException {
+        String origin = originOf(canonicalUrl);
+        while (true) {
+            Entry entry;
+            boolean owner = false;
+            lock.lock();
+            try {
+                entry = entries.get(origin);
+                if (entry == null || (entry.rules.isDone() && entry.expiresAt - System.nanoTime() <= 0)) {
+                    entry = new Entry();
+                    entries.put(origin, entry);
+                    owner = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (owner) {
+                fetch(origin, entry);
+            }
+            try {
+                return entry.rules.get();
+            } catch (CancellationException ex) {
+                // The fetching thread was interrupted; fetch again.
+            } catch (ExecutionException ex) {
+                throw ex.getCause() instanceof IOException io ? io
+                        : new IOException("robots.txt fetch failed: " + ex.getCause(), ex.getCause());
+            }
+        }
+    }
+
+    /**
+     * True if the URL may be fetched under its origin's robots.txt.
+     */
+    public boolean isAllowed(String canonicalUrl) throws IOException, InterruptedException {
+        return rulesFor(canonicalUrl).isAllowed(pathOf(canonicalUrl));
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fetch(String origin, Entry entry) throws InterruptedException {
+        RobotsRules rules;
+        try {
+            rules = download(origin + "/robots.txt", 0);
+        } catch (InterruptedException ex) {
+            forget(origin, entry);
+            entry.rules.cancel(false);
+            throw ex;
+        } catch (IOException | RuntimeException ex) {
+            forget(origin, entry);
+            entry.rules.completeExceptionally(ex);
+            return;
+        }
+        entry.expiresAt = System.nanoTime() + ttlNanos;
+        entry.rules.complete(rules);
+    }
+
+    // Drop a failed fetch before completing it, so whoever sees the failure fetches anew.
+    private void forget(String origin, Entry entry) {
+        lock.lock();
+        try {
+            entries.remove(origin, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private RobotsRules download(String url, int hops) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("User-Agent", userAgent)
+                .GET()
+                .build();
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        // Only the first MAX_BODY_BYTES are ever read; closing the stream drops the rest unread.
+        try (InputStream in = response.body()) {
+            int status = response.statusCode();
+            if (status >= 300 && status < 400) {
+                String location = response.headers().firstValue("Location").orElse(null);
+                if (location == null || hops >= MAX_REDIRECTS) {
+                    return RobotsRules.ALLOW_ALL;
+                }
+                String target;
+                try {
+                    target = URI.create(url).resolve(location).toString();
+                } catch (IllegalArgumentException ex) {
+                    return RobotsRules.ALLOW_ALL;
+                }
+                return download(target, hops + 1);
+            }
+            if (status >= 500) {
+                throw new IOException("robots.txt unavailable: HTTP " + status);
+            }
+            if (status >= 400) {
+                return RobotsRules.ALLOW_ALL;
+            }
+            byte[] body = in.readNBytes(MAX_BODY_BYTES);
+            return RobotsRules.parse(new String(body, StandardCharsets.UTF_8), userAgent);
+        }
+    }
+
+    /**
+     * {@code scheme://host[:port]} of a canonical URL.
+     */
+    public static String originOf(String canonicalUrl) {
+        int end = pathStart(canonicalUrl);
+        return end < 0 ? canonicalUrl : canonicalUrl.substring(0, end);
+    }
+
+    /**
+     * Path plus query of a canonical URL, the part robots.txt rules match against.
+     */
+    public static String pathOf(String canonicalUrl) {
+        int start = pathStart(canonicalUrl);
+        if (start < 0) {
+            return "/";
+        }
+        return canonicalUrl.charAt(start) == '/' ? canonicalUrl.substring(start) : "/" + canonicalUrl.substring(start);
+    }
+
+    private static int pathStart(String url) {
+        int scheme = url.indexOf("://");
+        int from = scheme < 0 ? 0 : scheme + 3;
+        for (int i = from; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Entry {
+        final CompletableFuture<RobotsRules> rules = new CompletableFuture<>();
+        volatile long expiresAt;
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.crawler.crawl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compiled robots.txt rules of one origin for one user agent.
+ * <p>
+ * All Allow/Disallow patterns of the matching group are merged into a single character
+ * trie; {@code *} becomes a self-looping wildcard node and a trailing {@code $} marks an
+ * end-anchored rule. A path is checked in one pass by walking the trie as an NFA, so the
+ * cost depends on the path length and the number of live wildcard branches, not on the
+ * number of rules. As in RFC 9309 the longest matching pattern wins and Allow wins ties.
+ * <p>
+ * Immutable once built, so one instance is shared by every job that crawls the origin.
+ */
+public final class RobotsRules {
+
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(new Node(), -1);
+    public static final RobotsRules DISALLOW_ALL = disallowAll();
+
+    private final Node root;
+    private final long crawlDelayMs;
+
+    private RobotsRules(Node root, long crawlDelayMs) {
+        this.root = root;
+        this.crawlDelayMs = crawlDelayMs;
+    }
+
+    /**
+     * Parse a robots.txt body. The group whose User-agent token is a prefix of
+     * {@code userAgent}'s product token is used, the longest such token winning; the
+     * {@code *} group applies otherwise.
+     */
+    public static RobotsRules parse(String body, String userAgent) {
+        String product = productToken(userAgent);
+        List<Group> groups = new ArrayList<>();
+        Group current = null;
+        boolean inAgents = false;
+        for (String rawLine : body.split("\r\n|\r|\n")) {
+            int hash = rawLine.indexOf('#');
+            String line = (hash >= 0 ? rawLine.substring(0, hash) : rawLine).trim();
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            switch (key) {
+                case "user-agent" -> {
+                    if (!inAgents) {
+                        current = new Group();
+                        groups.add(current);
+                        inAgents = true;
+                    }
+                    current.agents.add(value.toLowerCase(Locale.ROOT));
+                }
+                case "allow", "disallow" -> {
+                    inAgents = false;
+                    if (current != null && !value.isEmpty()) {
+                        current.rules.add(new String[]{key, value});
+                    }
+                }
+                case "crawl-delay" -> {
+                    inAgents = false;
+                    if (current != null) {
+                        current.crawlDelayMs = parseDelay(value);
+                    }
+                }
+                default -> inAgents = false;
+            }
+        }
+
+        Group chosen = null;
+        int chosenLength = -1;
+        for (Group group : groups) {
+            for (String agent : group.agents) {
+                int length = agent.equals("*") ? 0 : (product.startsWith(agent) ? agent.length() : -1);
+                if (length > chosenLength) {
+                    chosen = group;
+                    chosenLength = length;
+                }
+            }
+        }
+        if (chosen == null) {
+            return ALLOW_ALL;
+        }
+        Node root = new Node();
+        for (String[] rule : chosen.rules) {
+            insert(root, normalize(rule[1]), rule[0].equals("allow"));
+        }
+        return new RobotsRules(root, chosen.crawlDelayMs);
+    }
+
+    /**
+     * @param pathAndQuery the URL path including its query, starting with '/'
+     */
+    public boolean isAllowed(CharSequence pathAndQuery) {
+        if (root.isLeafless()) {
+            return true;
+        }
+        if ("/robots.txt".contentEquals(pathAndQuery)) {
+            return true;
+        }
+        NodeSet active = new NodeSet();
+        NodeSet next = new NodeSet();
+        active.addWithWildcards(root);
+        int bestLength = -1;
+        boolean bestAllow = true;
+        int n = pathAndQuery.length();
+        for (int i = 0; ; i++) {
+            for (int k = 0; k < active.size; k++) {
+                Node node = active.nodes[k];
+                // Prefix rules match as soon as their last pattern character is consumed.
+                if (node.ruleLength >= 0 && beats(node.ruleLength, node.ruleAllow, bestLength)) {
+                    bestLength = node.ruleLength;
+                    bestAllow = node.ruleAllow;
+                }
+                if (i == n && node.endRuleLength >= 0 && beats(node.endRuleLength, node.endRuleAllow, bestLength)) {
+                    bestLength = node.endRuleLength;
+                    bestAllow = node.endRuleAllow;
+                }
+            }
+            if (i == n || active.size == 0) {
+                return bestAllow;
+            }
+            char c = pathAndQuery.charAt(i);
+            next.size = 0;
+            for (int k = 0; k < active.size; k++) {
+                Node node = active.nodes[k];
+                if (node.wildcard) {
+                    next.add(node);
+                }
+                Node child = node.child(c);
+                if (child != null) {
+                    next.addWithWildcards(child);
+                }
+            }
+            NodeSet swap = active;
+            active = next;
+            next = swap;
+        }
+    }
+
+    /**
+     * Crawl-delay of the matching group in milliseconds, or -1 if none was given.
+     */
+    public long crawlDelayMs() {
+        return crawlDelayMs;
+    }
+
+    private static RobotsRules disallowAll() {
+        Node root = new Node();
+        insert(root, "/", false);
+        return new RobotsRules(root, -1);
+    }
+
+    // "Googlebot/2.1 (+http://...)" -> "googlebot"
+    private static String productToken(String userAgent) {
+        int end = 0;
+        while (end < userAgent.length()) {
+            char c = userAgent.charAt(end);
+            if (!(Character.isLetterOrDigit(c) || c == '-' || c == '_')) {
+                break;
+            }
+            end++;
+        }
+        return userAgent.substring(0, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static long parseDelay(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            return seconds >= 0 && seconds <= 86_400 ? (long) (seconds * 1000) : -1;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    // Upper-case percent-escapes so patterns compare like canonical URLs do.
+    private static String normalize(String pattern) {
+        StringBuilder sb = new StringBuilder(pattern.length() + 1);
+        if (pattern.charAt(0) != '/' && pattern.charAt(0) != '*') {
+            sb.append('/');
+        }
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '%' && i + 2 < pattern.length()) {
+                sb.append('%')
+                        .append(Character.toUpperCase(pattern.charAt(i + 1)))
+                        .append(Character.toUpperCase(pattern.charAt(i + 2)));
+                i += 2;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void insert(Node root, String pattern, boolean allow) {
+        boolean anchored = pattern.endsWith("$");
+        int length = anchored ? pattern.length() - 1 : pattern.length();
+        Node node = root;
+        for (int i = 0; i < length; i++) {
+            char c = pattern.charAt(i);
+            if (c == '*') {
+                if (node.star == null) {
+                    node.star = new Node();
+                    node.star.wildcard = true;
+                }
+                node = node.star;
+            } else {
+                node = node.childOrCreate(c);
+            }
+        }
+        if (anchored) {
+            if (beats(length, allow, node.endRuleLength)) {
+                node.endRuleLength = length;
+                node.endRuleAllow = allow;
+            }
+        } else if (beats(length, allow, node.ruleLength)) {
+            node.ruleLength = length;
+            node.ruleAllow = allow;
+        }
+    }
+
+    private static boolean beats(int length, boolean allow, int bestLength) {
+        return length > bestLength || (length == bestLength && allow);
+    }
+
+    private static final class Group {
+        final List<String> agents = new ArrayList<>();
+        final List<String[]> rules = new ArrayList<>();
+        long crawlDelayMs = -1;
+    }
+
+    // Live NFA states while matching one path; small, so membership is a linear scan.
+    private static final class NodeSet {
+        Node[] nodes = new Node[8];
+        int size;
+
+        void add(Node node) {
+            for (int i = 0; i < size; i++) {
+                if (nodes[i] == node) {
+                    return;
+                }
+            }
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            nodes[size++] = node;
+        }
+
+        // The node plus the wildcard nodes reachable from it without consuming a character.
+        void addWithWildcards(Node node) {
+            for (; node != null; node = node.star) {
+                add(node);
+            }
+        }
+    }
+
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        Node star;
+        boolean wildcard;
+        int ruleLength = -1;
+        boolean ruleAllow;
+        int endRuleLength = -1;
+        boolean endRuleAllow;
+
+        Node child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node childOrCreate(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+
+        boolean isLeafless() {
+            return keys.length == 0 && star == null;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.crawler.crawl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-job set of visited URL fingerprints, held entirely off-heap.
+ * <p>
+ * Fingerprints live in open-addressing {@code long} tables (8 bytes per slot, linear probing)
+ * inside direct buffers. The key space is split into {@value #STRIPES} stripes by the top bits
+ * of the fingerprint, each with its own lock and its own table, so there is no global lock
+ * and a resize only blocks one stripe. A Bloom filter in front answers most "never seen"
+ * cases with a few bit reads and lets the insert skip the equality probe.
+ * <p>
+ * Two different URLs with the same 64-bit fingerprint are treated as the same URL; at ten
+ * million URLs the chance of any such collision is around one in a million.
+ */
+public final class SeenUrlSet {
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int STRIPES = 64;
+    private static final int STRIPE_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(STRIPES);
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int MAX_SLOTS = 1 << 27;
+    private static final double MAX_LOAD = 0.8;
+
+    private static final int BLOOM_BITS_PER_URL = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    // 0 marks an empty slot, so a real fingerprint of 0 is stored as this value instead.
+    private static final long EMPTY = 0L;
+    private static final long ZERO_SUBSTITUTE = 0x9e3779b97f4a7c15L;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final ByteBuffer bloom;
+    private final long bloomMask;
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * @param expectedUrls sizing hint for the Bloom filter; the tables grow on demand
+     */
+    public SeenUrlSet(long expectedUrls) {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        long bits = Long.highestOneBit(Math.max(1L << 16, expectedUrls * BLOOM_BITS_PER_URL - 1) << 1);
+        bits = Math.min(bits, 1L << 33);
+        this.bloom = ByteBuffer.allocateDirect((int) (bits >>> 3)).order(ByteOrder.nativeOrder());
+        this.bloomMask = bits - 1;
+    }
+
+    /**
+     * Record a fingerprint.
+     *
+     * @return true if it was not in the set before
+     */
+    public boolean add(long fingerprint) {
+        long fp = fingerprint == EMPTY ? ZERO_SUBSTITUTE : fingerprint;
+        Stripe stripe = stripes[(int) (fp >>> STRIPE_SHIFT)];
+        stripe.lock.lock();
+        try {
+            // The Bloom check must happen under the stripe lock: a concurrent add of the same
+            // fingerprint could otherwise also see "absent" and skip the equality probe.
+            boolean added;
+            if (bloomMightContain(fp)) {
+                added = stripe.insert(fp, true);
+            } else {
+                added = stripe.insert(fp, false);
+                bloomPut(fp);
+            }
+            if (added) {
+                size.increment();
+            }
+            return added;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public boolean contains(long fingerprint) {
+        long fp = fingerprint == EMPTY ? ZERO_SUBSTITUTE : fingerprint;
+        if (!bloomMightContain(fp)) {
+            return false;
+        }
+        Stripe stripe = stripes[(int) (fp >>> STRIPE_SHIFT)];
+        stripe.lock.lock();
+        try {
+            return stripe.contains(fp);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public long size() {
+        return size.sum();
+    }
+
+    /**
+     * Direct memory held by the tables and the Bloom filter.
+     */
+    public long offHeapBytes() {
+        long bytes = bloom.capacity();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                bytes += stripe.table.capacity();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return bytes;
+    }
+
+    private boolean bloomMightContain(long fp) {
+        long h2 = Fingerprints.mix(fp) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = (fp + i * h2) & bloomMask;
+            long word = (long) LONGS.getAcquire(bloom, (int) (bit >>> 6) << 3);
+            if ((word & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void bloomPut(long fp) {
+        long h2 = Fingerprints.mix(fp) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = (fp + i * h2) & bloomMask;
+            LONGS.getAndBitwiseOrRelease(bloom, (int) (bit >>> 6) << 3, 1L << bit);
+        }
+    }
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        ByteBuffer table = allocate(INITIAL_SLOTS);
+        int mask = INITIAL_SLOTS - 1;
+        int count;
+        int resizeAt = (int) (INITIAL_SLOTS * MAX_LOAD);
+
+        // Caller holds the lock. When checkExisting is false the Bloom filter has proven the
+        // fingerprint absent, so the probe only looks for a free slot.
+        boolean insert(long fp, boolean checkExisting) {
+            int slot = (int) fp & mask;
+            while (true) {
+                long current = table.getLong(slot << 3);
+                if (current == EMPTY) {
+                    break;
+                }
+                if (checkExisting && current == fp) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table.putLong(slot << 3, fp);
+            if (++count >= resizeAt) {
+                grow();
+            }
+            return true;
+        }
+
+        boolean contains(long fp) {
+            int slot = (int) fp & mask;
+            while (true) {
+                long current = table.getLong(slot << 3);
+                if (current == EMPTY) {
+                    return false;
+                }
+                if (current == fp) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private void grow() {
+            int slots = mask + 1;
+            if (slots >= MAX_SLOTS) {
+                if (count >= slots - 1) {
+                    throw new IllegalStateException("Seen-URL set is full");
+                }
+                resizeAt = slots - 1;
+                return;
+            }
+            ByteBuffer old = table;
+            int newSlots = slots << 1;
+            table = allocate(newSlots);
+            mask = newSlots - 1;
+            resizeAt = (int) (newSlots * MAX_LOAD);
+            for (int i = 0; i < slots; i++) {
+                long fp = old.getLong(i << 3);
+                if (fp != EMPTY) {
+                    int slot = (int) fp & mask;
+                    while (table.getLong(slot << 3) != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table.putLong(slot << 3, fp);
+                }
+            }
+        }
+
+        private static ByteBuffer allocate(int slots) {
+            return ByteBuffer.allocateDirect(slots * Long.BYTES).order(ByteOrder.nativeOrder());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.crawler.crawl;
+
+import java.util.Arrays;
+
+/**
+ * Incremental 64-bit SimHash over the visible text of a page, fed byte by byte by
+ * {@link HtmlLinkScanner} while the body streams in.
+ * <p>
+ * Text is split into lower-cased words (ASCII letters and digits; any non-ASCII UTF-8 byte
+ * counts as a word byte), and every run of three consecutive words is one weighted feature.
+ * Pages whose text differs only in a few places end up a small Hamming distance apart.
+ * Not thread-safe; one instance per parser, reset per page.
+ */
+public final class SimHash {
+
+    private static final int SHINGLE = 3;
+
+    private final int[] weights = new int[64];
+    private long word = Fingerprints.FNV_OFFSET;
+    private boolean inWord;
+    private long previous1;
+    private long previous2;
+    private int words;
+    private int shingles;
+
+    public void reset() {
+        Arrays.fill(weights, 0);
+        word = Fingerprints.FNV_OFFSET;
+        inWord = false;
+        previous1 = 0;
+        previous2 = 0;
+        words = 0;
+        shingles = 0;
+    }
+
+    public void accept(byte b) {
+        if ((b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b < 0) {
+            word = (word ^ (b & 0xff)) * Fingerprints.FNV_PRIME;
+            inWord = true;
+        } else if (b >= 'A' && b <= 'Z') {
+            word = (word ^ (b | 0x20)) * Fingerprints.FNV_PRIME;
+            inWord = true;
+        } else if (inWord) {
+            endWord();
+        }
+    }
+
+    /**
+     * Word boundary that is not in the text itself, e.g. a tag between two words.
+     */
+    public void separator() {
+        if (inWord) {
+            endWord();
+        }
+    }
+
+    /**
+     * Number of features that went into {@link #value()}; tiny pages are not reliable duplicates.
+     */
+    public int shingles() {
+        return shingles;
+    }
+
+    public long value() {
+        if (inWord) {
+            endWord();
+        }
+        long hash = 0;
+        for (int i = 0; i < 64; i++) {
+            if (weights[i] > 0) {
+                hash |= 1L << i;
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private void endWord() {
+        long current = word;
+        word = Fingerprints.FNV_OFFSET;
+        inWord = false;
+        if (++words >= SHINGLE) {
+            long feature = Fingerprints.mix(previous2 ^ Long.rotateLeft(previous1, 21) ^ Long.rotateLeft(current, 42));
+            for (int i = 0; i < 64; i++) {
+                weights[i] += (int) ((feature >>> i) & 1) * 2 - 1;
+            }
+            shingles++;
+        }
+        previous2 = previous1;
+        previous1 = current;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.crawler.crawl;
+
+import java.util.Locale;
+
+/**
+ * Per-host politeness budget selected by {@code CrawlRequest.speed}.
+ * The frontend sends safe / balanced / aggressive; older clients send "medium".
+ */
+public enum SpeedPreset {
+
+    SAFE(2000, 1, 2),
+    BALANCED(500, 2, 8),
+    AGGRESSIVE(100, 8, 32);
+
+    private final long minDelayMs;
+    private final int maxConnections;
+    private final int connectionCeiling;
+
+    SpeedPreset(long minDelayMs, int maxConnections, int connectionCeiling) {
+        this.minDelayMs = minDelayMs;
+        this.maxConnections = maxConnections;
+        this.connectionCeiling = connectionCeiling;
+    }
+
+    /**
+     * Minimum gap between two request starts against the same host.
+     */
+    public long minDelayMs() {
+        return minDelayMs;
+    }
+
+    /**
+     * Concurrent requests allowed against a host at first contact.
+     */
+    public int maxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Upper bound for the per-host concurrency the adaptive controller may grow to.
+     */
+    public int connectionCeiling() {
+        return connectionCeiling;
+    }
+
+    public static SpeedPreset from(String speed) {
+        if (speed == null) {
+            return BALANCED;
+        }
+        return switch (speed.trim().toLowerCase(Locale.ROOT)) {
+            case "safe", "slow", "low" -> SAFE;
+            case "aggressive", "fast", "high" -> AGGRESSIVE;
+            default -> BALANCED;
+        };
+    }
+}
@@ -0,0 +1,557 @@
+package com.example.crawler.crawl;
+
+import java.net.IDN;
+import java.util.Arrays;
+
+/**
+ * Resolves and normalizes http(s) links without going through {@link java.net.URI}.
+ * <p>
+ * The canonical form has a lowercase scheme and host, no userinfo, no default port, no
+ * fragment, dot-segments removed, percent-escapes normalized (unreserved characters decoded,
+ * hex digits uppercased, illegal characters encoded) and query parameters sorted. The result
+ * is written into a reusable char buffer; {@link #fingerprint()} hashes that buffer directly,
+ * so a link that turns out to be a duplicate never becomes a {@code String}.
+ * <p>
+ * Instances keep scratch buffers and are not thread-safe; use one per worker or per page.
+ */
+public final class UrlCanonicalizer {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private char[] out = new char[256];
+    private int len;
+    private int hostStart;
+    private int hostEnd;
+
+    private final StringBuilder joined = new StringBuilder(256);
+    private int[] segments = new int[32];
+    private char[] params = new char[128];
+    private int[] paramBounds = new int[32];
+
+    /**
+     * Canonicalize an absolute URL.
+     *
+     * @return false if the input is not an absolute http(s) URL with a usable host
+     */
+    public boolean canonicalize(CharSequence url) {
+        int start = 0;
+        int end = url.length();
+        while (start < end && url.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && url.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int hash = indexOf(url, '#', start, end);
+        if (hash >= 0) {
+            end = hash;
+        }
+        int colon = schemeEnd(url, start, end);
+        if (colon < 0) {
+            return false;
+        }
+        boolean https;
+        if (colon - start == 4 && regionMatchesIgnoreCase(url, start, "http")) {
+            https = false;
+        } else if (colon - start == 5 && regionMatchesIgnoreCase(url, start, "https")) {
+            https = true;
+        } else {
+            return false;
+        }
+        int p = colon + 1;
+        while (p < end && (url.charAt(p) == '/' || url.charAt(p) == '\\')) {
+            p++;
+        }
+        if (p - colon - 1 < 2) {
+            return false;
+        }
+        len = 0;
+        append(https ? "https://" : "http://");
+
+        int authorityEnd = p;
+        while (authorityEnd < end) {
+            char c = url.charAt(authorityEnd);
+            if (c == '/' || c == '?' || c == '\\') {
+                break;
+            }
+            authorityEnd++;
+        }
+        int at = lastIndexOf(url, '@', p, authorityEnd);
+        if (at >= 0) {
+            p = at + 1;
+        }
+        int portColon;
+        if (p < authorityEnd && url.charAt(p) == '[') {
+            int close = indexOf(url, ']', p, authorityEnd);
+            if (close < 0) {
+                return false;
+            }
+            portColon = close + 1 < authorityEnd && url.charAt(close + 1) == ':' ? close + 1 : -1;
+        } else {
+            portColon = indexOf(url, ':', p, authorityEnd);
+        }
+        int hostLimit = portColon >= 0 ? portColon : authorityEnd;
+        if (!appendHost(url, p, hostLimit)) {
+            return false;
+        }
+        if (portColon >= 0 && !appendPort(url, portColon + 1, authorityEnd, https ? 443 : 80)) {
+            return false;
+        }
+
+        int query = indexOf(url, '?', authorityEnd, end);
+        int pathEnd = query >= 0 ? query : end;
+        int pathStart = len;
+        if (authorityEnd == pathEnd) {
+            append('/');
+        } else {
+            appendEncoded(url, authorityEnd, pathEnd, true);
+            removeDotSegments(pathStart);
+        }
+        if (query >= 0 && query + 1 < end) {
+            appendSortedQuery(url, query + 1, end);
+        }
+        return true;
+    }
+
+    /**
+     * Resolve {@code href} against an absolute base URL and canonicalize the result.
+     *
+     * @return false if the link is not http(s) (mailto:, javascript:, ...) or is malformed
+     */
+    public boolean resolve(CharSequence base, CharSequence href) {
+        int start = 0;
+        int end = href.length();
+        while (start < end && href.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && href.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (schemeEnd(href, start, end) >= 0) {
+            return canonicalize(href.subSequence(start, end));
+        }
+        int baseColon = schemeEnd(base, 0, base.length());
+        if (baseColon < 0) {
+            return false;
+        }
+        joined.setLength(0);
+        char first = start < end ? href.charAt(start) : '#';
+        if (first == '/' && start + 1 < end && href.charAt(start + 1) == '/') {
+            joined.append(base, 0, baseColon + 1);
+        } else if (first == '/') {
+            joined.append(base, 0, authorityEnd(base, baseColon));
+        } else if (first == '?') {
+            joined.append(base, 0, queryStart(base, baseColon));
+        } else if (first == '#') {
+            int fragment = indexOf(base, '#', 0, base.length());
+            joined.append(base, 0, fragment >= 0 ? fragment : base.length());
+        } else {
+            int pathStart = authorityEnd(base, baseColon);
+            int q = queryStart(base, baseColon);
+            int slash = lastIndexOf(base, '/', pathStart, q);
+            if (slash < 0) {
+                joined.append(base, 0, pathStart).append('/');
+            } else {
+                joined.append(base, 0, slash + 1);
+            }
+        }
+        joined.append(href, start, end);
+        return canonicalize(joined);
+    }
+
+    /**
+     * Stable 64-bit fingerprint of the current canonical URL; equal to
+     * {@code Fingerprints.fingerprint64(url())}.
+     */
+    public long fingerprint() {
+        return Fingerprints.fingerprint64(out, 0, len);
+    }
+
+    public String url() {
+        return new String(out, 0, len);
+    }
+
+    /**
+     * Append the current canonical URL without materializing it as a String.
+     */
+    public void appendTo(StringBuilder sb) {
+        sb.append(out, 0, len);
+    }
+
+    public String host() {
+        return new String(out, hostStart, hostEnd - hostStart);
+    }
+
+    /**
+     * Scope check behind {@code restrictToDomain}: true if the current host is the seed host,
+     * treating {@code www.example.com} and {@code example.com} as the same site.
+     */
+    public boolean isSameSite(String seedHost) {
+        int a = hostStart;
+        int aEnd = hostEnd;
+        if (aEnd - a > 4 && out[a] == 'w' && out[a + 1] == 'w' && out[a + 2] == 'w' && out[a + 3] == '.') {
+            a += 4;
+        }
+        int b = seedHost.startsWith("www.") ? 4 : 0;
+        if (aEnd - a != seedHost.length() - b) {
+            return false;
+        }
+        while (a < aEnd) {
+            if (out[a++] != seedHost.charAt(b++)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Host of an already canonical URL, by scanning rather than parsing.
+     */
+    public static String hostOf(CharSequence canonicalUrl) {
+        int colon = indexOf(canonicalUrl, ':', 0, canonicalUrl.length());
+        if (colon < 0) {
+            return "";
+        }
+        int start = colon + 3;
+        int end = start;
+        int n = canonicalUrl.length();
+        if (start < n && canonicalUrl.charAt(start) == '[') {
+            end = indexOf(canonicalUrl, ']', start, n) + 1;
+        } else {
+            while (end < n) {
+                char c = canonicalUrl.charAt(end);
+                if (c == ':' || c == '/' || c == '?') {
+                    break;
+                }
+                end++;
+            }
+        }
+        return end > start ? canonicalUrl.subSequence(start, end).toString() : "";
+    }
+
+    private boolean appendHost(CharSequence url, int from, int to) {
+        while (to > from && url.charAt(to - 1) == '.') {
+            to--;
+        }
+        if (to <= from) {
+            return false;
+        }
+        hostStart = len;
+        for (int i = from; i < to; i++) {
+            char c = url.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                append((char) (c + ('a' - 'A')));
+            } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_' || c == '[' || c == ']' || c == ':') {
+                append(c);
+            } else if (c > 0x7f) {
+                len = hostStart;
+                return appendIdnHost(url, from, to);
+            } else {
+                return false;
+            }
+        }
+        hostEnd = len;
+        return true;
+    }
+
+    private boolean appendIdnHost(CharSequence url, int from, int to) {
+        try {
+            String ascii = IDN.toASCII(url.subSequence(from, to).toString(), IDN.ALLOW_UNASSIGNED);
+            for (int i = 0; i < ascii.length(); i++) {
+                append(Character.toLowerCase(ascii.charAt(i)));
+            }
+            hostEnd = len;
+            return hostEnd > hostStart;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private boolean appendPort(CharSequence url, int from, int to, int defaultPort) {
+        int port = 0;
+        for (int i = from; i < to; i++) {
+            char c = url.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            port = port * 10 + (c - '0');
+            if (port > 65535) {
+                return false;
+            }
+        }
+        if (from < to && port != defaultPort) {
+            append(':');
+            append(Integer.toString(port));
+        }
+        return true;
+    }
+
+    // Copy a path or query range, normalizing percent-escapes and encoding illegal characters.
+    private void appendEncoded(CharSequence url, int from, int to, boolean path) {
+        for (int i = from; i < to; i++) {
+            char c = url.charAt(i);
+            if (c == '%') {
+                int hi = i + 2 < to ? hexValue(url.charAt(i + 1)) : -1;
+                int lo = hi >= 0 ? hexValue(url.charAt(i + 2)) : -1;
+                if (lo < 0) {
+                    append("%25");
+                    continue;
+                }
+                char decoded = (char) (hi << 4 | lo);
+                if (isUnreserved(decoded)) {
+                    append(decoded);
+                } else {
+                    appendEscape(decoded);
+                }
+                i += 2;
+            } else if (path && c == '\\') {
+                append('/');
+            } else if (c < 0x80 && !isIllegal(c)) {
+                append(c);
+            } else if (c < 0x80) {
+                appendEscape(c);
+            } else {
+                int cp = Character.codePointAt(url, i);
+                if (Character.charCount(cp) == 2) {
+                    i++;
+                }
+                appendUtf8(cp);
+            }
+        }
+    }
+
+    // RFC 3986 section 5.2.4, in place on out[pathStart, len). The path starts with '/'.
+    private void removeDotSegments(int pathStart) {
+        int read = pathStart;
+        int write = pathStart;
+        int depth = 0;
+        while (read < len) {
+            int segStart = read + 1;
+            int segEnd = segStart;
+            while (segEnd < len && out[segEnd] != '/') {
+                segEnd++;
+            }
+            int segLen = segEnd - segStart;
+            boolean last = segEnd == len;
+            boolean dot = segLen == 1 && out[segStart] == '.';
+            boolean dotDot = segLen == 2 && out[segStart] == '.' && out[segStart + 1] == '.';
+            if (dot || dotDot) {
+                if (dotDot && depth > 0) {
+                    write = segments[--depth];
+                }
+                if (last) {
+                    out[write++] = '/';
+                }
+            } else {
+                if (depth == segments.length) {
+                    segments = Arrays.copyOf(segments, depth * 2);
+                }
+                segments[depth++] = write;
+                out[write++] = '/';
+                System.arraycopy(out, segStart, out, write, segLen);
+                write += segLen;
+            }
+            read = segEnd;
+        }
+        len = write;
+    }
+
+    // Normalize each parameter into the params scratch buffer, then append them sorted.
+    private void appendSortedQuery(CharSequence url, int from, int to) {
+        int bodyStart = len;
+        int count = 0;
+        int paramsLen = 0;
+        int i = from;
+        while (i <= to) {
+            int amp = indexOf(url, '&', i, to);
+            int paramEnd = amp >= 0 ? amp : to;
+            if (paramEnd > i) {
+                int before = len;
+                appendEncoded(url, i, paramEnd, false);
+                int encodedLen = len - before;
+                if (paramsLen + encodedLen > params.length) {
+                    params = Arrays.copyOf(params, Math.max(params.length * 2, paramsLen + encodedLen));
+                }
+                System.arraycopy(out, before, params, paramsLen, encodedLen);
+                len = before;
+                if (2 * count + 2 > paramBounds.length) {
+                    paramBounds = Arrays.copyOf(paramBounds, paramBounds.length * 2);
+                }
+                paramBounds[2 * count] = paramsLen;
+                paramBounds[2 * count + 1] = encodedLen;
+                paramsLen += encodedLen;
+                count++;
+            }
+            i = paramEnd + 1;
+        }
+        if (count == 0) {
+            return;
+        }
+        // Insertion sort: parameter lists are short and this keeps the sort allocation-free.
+        for (int a = 1; a < count; a++) {
+            int start = paramBounds[2 * a];
+            int length = paramBounds[2 * a + 1];
+            int b = a - 1;
+            while (b >= 0 && compareParams(paramBounds[2 * b], paramBounds[2 * b + 1], start, length) > 0) {
+                paramBounds[2 * b + 2] = paramBounds[2 * b];
+                paramBounds[2 * b + 3] = paramBounds[2 * b + 1];
+                b--;
+            }
+            paramBounds[2 * b + 2] = start;
+            paramBounds[2 * b + 3] = length;
+        }
+        len = bodyStart;
+        append('?');
+        for (int p = 0; p < count; p++) {
+            if (p > 0) {
+                append('&');
+            }
+            ensureCapacity(paramBounds[2 * p + 1]);
+            System.arraycopy(params, paramBounds[2 * p], out, len, paramBounds[2 * p + 1]);
+            len += paramBounds[2 * p + 1];
+        }
+    }
+
+    private int compareParams(int aStart, int aLen, int bStart, int bLen) {
+        int n = Math.min(aLen, bLen);
+        for (int k = 0; k < n; k++) {
+            int diff = params[aStart + k] - params[bStart + k];
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return aLen - bLen;
+    }
+
+    private void appendUtf8(int cp) {
+        if (cp < 0x800) {
+            appendEscape(0xc0 | cp >> 6);
+            appendEscape(0x80 | cp & 0x3f);
+        } else if (cp < 0x10000) {
+            appendEscape(0xe0 | cp >> 12);
+            appendEscape(0x80 | cp >> 6 & 0x3f);
+            appendEscape(0x80 | cp & 0x3f);
+        } else {
+            appendEscape(0xf0 | cp >> 18);
+            appendEscape(0x80 | cp >> 12 & 0x3f);
+            appendEscape(0x80 | cp >> 6 & 0x3f);
+            appendEscape(0x80 | cp & 0x3f);
+        }
+    }
+
+    private void appendEscape(int b) {
+        ensureCapacity(3);
+        out[len++] = '%';
+        out[len++] = HEX[b >> 4 & 0xf];
+        out[len++] = HEX[b & 0xf];
+    }
+
+    private void append(char c) {
+        ensureCapacity(1);
+        out[len++] = c;
+    }
+
+    private void append(String s) {
+        ensureCapacity(s.length());
+        s.getChars(0, s.length(), out, len);
+        len += s.length();
+    }
+
+    private void ensureCapacity(int extra) {
+        if (len + extra > out.length) {
+            out = Arrays.copyOf(out, Math.max(out.length * 2, len + extra));
+        }
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static boolean isIllegal(char c) {
+        return c <= ' ' || c == 0x7f || c == '"' || c == '<' || c == '>' || c == '\\'
+                || c == '^' || c == '`' || c == '{' || c == '|' || c == '}' || c == '[' || c == ']';
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    // Index of the ':' ending a valid scheme, or -1 if the reference has no scheme.
+    private static int schemeEnd(CharSequence s, int start, int end) {
+        if (start >= end || !Character.isLetter(s.charAt(start)) || s.charAt(start) > 0x7f) {
+            return -1;
+        }
+        for (int i = start + 1; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == ':') {
+                return i;
+            }
+            boolean schemeChar = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.';
+            if (!schemeChar) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int authorityEnd(CharSequence base, int schemeColon) {
+        int i = schemeColon + 3;
+        int n = base.length();
+        while (i < n) {
+            char c = base.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static int queryStart(CharSequence base, int schemeColon) {
+        int i = authorityEnd(base, schemeColon);
+        int n = base.length();
+        while (i < n && base.charAt(i) != '?' && base.charAt(i) != '#') {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean regionMatchesIgnoreCase(CharSequence s, int start, String lower) {
+        for (int i = 0; i < lower.length(); i++) {
+            if (Character.toLowerCase(s.charAt(start + i)) != lower.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence s, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(CharSequence s, char c, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.crawler.crawl;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A running job's visit counters, kept in memory and written behind to its database row.
+ * <p>
+ * Workers only bump {@link LongAdder}s, which never contend. {@link #flush} hands the
+ * increments since the previous flush to a writer that adds them to the row, so flushes from
+ * several nodes of a job add up instead of overwriting each other. The totals only grow, so
+ * an increment racing with a flush simply lands in the next one.
+ */
+public final class VisitCounters {
+
+    private final LongAdder visits = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder responseMs = new LongAdder();
+
+    // Totals already handed to a writer; guarded by flushLock, which is held while it writes.
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private long flushedVisits;
+    private long flushedErrors;
+    private long flushedDuplicates;
+    private long flushedResponseMs;
+
+    public void record(int elapsedMs, boolean error, boolean duplicate) {
+        responseMs.add(elapsedMs);
+        if (error) {
+            errors.increment();
+        }
+        if (duplicate) {
+            duplicates.increment();
+        }
+        // Last, so a concurrent reader never sees a visit without its response time.
+        visits.increment();
+    }
+
+    /**
+     * Carry over totals a previous run already wrote, as restored from its checkpoint.
+     */
+    public void restore(long visits, long responseMs) {
+        flushLock.lock();
+        try {
+            this.visits.add(visits);
+            this.responseMs.add(responseMs);
+            flushedVisits += visits;
+            flushedResponseMs += responseMs;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public long visits() {
+        return visits.sum();
+    }
+
+    public long responseMs() {
+        return responseMs.sum();
+    }
+
+    /**
+     * Increments not yet flushed, as of some moment during the call.
+     */
+    public Delta pending() {
+        flushLock.lock();
+        try {
+            return delta();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Hand the pending increments to {@code writer}, unless there are none. Flushes run one
+     * at a time; if the writer throws, the increments stay pending for the next flush.
+     */
+    public void flush(Consumer<Delta> writer) {
+        flushLock.lock();
+        try {
+            Delta delta = delta();
+            if (delta.visits() == 0) {
+                return;
+            }
+            writer.accept(delta);
+            flushedVisits += delta.visits();
+            flushedErrors += delta.errors();
+            flushedDuplicates += delta.duplicates();
+            flushedResponseMs += delta.responseMs();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private Delta delta() {
+        // Visits first: record() bumps them last, so every counted visit's other increments are in.
+        long visitsNow = visits.sum();
+        return new Delta(visitsNow - flushedVisits, errors.sum() - flushedErrors,
+                duplicates.sum() - flushedDuplicates, responseMs.sum() - flushedResponseMs);
+    }
+
+    /**
+     * Increments since the last flush.
+     */
+    public record Delta(long visits, long errors, long duplicates, long responseMs) {
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.crawler.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * A batch of discovered URLs on its way from the node that found them to the node whose
+ * hosts they belong to, in a partitioned job. The payload is a deflated
+ * {@link com.example.crawler.crawl.HandoffBatch}; the row is deleted once the target has
+ * queued its URLs.
+ */
+@Entity
+@Table(name = "crawl_handoff", indexes = @Index(name = "idx_crawl_handoff_target", columnList = "jobId,targetNode"))
+public class CrawlHandoff {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 36, nullable = false)
+    private String jobId;
+
+    @Column(length = 64, nullable = false)
+    private String targetNode;
+
+    private int urls;
+
+    @Column(nullable = false, length = 4194304)
+    private byte[] payload;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    public CrawlHandoff() {
+    }
+
+    public CrawlHandoff(String jobId, String targetNode, int urls, byte[] payload) {
+        this.jobId = jobId;
+        this.targetNode = targetNode;
+        this.urls = urls;
+        this.payload = payload;
+        this.createdAt = Instant.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getTargetNode() {
+        return targetNode;
+    }
+
+    public int getUrls() {
+        return urls;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
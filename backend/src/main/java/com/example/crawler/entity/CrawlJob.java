@@ -3,13 +3,19 @@ package com.example.crawler.entity;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 
 import java.time.Instant;
 import java.util.UUID;
 
+/**
+ * A crawl job and its counters. Several nodes write the same row, so once a job is created
+ * it is only ever changed through the update queries in CrawlJobRepository, each writing its
+ * own columns; saving a job read earlier would write back its stale counters and status.
+ */
 @Entity
-@Table(name = "crawl_job")
+@Table(name = "crawl_job", indexes = @Index(name = "idx_crawl_job_status", columnList = "status,createdAt"))
 public class CrawlJob {
 
     @Id
@@ -23,7 +29,7 @@ public class CrawlJob {
     private Instant createdAt;
 
     @Column(nullable = false)
-    private String status; // QUEUED, RUNNING, COMPLETED
+    private String status; // QUEUED, RUNNING, PAUSED, COMPLETED, CANCELLED, FAILED
 
     @Column(nullable = false)
     private int progress;
@@ -45,6 +51,31 @@ public class CrawlJob {
     private String speed;
     private boolean extractMetadata;
 
+    // Pages skipped for expansion as near-duplicates of an earlier page.
+    private int duplicates;
+
+    // User who started the job; the unit of fair sharing between tenants.
+    @Column(length = 64)
+    private String owner;
+
+    // Backend node currently running the job, and until when its claim holds without a heartbeat.
+    @Column(length = 64, insertable = false, updatable = false)
+    private String leaseOwner;
+
+    @Column(insertable = false, updatable = false)
+    private Instant leaseExpiresAt;
+
+    // Completed job for the same seed whose pages this re-crawl revalidates, if any.
+    @Column(length = 36)
+    private String previousJobId;
+
+    // Hosts are split across every node that joins the job instead of crawled by one.
+    private boolean partitioned;
+
+    // Page ids handed out so far, in blocks; only ever advanced by CrawlJobRepository.reservePageIds.
+    @Column(insertable = false, updatable = false)
+    private Integer pageIdsReserved;
+
     public CrawlJob() {
         this.id = UUID.randomUUID().toString();
         this.createdAt = Instant.now();
@@ -167,9 +198,44 @@ public class CrawlJob {
     public void setExtractMetadata(boolean extractMetadata) {
         this.extractMetadata = extractMetadata;
     }
-}
 
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public Instant getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+
+    public void setPartitioned(boolean partitioned) {
+        this.partitioned = partitioned;
+    }
 
+    public String getPreviousJobId() {
+        return previousJobId;
+    }
 
+    public void setPreviousJobId(String previousJobId) {
+        this.previousJobId = previousJobId;
+    }
 
+    public int getDuplicates() {
+        return duplicates;
+    }
 
+    public void setDuplicates(int duplicates) {
+        this.duplicates = duplicates;
+    }
+}
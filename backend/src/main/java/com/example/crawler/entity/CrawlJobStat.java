@@ -0,0 +1,78 @@
+package com.example.crawler.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * One bucket of a job's analytics histograms: the pages that fell into it and their summed
+ * response time. Running jobs add to their buckets every counter flush, so reading a job's
+ * analytics costs its bucket rows, not its pages. Status buckets also keep one example page.
+ */
+@Entity
+@Table(name = "crawl_job_stat", indexes = @Index(name = "idx_crawl_job_stat_job", columnList = "jobId"))
+public class CrawlJobStat {
+
+    // jobId/kind/bucket
+    @Id
+    @Column(length = 80, nullable = false, updatable = false)
+    private String id;
+
+    @Column(length = 36, nullable = false)
+    private String jobId;
+
+    // depth, mime, status or minute
+    @Column(length = 8, nullable = false)
+    private String kind;
+
+    @Column(length = 16, nullable = false)
+    private String bucket;
+
+    private long pages;
+    private long responseMs;
+
+    @Column(length = 2048)
+    private String exampleUrl;
+
+    @Column(length = 16)
+    private String exampleType;
+
+    private Integer exampleDepth;
+
+    public CrawlJobStat() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public long getPages() {
+        return pages;
+    }
+
+    public long getResponseMs() {
+        return responseMs;
+    }
+
+    public String getExampleUrl() {
+        return exampleUrl;
+    }
+
+    public String getExampleType() {
+        return exampleType;
+    }
+
+    public Integer getExampleDepth() {
+        return exampleDepth;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.crawler.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * A batch of a job's link-graph edges, each a pair of {@link CrawlPage#getPageId() page ids}.
+ * The payload is a deflated {@link com.example.crawler.crawl.LinkBatch}. Batches are only
+ * appended; an edge recorded twice, after a resume re-fetched a page, is dropped on read.
+ */
+@Entity
+@Table(name = "crawl_link_batch", indexes = @Index(name = "idx_crawl_link_batch_job", columnList = "jobId"))
+public class CrawlLinkBatch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 36, nullable = false)
+    private String jobId;
+
+    private int links;
+
+    @Column(nullable = false, length = 4194304)
+    private byte[] payload;
+
+    public CrawlLinkBatch() {
+    }
+
+    public CrawlLinkBatch(String jobId, int links, byte[] payload) {
+        this.jobId = jobId;
+        this.links = links;
+        this.payload = payload;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public int getLinks() {
+        return links;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+}
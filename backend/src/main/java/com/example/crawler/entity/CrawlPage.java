@@ -0,0 +1,275 @@
+package com.example.crawler.entity;
+
+import com.example.crawler.crawl.PageMetadata;
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One fetched URL of a job: its HTTP validators and the outlinks found on it, kept so a
+ * later re-crawl of the same seed can send conditional requests and, on a 304, rebuild
+ * the page's links without downloading it again. {@code pageId} is the URL's node in the
+ * job's link graph, whose edges are stored as {@link CrawlLinkBatch}es. Head metadata, when
+ * the job extracts it, is kept in the meta* columns; see {@link #getMetadata()}.
+ */
+@Entity
+@Table(name = "crawl_page", indexes = @Index(name = "idx_crawl_page_job_hash", columnList = "jobId,urlHash"))
+public class CrawlPage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 36, nullable = false)
+    private String jobId;
+
+    @Column(nullable = false, length = 2048)
+    private String url;
+
+    // 64-bit fingerprint of the canonical URL; the lookup key across jobs.
+    @Column(nullable = false)
+    private long urlHash;
+
+    // Dense id of the URL within its job, see PageIds; 0 for pages stored before ids existed.
+    private int pageId;
+
+    private int depth;
+
+    private int statusCode;
+
+    @Column(length = 512)
+    private String etag;
+
+    @Column(length = 64)
+    private String lastModified;
+
+    @Column(nullable = false)
+    private Instant fetchedAt;
+
+    // SimHash of the page text, 0 if not computed.
+    private long simHash;
+
+    // Text is a near-duplicate of an earlier page of the job; its links were not followed.
+    private boolean duplicate;
+
+    // Absolute outlink URLs, one per line.
+    @Lob
+    private String outlinks;
+
+    // Head metadata, truncated to the column sizes; all null if the page had none.
+    @Column(length = 512)
+    private String metaTitle;
+
+    @Column(length = 1024)
+    private String metaDescription;
+
+    @Column(length = 128)
+    private String metaRobots;
+
+    @Column(length = 2048)
+    private String metaCanonical;
+
+    // "code<TAB>url" and "og:property<TAB>value" lines.
+    @Column(length = 4096)
+    private String metaHreflang;
+
+    @Column(length = 4096)
+    private String metaOpenGraph;
+
+    public CrawlPage() {
+    }
+
+    public CrawlPage(String jobId, String url, long urlHash, int depth, int statusCode) {
+        this.jobId = jobId;
+        this.url = url;
+        this.urlHash = urlHash;
+        this.depth = depth;
+        this.statusCode = statusCode;
+        this.fetchedAt = Instant.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public long getUrlHash() {
+        return urlHash;
+    }
+
+    public void setUrlHash(long urlHash) {
+        this.urlHash = urlHash;
+    }
+
+    public int getPageId() {
+        return pageId;
+    }
+
+    public void setPageId(int pageId) {
+        this.pageId = pageId;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public void setStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public Instant getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public void setFetchedAt(Instant fetchedAt) {
+        this.fetchedAt = fetchedAt;
+    }
+
+    public String getOutlinks() {
+        return outlinks;
+    }
+
+    public void setOutlinks(String outlinks) {
+        this.outlinks = outlinks;
+    }
+
+    public long getSimHash() {
+        return simHash;
+    }
+
+    public void setSimHash(long simHash) {
+        this.simHash = simHash;
+    }
+
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+
+    public void setDuplicate(boolean duplicate) {
+        this.duplicate = duplicate;
+    }
+
+    public String getMetaTitle() {
+        return metaTitle;
+    }
+
+    public String getMetaDescription() {
+        return metaDescription;
+    }
+
+    public String getMetaRobots() {
+        return metaRobots;
+    }
+
+    public String getMetaCanonical() {
+        return metaCanonical;
+    }
+
+    public String getMetaHreflang() {
+        return metaHreflang;
+    }
+
+    public String getMetaOpenGraph() {
+        return metaOpenGraph;
+    }
+
+    /**
+     * The page's head metadata, or null if none was stored.
+     */
+    public PageMetadata getMetadata() {
+        if (metaTitle == null && metaDescription == null && metaRobots == null && metaCanonical == null
+                && metaHreflang == null && metaOpenGraph == null) {
+            return null;
+        }
+        return new PageMetadata(metaTitle, metaDescription, metaRobots, metaCanonical,
+                decode(metaHreflang), decode(metaOpenGraph));
+    }
+
+    public void setMetadata(PageMetadata metadata) {
+        this.metaTitle = metadata != null ? truncate(metadata.title(), 512) : null;
+        this.metaDescription = metadata != null ? truncate(metadata.description(), 1024) : null;
+        this.metaRobots = metadata != null ? truncate(metadata.robots(), 128) : null;
+        this.metaCanonical = metadata != null ? truncate(metadata.canonical(), 2048) : null;
+        this.metaHreflang = metadata != null ? encode(metadata.hreflang()) : null;
+        this.metaOpenGraph = metadata != null ? encode(metadata.openGraph()) : null;
+    }
+
+    private static String truncate(String value, int max) {
+        return value == null || value.length() <= max ? value : value.substring(0, max);
+    }
+
+    // Whole entries only, up to the column size; tabs and newlines inside values become spaces.
+    private static String encode(Map<String, String> entries) {
+        if (entries.isEmpty()) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            String line = entry.getKey().replaceAll("[\\t\\n]", " ") + '\t'
+                    + entry.getValue().replaceAll("[\\t\\n]", " ") + '\n';
+            if (text.length() + line.length() > 4096) {
+                break;
+            }
+            text.append(line);
+        }
+        return text.isEmpty() ? null : text.toString();
+    }
+
+    private static Map<String, String> decode(String text) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        if (text != null) {
+            for (String line : text.split("\n")) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    entries.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.crawler.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * One node's share of a partitioned job, rewritten on every handoff exchange. Fresh rows
+ * make up the job's hash ring; the counters and the idle flag tell the coordinating node
+ * when the whole job has run dry.
+ */
+@Entity
+@Table(name = "crawl_partition", indexes = @Index(name = "idx_crawl_partition_job", columnList = "jobId"))
+public class CrawlPartition {
+
+    // jobId/nodeId
+    @Id
+    @Column(length = 101, nullable = false, updatable = false)
+    private String id;
+
+    @Column(length = 36, nullable = false)
+    private String jobId;
+
+    @Column(length = 64, nullable = false)
+    private String nodeId;
+
+    // URLs handed to other nodes, and received from them.
+    private long sent;
+    private long received;
+
+    // Nothing queued, in flight or waiting to be handed off on this node.
+    private boolean idle;
+
+    @Column(nullable = false)
+    private Instant updatedAt;
+
+    public CrawlPartition() {
+    }
+
+    public CrawlPartition(String jobId, String nodeId) {
+        this.id = jobId + "/" + nodeId;
+        this.jobId = jobId;
+        this.nodeId = nodeId;
+        this.updatedAt = Instant.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public void setSent(long sent) {
+        this.sent = sent;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public void setReceived(long received) {
+        this.received = received;
+    }
+
+    public boolean isIdle() {
+        return idle;
+    }
+
+    public void setIdle(boolean idle) {
+        this.idle = idle;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
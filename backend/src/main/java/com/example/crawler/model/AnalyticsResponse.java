@@ -11,6 +11,8 @@ public class AnalyticsResponse {
     private Map<String, Long> mimeHistogram;
     // e.g. time bucket label -> avg ms
     private Map<String, Integer> responseTimeline;
+    // e.g. status code -> count; 0 is a fetch without a response
+    private Map<String, Long> statusCounts;
     // minimal table rows for the status table
     private List<StatusRow> statusRows;
 
@@ -38,6 +40,14 @@ public class AnalyticsResponse {
         this.responseTimeline = responseTimeline;
     }
 
+    public Map<String, Long> getStatusCounts() {
+        return statusCounts;
+    }
+
+    public void setStatusCounts(Map<String, Long> statusCounts) {
+        this.statusCounts = statusCounts;
+    }
+
     public List<StatusRow> getStatusRows() {
         return statusRows;
     }
@@ -9,6 +9,7 @@ public class CrawlJobStatus {
     private int pagesQueued;
     private int errors;
     private int avgResponseMs;
+    private int duplicates;
 
     public CrawlJobStatus() {
     }
@@ -79,9 +80,12 @@ public class CrawlJobStatus {
     public void setAvgResponseMs(int avgResponseMs) {
         this.avgResponseMs = avgResponseMs;
     }
-}
-
-
-
 
+    public int getDuplicates() {
+        return duplicates;
+    }
 
+    public void setDuplicates(int duplicates) {
+        this.duplicates = duplicates;
+    }
+}
@@ -21,6 +21,12 @@ public class CrawlRequest {
     
     private boolean extractMetadata;
 
+    // Re-crawl: reuse validators and outlinks of the last completed job for the same seed.
+    private boolean incremental;
+
+    // Split the crawl's hosts across all backend nodes instead of running it on one.
+    private boolean partitioned;
+
     public String getUrl() {
         return url;
     }
@@ -60,9 +66,20 @@ public class CrawlRequest {
     public void setExtractMetadata(boolean extractMetadata) {
         this.extractMetadata = extractMetadata;
     }
-}
-
 
+    public boolean isIncremental() {
+        return incremental;
+    }
 
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
 
+    public boolean isPartitioned() {
+        return partitioned;
+    }
 
+    public void setPartitioned(boolean partitioned) {
+        this.partitioned = partitioned;
+    }
+}
@@ -4,6 +4,7 @@ public class GraphLink {
 
     private String source;
     private String target;
+    private int weight = 1; // links merged into this one
 
     public GraphLink() {
     }
@@ -28,6 +29,14 @@ public class GraphLink {
     public void setTarget(String target) {
         this.target = target;
     }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
 }
 
 
@@ -5,6 +5,11 @@ public class GraphNode {
     private String id;
     private String label;
     private String type; // home, internal, error, external
+    private int size = 1; // pages collapsed into this node
+    private int degree;
+    // position from the server-side layout
+    private double x;
+    private double y;
 
     public GraphNode() {
     }
@@ -38,6 +43,38 @@ public class GraphNode {
     public void setType(String type) {
         this.type = type;
     }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    public void setDegree(int degree) {
+        this.degree = degree;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public void setX(double x) {
+        this.x = x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public void setY(double y) {
+        this.y = y;
+    }
 }
 
 
@@ -6,6 +6,9 @@ public class GraphResponse {
 
     private List<GraphNode> nodes;
     private List<GraphLink> links;
+    // size of the whole graph, of which nodes and links may be a view
+    private int totalNodes;
+    private int totalLinks;
 
     public GraphResponse() {
     }
@@ -30,6 +33,22 @@ public class GraphResponse {
     public void setLinks(List<GraphLink> links) {
         this.links = links;
     }
+
+    public int getTotalNodes() {
+        return totalNodes;
+    }
+
+    public void setTotalNodes(int totalNodes) {
+        this.totalNodes = totalNodes;
+    }
+
+    public int getTotalLinks() {
+        return totalLinks;
+    }
+
+    public void setTotalLinks(int totalLinks) {
+        this.totalLinks = totalLinks;
+    }
 }
 
 
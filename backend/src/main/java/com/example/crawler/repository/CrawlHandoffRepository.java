@@ -0,0 +1,27 @@
+package com.example.crawler.repository;
+
+import com.example.crawler.entity.CrawlHandoff;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface CrawlHandoffRepository extends JpaRepository<CrawlHandoff, Long> {
+
+    List<CrawlHandoff> findTop32ByJobIdAndTargetNodeOrderByIdAsc(String jobId, String targetNode);
+
+    long countByJobId(String jobId);
+
+    // Batches addressed to nodes that left the job go to one that is still in it, which
+    // forwards whatever it doesn't own itself.
+    @Modifying
+    @Query("update CrawlHandoff h set h.targetNode = :to where h.jobId = :jobId and h.targetNode not in :members")
+    int retarget(@Param("jobId") String jobId, @Param("members") Collection<String> members, @Param("to") String to);
+
+    @Modifying
+    @Query("delete from CrawlHandoff h where h.jobId = :jobId")
+    int deleteByJob(@Param("jobId") String jobId);
+}
@@ -2,12 +2,86 @@ package com.example.crawler.repository;
 
 import com.example.crawler.entity.CrawlJob;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface CrawlJobRepository extends JpaRepository<CrawlJob, String> {
 
     Optional<CrawlJob> findTopByOrderByCreatedAtDesc();
+
+    Optional<CrawlJob> findTopByUrlAndStatusOrderByCreatedAtDesc(String url, String status);
+
+    List<CrawlJob> findByStatusInOrderByCreatedAtAsc(Collection<String> statuses);
+
+    // Oldest queued or running jobs whose lease is free, ours, or expired. Rows another node
+    // is claiming right now are skipped instead of waited for. Call inside a transaction.
+    @Query(value = "select * from crawl_job where status in ('QUEUED', 'RUNNING')"
+            + " and (lease_owner is null or lease_owner = :node or lease_expires_at < :now)"
+            + " order by created_at limit :limit for update skip locked", nativeQuery = true)
+    List<CrawlJob> lockClaimable(@Param("node") String node, @Param("now") Instant now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("update CrawlJob j set j.leaseOwner = :node, j.leaseExpiresAt = :until where j.id in :ids")
+    int claim(@Param("ids") Collection<String> ids, @Param("node") String node, @Param("until") Instant until);
+
+    @Modifying
+    @Query("update CrawlJob j set j.leaseOwner = :node, j.leaseExpiresAt = :until where j.id in :ids"
+            + " and j.status = 'RUNNING' and (j.leaseOwner is null or j.leaseExpiresAt < :now)")
+    int takeOver(@Param("ids") Collection<String> ids, @Param("node") String node, @Param("now") Instant now,
+                 @Param("until") Instant until);
+
+    @Modifying
+    @Query("update CrawlJob j set j.leaseExpiresAt = :until where j.id in :ids and j.leaseOwner = :node")
+    int renew(@Param("ids") Collection<String> ids, @Param("node") String node, @Param("until") Instant until);
+
+    @Modifying
+    @Query("update CrawlJob j set j.leaseOwner = null, j.leaseExpiresAt = null where j.id = :id and j.leaseOwner = :node")
+    int releaseLease(@Param("id") String id, @Param("node") String node);
+
+    @Query("select j.owner, count(j) from CrawlJob j where j.status = 'RUNNING' group by j.owner")
+    List<Object[]> countRunningByOwner();
+
+    List<CrawlJob> findByStatusAndPartitionedTrue(String status);
+
+    // Advances the job's page id counter; the caller reads it back in the same transaction,
+    // whose row lock keeps concurrent reservations apart.
+    @Modifying
+    @Query("update CrawlJob j set j.pageIdsReserved = coalesce(j.pageIdsReserved, 0) + :count where j.id = :id")
+    int reservePageIds(@Param("id") String id, @Param("count") int count);
+
+    @Query("select j.pageIdsReserved from CrawlJob j where j.id = :id")
+    Integer findPageIdsReserved(@Param("id") String id);
+
+    // Status changes touch only their own columns, so they never undo counters another node
+    // added through addVisits since the job was read.
+    @Modifying
+    @Transactional
+    @Query("update CrawlJob j set j.status = :status where j.id = :id")
+    int updateStatus(@Param("id") String id, @Param("status") String status);
+
+    @Modifying
+    @Transactional
+    @Query("update CrawlJob j set j.status = 'COMPLETED', j.progress = 100, j.pagesQueued = 0 where j.id = :id")
+    int complete(@Param("id") String id);
+
+    // Visits counted since the last flush, folded into the row in a single statement; the
+    // right-hand sides all see the row as it was, so nodes flushing the same job add up.
+    @Modifying
+    @Transactional
+    @Query("update CrawlJob j set j.pagesVisited = j.pagesVisited + :visits, j.errors = j.errors + :errors,"
+            + " j.duplicates = j.duplicates + :duplicates, j.pagesQueued = :queued,"
+            + " j.avgResponseMs = (cast(j.avgResponseMs as Long) * j.pagesVisited + :responseMs) / (j.pagesVisited + :visits),"
+            + " j.progress = least(99, (j.pagesVisited + :visits) * 100 / (j.pagesVisited + :visits + :queued))"
+            + " where j.id = :id")
+    int addVisits(@Param("id") String id, @Param("visits") int visits, @Param("errors") int errors,
+                  @Param("duplicates") int duplicates, @Param("responseMs") long responseMs, @Param("queued") int queued);
 }
 
 
@@ -0,0 +1,35 @@
+package com.example.crawler.repository;
+
+import com.example.crawler.entity.CrawlJobStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface CrawlJobStatRepository extends JpaRepository<CrawlJobStat, String> {
+
+    List<CrawlJobStat> findByJobId(String jobId);
+
+    // Adds to an existing bucket row; like addVisits, flushes from several nodes of a job add
+    // up. The first example written for a bucket stays. Returns 0 if the row doesn't exist yet.
+    @Modifying
+    @Query("update CrawlJobStat s set s.pages = s.pages + :pages, s.responseMs = s.responseMs + :responseMs,"
+            + " s.exampleUrl = coalesce(s.exampleUrl, :exampleUrl), s.exampleType = coalesce(s.exampleType, :exampleType),"
+            + " s.exampleDepth = coalesce(s.exampleDepth, :exampleDepth) where s.id = :id")
+    int add(@Param("id") String id, @Param("pages") long pages, @Param("responseMs") long responseMs,
+            @Param("exampleUrl") String exampleUrl, @Param("exampleType") String exampleType,
+            @Param("exampleDepth") Integer exampleDepth);
+
+    // Creates a bucket row on its first flush. If another node created it in the meantime, the
+    // duplicate key fails the caller's transaction and its increments stay pending for the next flush.
+    @Modifying
+    @Query(value = "insert into crawl_job_stat (id, job_id, kind, bucket, pages, response_ms, example_url, example_type, example_depth)"
+            + " values (:id, :jobId, :kind, :bucket, :pages, :responseMs, :exampleUrl, :exampleType, :exampleDepth)",
+            nativeQuery = true)
+    int insert(@Param("id") String id, @Param("jobId") String jobId, @Param("kind") String kind,
+               @Param("bucket") String bucket, @Param("pages") long pages, @Param("responseMs") long responseMs,
+               @Param("exampleUrl") String exampleUrl, @Param("exampleType") String exampleType,
+               @Param("exampleDepth") Integer exampleDepth);
+}
@@ -0,0 +1,13 @@
+package com.example.crawler.repository;
+
+import com.example.crawler.entity.CrawlLinkBatch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface CrawlLinkBatchRepository extends JpaRepository<CrawlLinkBatch, Long> {
+
+    @Query("select b.payload from CrawlLinkBatch b where b.jobId = ?1 order by b.id")
+    List<byte[]> findPayloads(String jobId);
+}
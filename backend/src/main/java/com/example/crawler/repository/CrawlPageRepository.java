@@ -0,0 +1,21 @@
+package com.example.crawler.repository;
+
+import com.example.crawler.entity.CrawlPage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface CrawlPageRepository extends JpaRepository<CrawlPage, Long> {
+
+    Optional<CrawlPage> findFirstByJobIdAndUrlHash(String jobId, long urlHash);
+
+    // SimHashes of the job's expanded pages, to rebuild its near-duplicate index on resume.
+    @Query("select p.simHash from CrawlPage p where p.jobId = ?1 and p.duplicate = false and p.simHash <> 0")
+    List<Long> findUniqueSimHashes(String jobId);
+
+    // The job's graph nodes, without the outlink text: page id, URL, depth and status.
+    @Query("select p.pageId, p.url, p.depth, p.statusCode from CrawlPage p where p.jobId = ?1 and p.pageId > 0")
+    List<Object[]> findGraphNodes(String jobId);
+}
@@ -0,0 +1,18 @@
+package com.example.crawler.repository;
+
+import com.example.crawler.entity.CrawlPartition;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface CrawlPartitionRepository extends JpaRepository<CrawlPartition, String> {
+
+    List<CrawlPartition> findByJobId(String jobId);
+
+    @Modifying
+    @Query("delete from CrawlPartition p where p.jobId = :jobId")
+    int deleteByJob(@Param("jobId") String jobId);
+}
@@ -0,0 +1,852 @@
+package com.example.crawler.service;
+
+import com.example.crawler.crawl.AimdPolicy;
+import com.example.crawler.crawl.BodyLimits;
+import com.example.crawler.crawl.ContentDecoder;
+import com.example.crawler.crawl.CrawlJournal;
+import com.example.crawler.crawl.CrawlTask;
+import com.example.crawler.crawl.DiscardingBodySubscriber;
+import com.example.crawler.crawl.DiskFrontier;
+import com.example.crawler.crawl.FairShare;
+import com.example.crawler.crawl.Fingerprints;
+import com.example.crawler.crawl.HtmlBodySubscriber;
+import com.example.crawler.crawl.NearDuplicateIndex;
+import com.example.crawler.crawl.PageIds;
+import com.example.crawler.crawl.PageMetadata;
+import com.example.crawler.crawl.RetryPolicy;
+import com.example.crawler.crawl.RobotsCache;
+import com.example.crawler.crawl.RobotsRules;
+import com.example.crawler.crawl.PageStats;
+import com.example.crawler.crawl.SeenUrlSet;
+import com.example.crawler.crawl.UrlCanonicalizer;
+import com.example.crawler.crawl.VisitCounters;
+import com.example.crawler.entity.CrawlJob;
+import com.example.crawler.entity.CrawlPage;
+import com.example.crawler.repository.CrawlJobRepository;
+import com.example.crawler.repository.CrawlPageRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.net.ssl.SSLHandshakeException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Breadth-first crawl engine. One driver thread per job pulls tasks from the job's
+ * {@link CrawlRun} frontier and hands every fetch to its own virtual thread, so a single
+ * job can keep thousands of requests in flight without tying up platform threads. The
+ * fetch slots themselves are split between jobs and their owners by {@link FairShare}.
+ * Per-host pacing comes from the job's speed preset via {@link com.example.crawler.crawl.HostScheduler},
+ * raised to the host's robots.txt Crawl-delay where one is declared, and adapted from there
+ * to each host's latency and error rate. Transient failures are retried with jittered backoff,
+ * and a host that keeps failing is parked by its circuit breaker instead of tying up workers.
+ * <p>
+ * Every fetched URL is stored as a {@link CrawlPage} under its dense page id, inserted in
+ * batches by the {@link PageWriter}, and the links between pages are stored as the job's
+ * {@link PageGraph}. An incremental job revalidates those
+ * of its previous job with conditional requests and, on a 304, re-queues the stored
+ * outlinks instead of downloading and parsing the page.
+ * <p>
+ * Each run keeps a {@link CrawlJournal} under {@code crawler.checkpoint.dir}. If the backend
+ * stops mid-crawl, the job stays RUNNING and {@link #resume} rebuilds it from the journal.
+ * The same journal backs {@link #pause}; {@link #cancel} stops the job and drops it. Both
+ * interrupt the job's driver thread, which aborts its in-flight fetches and frees the
+ * crawlExecutor thread.
+ * <p>
+ * A partitioned job runs on several nodes at once, each crawling the hosts its
+ * {@link Partition} owns and journaling its own share; {@link PartitionExchange} moves the
+ * URLs between them and tells the coordinating node when the job is done.
+ */
+@Service
+public class CrawlEngine {
+
+    private final CrawlJobRepository jobRepository;
+    private final CrawlLogWriter logWriter;
+    private final CrawlPageRepository pageRepository;
+    private final PageWriter pageWriter;
+    private final HttpClient httpClient;
+    private final RobotsCache robotsCache;
+    private final FairShare fairShare;
+    private final PartitionExchange partitionExchange;
+    private final JobLeases jobLeases;
+    private final PageGraph pageGraph;
+    private final JobAnalytics jobAnalytics;
+    private final Queue<PageParser> parsers = new ConcurrentLinkedQueue<>();
+    private final Map<String, Driver> drivers = new ConcurrentHashMap<>();
+
+    @Value("${crawler.max-in-flight:1024}")
+    private int maxInFlight;
+
+    @Value("${crawler.max-pages:10000}")
+    private int maxPages;
+
+    @Value("${crawler.host-buffer:10000}")
+    private int hostBuffer;
+
+    @Value("${crawler.frontier.dir:${java.io.tmpdir}/crawler-frontier}")
+    private String frontierDir;
+
+    @Value("${crawler.frontier.head-capacity:1024}")
+    private int frontierHeadCapacity;
+
+    @Value("${crawler.frontier.segment-mb:64}")
+    private int frontierSegmentMb;
+
+    @Value("${crawler.seen.expected-urls:1000000}")
+    private long seenExpectedUrls;
+
+    @Value("${crawler.metadata.max-head-bytes:65536}")
+    private long metadataMaxHeadBytes;
+
+    @Value("${crawler.graph.id-block:1024}")
+    private int graphIdBlock;
+
+    @Value("${crawler.graph.link-batch:4096}")
+    private int graphLinkBatch;
+
+    @Value("${crawler.dedup.max-distance:3}")
+    private int dedupMaxDistance;
+
+    @Value("${crawler.dedup.min-shingles:16}")
+    private int dedupMinShingles;
+
+    private final BodyLimits bodyLimits;
+
+    @Value("${crawler.body.drain-bytes:65536}")
+    private long bodyDrainBytes;
+
+    @Value("${crawler.adaptive.enabled:true}")
+    private boolean adaptiveEnabled;
+
+    @Value("${crawler.adaptive.window:20}")
+    private int adaptiveWindow;
+
+    @Value("${crawler.adaptive.latency-factor:2.0}")
+    private double adaptiveLatencyFactor;
+
+    @Value("${crawler.adaptive.max-error-rate:0.05}")
+    private double adaptiveMaxErrorRate;
+
+    @Value("${crawler.adaptive.max-delay-factor:16}")
+    private int adaptiveMaxDelayFactor;
+
+    @Value("${crawler.retry.max-retries:2}")
+    private int retryMaxRetries;
+
+    @Value("${crawler.retry.base-delay-ms:1000}")
+    private long retryBaseDelayMs;
+
+    @Value("${crawler.retry.max-delay-ms:60000}")
+    private long retryMaxDelayMs;
+
+    @Value("${crawler.retry.breaker-threshold:5}")
+    private int breakerThreshold;
+
+    @Value("${crawler.retry.breaker-open-ms:30000}")
+    private long breakerOpenMs;
+
+    @Value("${crawler.retry.breaker-max-open-ms:600000}")
+    private long breakerMaxOpenMs;
+
+    @Value("${crawler.checkpoint.enabled:true}")
+    private boolean checkpointEnabled;
+
+    @Value("${crawler.checkpoint.dir:${crawler.data-dir:data}/checkpoints}")
+    private String checkpointDir;
+
+    @Value("${crawler.checkpoint.interval-ms:5000}")
+    private long checkpointIntervalMs;
+
+    @Value("${crawler.stop-timeout-ms:10000}")
+    private long stopTimeoutMs;
+
+    @Value("${crawler.request-timeout-ms:10000}")
+    private long requestTimeoutMs;
+
+    @Value("${crawler.user-agent:WebCrawlBackend/0.0.1}")
+    private String userAgent;
+
+    public CrawlEngine(CrawlJobRepository jobRepository,
+                       CrawlLogWriter logWriter,
+                       CrawlPageRepository pageRepository,
+                       PageWriter pageWriter,
+                       @Qualifier("crawlHttpClient") HttpClient httpClient,
+                       RobotsCache robotsCache,
+                       FairShare fairShare,
+                       PartitionExchange partitionExchange,
+                       JobLeases jobLeases,
+                       PageGraph pageGraph,
+                       JobAnalytics jobAnalytics,
+                       @Value("${crawler.body.max-bytes:text/html=2097152,application/xhtml+xml=2097152}") String bodyMaxBytes) {
+        this.jobRepository = jobRepository;
+        this.logWriter = logWriter;
+        this.pageRepository = pageRepository;
+        this.pageWriter = pageWriter;
+        this.httpClient = httpClient;
+        this.robotsCache = robotsCache;
+        this.fairShare = fairShare;
+        this.partitionExchange = partitionExchange;
+        this.jobLeases = jobLeases;
+        this.pageGraph = pageGraph;
+        this.jobAnalytics = jobAnalytics;
+        this.bodyLimits = BodyLimits.parse(bodyMaxBytes);
+    }
+
+    /**
+     * Run the job to completion on the calling thread. Meant to be submitted to crawlExecutor.
+     */
+    public void run(String jobId) {
+        execute(jobId, false, false);
+    }
+
+    /**
+     * Continue a job that was RUNNING when the backend stopped, from its crawl journal.
+     * A job without a journal cannot be resumed and is marked FAILED.
+     */
+    public void resume(String jobId) {
+        execute(jobId, true, false);
+    }
+
+    /**
+     * Crawl this node's share of a partitioned job another node coordinates, continuing from
+     * this node's journal of the job if it has one. Returns once the job ends or is stopped.
+     */
+    public void help(String jobId) {
+        execute(jobId, false, true);
+    }
+
+    /**
+     * Make this node the coordinator of a partitioned job it helps with, after it took over
+     * the job's lease. False if it has no part of the job running.
+     */
+    public boolean promote(String jobId) {
+        return partitionExchange.promote(jobId);
+    }
+
+    /**
+     * Stop a QUEUED or RUNNING job but keep its checkpoint, so {@link #resume} can continue it.
+     * Blocks until the job's driver has wound down or {@code crawler.stop-timeout-ms} passed.
+     */
+    public void pause(String jobId) throws InterruptedException {
+        CrawlJob job = jobRepository.findById(jobId)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown jobId " + jobId));
+        if (!"QUEUED".equals(job.getStatus()) && !"RUNNING".equals(job.getStatus())) {
+            throw new IllegalStateException("Cannot pause a " + job.getStatus() + " job");
+        }
+        if ("RUNNING".equals(job.getStatus()) && !checkpointEnabled) {
+            throw new IllegalStateException("Pausing a running job needs crawler.checkpoint.enabled");
+        }
+        if (!stop(jobId, "PAUSED")) {
+            setStatus(jobId, "PAUSED");
+        }
+    }
+
+    /**
+     * Stop a QUEUED, RUNNING or PAUSED job for good and drop its checkpoint.
+     * Blocks like {@link #pause}.
+     */
+    public void cancel(String jobId) throws InterruptedException {
+        CrawlJob job = jobRepository.findById(jobId)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown jobId " + jobId));
+        if (!"QUEUED".equals(job.getStatus()) && !"RUNNING".equals(job.getStatus()) && !"PAUSED".equals(job.getStatus())) {
+            throw new IllegalStateException("Cannot cancel a " + job.getStatus() + " job");
+        }
+        if (!stop(jobId, "CANCELLED")) {
+            deleteJournals(jobId);
+            setStatus(jobId, "CANCELLED");
+            log("CANCEL   ┊ cancelled before running", jobId);
+        }
+    }
+
+    /**
+     * Write the visit counters and histograms of the jobs running here to their rows. Meant
+     * to run every {@code crawler.counters.flush-ms}.
+     */
+    public void flushCounters() {
+        for (Driver driver : drivers.values()) {
+            CrawlRun run = driver.run;
+            if (run != null) {
+                flush(run);
+            }
+        }
+    }
+
+    /**
+     * Counters of a job running here that its row doesn't show yet, or null if the job
+     * doesn't run here.
+     */
+    public LiveCounts liveCounts(String jobId) {
+        Driver driver = drivers.get(jobId);
+        CrawlRun run = driver != null ? driver.run : null;
+        if (run == null) {
+            return null;
+        }
+        return new LiveCounts(run.counters().pending(), run.queued());
+    }
+
+    /**
+     * Histogram increments of a job running here that its bucket rows don't show yet, or
+     * null if the job doesn't run here.
+     */
+    public PageStats.Delta pendingPageStats(String jobId) {
+        Driver driver = drivers.get(jobId);
+        CrawlRun run = driver != null ? driver.run : null;
+        return run != null ? run.pageStats().pending() : null;
+    }
+
+    /**
+     * True if a paused job can continue from a journal rather than starting over.
+     */
+    public boolean hasCheckpoint(CrawlJob job) {
+        return checkpointEnabled && Files.exists(journalFile(job));
+    }
+
+    // Interrupt the job's driver, which aborts its in-flight fetches and finishes the job
+    // with the given status; ABANDONED leaves the job to the node that took over its lease.
+    // Waits for the driver like pause and cancel. False if the job isn't running here.
+    boolean stop(String jobId, String status) throws InterruptedException {
+        Driver driver = drivers.get(jobId);
+        if (driver == null) {
+            return false;
+        }
+        signal(driver, status);
+        driver.finished.await(stopTimeoutMs, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Like {@link #stop}, but returns without waiting for the driver to wind down, for
+     * callers on the shared scheduler thread.
+     */
+    boolean signalStop(String jobId, String status) {
+        Driver driver = drivers.get(jobId);
+        if (driver == null) {
+            return false;
+        }
+        signal(driver, status);
+        return true;
+    }
+
+    private static void signal(Driver driver, String status) {
+        driver.stopStatus = status;
+        driver.thread.interrupt();
+    }
+
+    // A partitioned job has one journal per node, each covering that node's hosts.
+    private Path journalFile(CrawlJob job) {
+        if (job.isPartitioned()) {
+            return Path.of(checkpointDir, job.getId() + "." + jobLeases.nodeId().replaceAll("[^A-Za-z0-9._-]", "_") + ".journal");
+        }
+        return Path.of(checkpointDir, job.getId() + ".journal");
+    }
+
+    // Every node's journal of the job, as far as they share the checkpoint directory.
+    private void deleteJournals(String jobId) {
+        CrawlJournal.delete(Path.of(checkpointDir, jobId + ".journal"));
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(Path.of(checkpointDir), jobId + ".*.journal")) {
+            journals.forEach(CrawlJournal::delete);
+        } catch (IOException ex) {
+            // no checkpoint directory yet, or it cannot be listed; nothing to clean up here
+        }
+    }
+
+    private void execute(String jobId, boolean resume, boolean helper) {
+        Driver driver = new Driver();
+        if (drivers.putIfAbsent(jobId, driver) != null) {
+            return;
+        }
+        Path journalFile = null;
+        Partition partition = null;
+        try {
+            CrawlJob job = jobRepository.findById(jobId).orElseThrow();
+            if (helper ? !"RUNNING".equals(job.getStatus()) || !job.isPartitioned()
+                    : "PAUSED".equals(job.getStatus()) || "CANCELLED".equals(job.getStatus())) {
+                // stopped while it was waiting for an executor thread
+                return;
+            }
+            journalFile = journalFile(job);
+            boolean journaled = checkpointEnabled && Files.exists(journalFile);
+            if (helper || (resume && !journaled && job.isPartitioned())) {
+                // A partition without a journal of its own starts empty; its hosts' URLs
+                // arrive from the other nodes.
+                resume = journaled;
+            }
+            if (resume && !journaled) {
+                log("ERROR    ┊ interrupted by a restart, no checkpoint to resume from", jobId);
+                markFailed(jobId);
+                return;
+            }
+            if (!helper) {
+                job.setStatus("RUNNING");
+                jobRepository.updateStatus(jobId, "RUNNING");
+            }
+            if (resume) {
+                log("INIT     ┊ resume from checkpoint     ┊ seed=%s".formatted(job.getUrl()), jobId);
+            } else if (helper) {
+                log("INIT     ┊ join partitioned crawl     ┊ node=%s".formatted(jobLeases.nodeId()), jobId);
+            } else {
+                log("INIT     ┊ bootstrap crawler session   ┊ seed=%s".formatted(job.getUrl()), jobId);
+            }
+
+            DiskFrontier frontier = new DiskFrontier(Path.of(frontierDir, jobId), job.getMaxDepth() + 1,
+                    frontierHeadCapacity, frontierSegmentMb * 1024L * 1024L);
+            SeenUrlSet seen = new SeenUrlSet(seenExpectedUrls);
+            NearDuplicateIndex nearDuplicates = new NearDuplicateIndex(dedupMaxDistance);
+            AimdPolicy aimd = new AimdPolicy(adaptiveEnabled, adaptiveWindow, adaptiveLatencyFactor,
+                    adaptiveMaxErrorRate, adaptiveMaxDelayFactor);
+            RetryPolicy retry = new RetryPolicy(retryMaxRetries, retryBaseDelayMs, retryMaxDelayMs,
+                    breakerThreshold, breakerOpenMs, breakerMaxOpenMs);
+            PageIds ids = new PageIds(graphIdBlock, count -> pageGraph.reserve(jobId, count));
+            CrawlJournal.Recovered recovered = null;
+            if (resume) {
+                recovered = CrawlJournal.replay(journalFile, seen, ids, frontier, seenExpectedUrls);
+                pageRepository.findUniqueSimHashes(jobId).forEach(nearDuplicates::addIfUnique);
+            }
+            CrawlJournal journal = checkpointEnabled ? new CrawlJournal(journalFile) : null;
+            if (job.isPartitioned()) {
+                partition = partitionExchange.join(jobId, !helper);
+            }
+            CrawlRun run = new CrawlRun(job, maxPages, hostBuffer, frontier, seen, nearDuplicates, ids,
+                    new LinkBuffer(jobId, pageGraph, graphLinkBatch), pageWriter, aimd, retry, partition, journal, checkpointIntervalMs);
+            try (run) {
+                driver.run = run;
+                if (partition != null) {
+                    partition.attach(run);
+                }
+                if (recovered != null) {
+                    run.resume(recovered);
+                    log("INIT     ┊ restored %d queued, %d done ┊ %s".formatted(recovered.queued(),
+                            recovered.done(), job.getUrl()), jobId);
+                } else if (!helper) {
+                    UrlCanonicalizer seed = new UrlCanonicalizer();
+                    if (!seed.canonicalize(job.getUrl())) {
+                        throw new IllegalArgumentException("Seed is not an absolute http(s) URL: " + job.getUrl());
+                    }
+                    run.offer(seed, 0, -1);
+                }
+                drive(run);
+            } finally {
+                // Before the job's status is written, so that write starts from final counters.
+                driver.run = null;
+                flush(run);
+            }
+            CrawlJournal.delete(journalFile);
+            if (partition != null) {
+                partitionExchange.leave(jobId, !partition.coordinator());
+                if (!partition.coordinator()) {
+                    log("DONE     ┊ partition finished         ┊ node=%s".formatted(jobLeases.nodeId()), jobId);
+                    return;
+                }
+                partitionExchange.clear(jobId);
+                deleteJournals(jobId);
+            }
+
+            jobRepository.complete(jobId);
+            job = jobRepository.findById(jobId).orElseThrow();
+            log("DONE     ┊ crawl completed                ┊ visited=%d, errors=%d"
+                    .formatted(job.getPagesVisited(), job.getErrors()), jobId);
+        } catch (InterruptedException ex) {
+            if (partition != null) {
+                partitionExchange.leave(jobId, driver.stopStatus == null || "PAUSED".equals(driver.stopStatus)
+                        || "ABANDONED".equals(driver.stopStatus));
+            }
+            if (driver.stopStatus == null) {
+                // Shutdown: the job stays RUNNING and its journal is kept for the next start.
+                Thread.currentThread().interrupt();
+            } else if ("ABANDONED".equals(driver.stopStatus)) {
+                // Another node holds the lease now and resumes from the journal; touch neither.
+                log("ERROR    ┊ lease lost, job continues on another node", jobId);
+            } else if (!coordinating(partition, helper)) {
+                // The job was stopped through another node; only this node's journal is ours.
+                if (!"PAUSED".equals(driver.stopStatus)) {
+                    CrawlJournal.delete(journalFile);
+                }
+            } else if ("PAUSED".equals(driver.stopStatus)) {
+                setStatus(jobId, "PAUSED");
+                log("PAUSE    ┊ paused, checkpoint kept", jobId);
+            } else {
+                deleteJournals(jobId);
+                if (partition != null) {
+                    partitionExchange.clear(jobId);
+                }
+                setStatus(jobId, driver.stopStatus);
+                log("CANCEL   ┊ cancelled, in-flight fetches aborted", jobId);
+            }
+        } catch (Exception ex) {
+            log("ERROR    ┊ crawl failed: " + ex.getMessage(), jobId);
+            if (partition != null) {
+                partitionExchange.leave(jobId, false);
+            }
+            if (journalFile != null) {
+                CrawlJournal.delete(journalFile);
+            }
+            if (coordinating(partition, helper)) {
+                markFailed(jobId);
+            }
+        } finally {
+            drivers.remove(jobId);
+            if (driver.stopStatus != null) {
+                // a stop that raced with the end of the crawl must not leak into the pool thread
+                Thread.interrupted();
+            }
+            driver.finished.countDown();
+        }
+    }
+
+    // Whether this node decides the job's status: always for a job that isn't partitioned.
+    private static boolean coordinating(Partition partition, boolean helper) {
+        return partition != null ? partition.coordinator() : !helper;
+    }
+
+    // Every fetch needs one of the job's maxInFlight permits and a slot from the fair share
+    // across jobs; the slot is charged for as long as the fetch and its parse take.
+    private void drive(CrawlRun run) throws InterruptedException {
+        Semaphore permits = new Semaphore(maxInFlight);
+        fairShare.register(run.jobId(), run.owner());
+        try (ExecutorService fetchers = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                CrawlTask task;
+                while ((task = run.next()) != null) {
+                    permits.acquire();
+                    fairShare.acquire(run.jobId());
+                    long granted = System.nanoTime();
+                    CrawlTask current = task;
+                    fetchers.execute(() -> {
+                        try {
+                            visit(run, current);
+                        } finally {
+                            fairShare.release(run.jobId(), System.nanoTime() - granted);
+                            permits.release();
+                            run.complete(current);
+                        }
+                    });
+                }
+            } catch (InterruptedException ex) {
+                // Paused, cancelled or shutting down: abort the fetches in flight as well, so
+                // closing the executor waits for interrupted requests, not for slow servers.
+                fetchers.shutdownNow();
+                throw ex;
+            }
+        } finally {
+            fairShare.unregister(run.jobId());
+        }
+    }
+
+    private void visit(CrawlRun run, CrawlTask task) {
+        long start = System.nanoTime();
+        boolean expand = task.depth() < run.maxDepth();
+        boolean parse = expand || run.extractMetadata();
+        PageParser parser = acquireParser(run, task.url(), expand);
+        try {
+            RobotsRules robots = robotsCache.rulesFor(task.url());
+            if (robots.crawlDelayMs() > 0) {
+                run.scheduler().setMinDelay(task.host(), robots.crawlDelayMs(), TimeUnit.MILLISECONDS);
+            }
+            if (!robots.isAllowed(RobotsCache.pathOf(task.url()))) {
+                logPage("SKIP     ┊ disallowed by robots.txt   ┊ %s".formatted(task.url()), run.jobId());
+                return;
+            }
+            long urlHash = Fingerprints.fingerprint64(task.url());
+            int pageId = run.pageId(urlHash);
+            CrawlPage previous = previousPage(run, urlHash, expand);
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(task.url()))
+                    .timeout(Duration.ofMillis(requestTimeoutMs))
+                    .header("User-Agent", userAgent)
+                    .header("Accept-Encoding", ContentDecoder.ACCEPT_ENCODING)
+                    .GET();
+            if (previous != null && previous.getEtag() != null) {
+                builder.header("If-None-Match", previous.getEtag());
+            }
+            if (previous != null && previous.getLastModified() != null) {
+                builder.header("If-Modified-Since", previous.getLastModified());
+            }
+            // Links and head metadata are extracted while the body streams in; bodies we won't
+            // parse are classified from headers alone, and metadata-only pages stop after </head>.
+            HttpResponse<Long> response = httpClient.send(builder.build(),
+                    info -> bodySubscriber(info, parse, parser));
+            int elapsedMs = elapsedMs(start);
+            int status = response.statusCode();
+            String contentType = response.headers().firstValue("Content-Type").orElse(null);
+            if (run.scheduler().recordResult(task, elapsedMs, status >= 500 || status == 429)) {
+                logBreakerOpen(run, task);
+            }
+            if (isRetryable(status) && retry(run, task, "GET " + status, retryAfterMs(response))) {
+                return;
+            }
+            CrawlPage page = new CrawlPage(run.jobId(), task.url(), urlHash, task.depth(), status);
+            page.setPageId(pageId);
+            page.setEtag(response.headers().firstValue("ETag").orElse(null));
+            page.setLastModified(response.headers().firstValue("Last-Modified").orElse(null));
+            if (status == 304 && previous != null) {
+                // Unchanged since the previous crawl: replay its links instead of parsing.
+                page.setStatusCode(previous.getStatusCode());
+                page.setEtag(page.getEtag() != null ? page.getEtag() : previous.getEtag());
+                page.setLastModified(page.getLastModified() != null ? page.getLastModified() : previous.getLastModified());
+                page.setOutlinks(previous.getOutlinks());
+                page.setMetadata(previous.getMetadata());
+                boolean duplicate = markDuplicate(run, page, previous.getSimHash());
+                if (expand && !duplicate) {
+                    replayOutlinks(run, parser, previous.getOutlinks(), task.depth() + 1, pageId);
+                }
+                pageWriter.save(page);
+                logPage("VISIT    ┊ GET 304 %4dms unchanged    ┊ %s".formatted(elapsedMs, task.url()), run.jobId());
+                record(run, task, page.getStatusCode(), contentType, elapsedMs, false, duplicate);
+                return;
+            }
+            if (status >= 400) {
+                pageWriter.save(page);
+                logPage("ERROR    ┊ GET %d %4dms              ┊ %s".formatted(status, elapsedMs, task.url()), run.jobId());
+                record(run, task, status, contentType, elapsedMs, true, false);
+                return;
+            }
+            if (status >= 300) {
+                // Redirects are not followed by the client; the target is queued like a link.
+                response.headers().firstValue("Location")
+                        .filter(location -> parser.link.resolve(task.url(), location))
+                        .ifPresent(location -> {
+                            page.setOutlinks(parser.link.url() + "\n");
+                            if (run.inScope(parser.link)) {
+                                run.offer(parser.link, task.depth(), pageId);
+                            }
+                        });
+            } else if (expand) {
+                // Links were only collected during the parse; follow them unless the text
+                // turns out to be a near-duplicate of a page this job already expanded.
+                page.setOutlinks(parser.outlinks());
+                long simHash = parser.textHash.value();
+                boolean duplicate = markDuplicate(run, page, parser.textHash.shingles() >= dedupMinShingles ? simHash : 0);
+                if (!duplicate) {
+                    replayOutlinks(run, parser, page.getOutlinks(), task.depth() + 1, pageId);
+                }
+            }
+            PageMetadata metadata = parser.metadata();
+            page.setMetadata(metadata);
+            pageWriter.save(page);
+            logPage("VISIT    ┊ GET %d %4dms              ┊ %s".formatted(status, elapsedMs, task.url()), run.jobId());
+            if (page.isDuplicate()) {
+                logPage("DUP      ┊ near-duplicate, not expanded ┊ %s".formatted(task.url()), run.jobId());
+            }
+            if (metadata != null) {
+                logPage("META     ┊ title=%s ┊ canonical=%s ┊ robots=%s ┊ %s".formatted(metadata.title(),
+                        metadata.canonical(), metadata.robots(), task.url()), run.jobId());
+            }
+            record(run, task, status, contentType, elapsedMs, false, page.isDuplicate());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            // Timeouts and refused or reset connections count against the host's budget.
+            int elapsedMs = elapsedMs(start);
+            if (run.scheduler().recordResult(task, elapsedMs, true)) {
+                logBreakerOpen(run, task);
+            }
+            // A failed TLS handshake is a certificate or protocol problem, not a transient one.
+            if (!(ex instanceof SSLHandshakeException) && retry(run, task, ex.getClass().getSimpleName(), -1)) {
+                return;
+            }
+            log("ERROR    ┊ %s ┊ %s".formatted(ex.getClass().getSimpleName(), task.url()), run.jobId());
+            record(run, task, 0, null, elapsedMs, true, false);
+        } catch (IllegalArgumentException ex) {
+            log("ERROR    ┊ %s ┊ %s".formatted(ex.getClass().getSimpleName(), task.url()), run.jobId());
+            record(run, task, 0, null, elapsedMs(start), true, false);
+        } finally {
+            parsers.offer(parser.clear());
+        }
+    }
+
+    /**
+     * The previous job's record of this URL, if this is a re-crawl and the record can stand in
+     * for the page: when links are needed, it must have been stored with its links.
+     */
+    private CrawlPage previousPage(CrawlRun run, long urlHash, boolean expand) {
+        if (run.previousJobId() == null) {
+            return null;
+        }
+        return pageRepository.findFirstByJobIdAndUrlHash(run.previousJobId(), urlHash)
+                .filter(page -> page.getStatusCode() < 400)
+                .filter(page -> page.getEtag() != null || page.getLastModified() != null)
+                .filter(page -> !expand || page.getOutlinks() != null)
+                .orElse(null);
+    }
+
+    /**
+     * Store the page's SimHash and check it against the job's index; 0 means "not hashable"
+     * and is never a duplicate.
+     */
+    private static boolean markDuplicate(CrawlRun run, CrawlPage page, long simHash) {
+        page.setSimHash(simHash);
+        page.setDuplicate(simHash != 0 && !run.nearDuplicates().addIfUnique(simHash));
+        return page.isDuplicate();
+    }
+
+    private static void replayOutlinks(CrawlRun run, PageParser parser, String outlinks, int depth, int source) {
+        int from = 0;
+        int n = outlinks.length();
+        while (from < n) {
+            int end = outlinks.indexOf('\n', from);
+            if (end < 0) {
+                end = n;
+            }
+            if (end > from && parser.link.canonicalize(outlinks.subSequence(from, end)) && run.inScope(parser.link)) {
+                run.offer(parser.link, depth, source);
+            }
+            from = end + 1;
+        }
+    }
+
+    private PageParser acquireParser(CrawlRun run, String url, boolean expand) {
+        PageParser parser = parsers.poll();
+        if (parser == null) {
+            parser = new PageParser();
+        }
+        return parser.reset(url, expand, run.extractMetadata() ? metadataMaxHeadBytes : 0);
+    }
+
+    /**
+     * Parse 2xx bodies of a type with a byte cap, decompressing on the fly; drain or cancel
+     * everything else without buffering it.
+     */
+    private HttpResponse.BodySubscriber<Long> bodySubscriber(HttpResponse.ResponseInfo info, boolean parse,
+                                                             PageParser parser) {
+        long cap = parse && info.statusCode() / 100 == 2
+                ? bodyLimits.capFor(info.headers().firstValue("Content-Type").orElse(null))
+                : 0;
+        if (cap > 0) {
+            try {
+                ContentDecoder decoder = ContentDecoder.forEncoding(info.headers().firstValue("Content-Encoding").orElse(null));
+                return new HtmlBodySubscriber(parser.scanner, decoder, cap);
+            } catch (IllegalArgumentException ex) {
+                // an encoding we never asked for; treat the body as opaque
+            }
+        }
+        return new DiscardingBodySubscriber(info.headers().firstValueAsLong("Content-Length").orElse(-1), bodyDrainBytes);
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 408 || status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * Schedule the task's next attempt with backoff unless its retries are used up.
+     * The retry is not recorded as a visit; only the final attempt is.
+     */
+    private boolean retry(CrawlRun run, CrawlTask task, String reason, long retryAfterMs) {
+        RetryPolicy policy = run.retryPolicy();
+        if (task.attempt() >= policy.maxRetries()) {
+            return false;
+        }
+        long delayNanos = policy.backoffNanos(task.attempt(), retryAfterMs);
+        run.retry(task, delayNanos);
+        logPage("RETRY    ┊ %s, attempt %d in %dms ┊ %s".formatted(reason, task.attempt() + 2,
+                TimeUnit.NANOSECONDS.toMillis(delayNanos), task.url()), run.jobId());
+        return true;
+    }
+
+    /**
+     * Retry-After as milliseconds from now, or -1 if absent or unparseable.
+     */
+    private static long retryAfterMs(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").orElse(null);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+        } catch (NumberFormatException ex) {
+            // not delta-seconds; try an HTTP-date
+        }
+        try {
+            Instant at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Math.max(0, Duration.between(Instant.now(), at).toMillis());
+        } catch (DateTimeParseException ex) {
+            return -1;
+        }
+    }
+
+    private void logBreakerOpen(CrawlRun run, CrawlTask task) {
+        log("BREAKER  ┊ failing host parked          ┊ %s".formatted(task.host()), run.jobId());
+    }
+
+    /**
+     * Fold one fetch result into the run's counters and histograms. A status of 0 means the
+     * fetch got no response.
+     */
+    private void record(CrawlRun run, CrawlTask task, int status, String contentType, int elapsedMs,
+                        boolean error, boolean duplicate) {
+        run.pageStats().record(task.url(), task.depth(), status, contentType, elapsedMs);
+        run.counters().record(elapsedMs, error, duplicate);
+        run.checkpoint(false);
+    }
+
+    // Add the run's visits and histogram increments since the last flush to its job row and
+    // bucket rows. A failed write leaves them pending for the next flush rather than failing
+    // the crawl.
+    private void flush(CrawlRun run) {
+        try {
+            run.counters().flush(delta -> jobRepository.addVisits(run.jobId(), (int) delta.visits(),
+                    (int) delta.errors(), (int) delta.duplicates(), delta.responseMs(),
+                    (int) Math.min(Integer.MAX_VALUE, run.queued())));
+        } catch (RuntimeException ex) {
+            log("ERROR    ┊ counters not saved: " + ex.getMessage(), run.jobId());
+        }
+        try {
+            run.pageStats().flush(delta -> jobAnalytics.add(run.jobId(), delta));
+        } catch (RuntimeException ex) {
+            log("ERROR    ┊ analytics not saved: " + ex.getMessage(), run.jobId());
+        }
+    }
+
+    private void markFailed(String jobId) {
+        setStatus(jobId, "FAILED");
+    }
+
+    private void setStatus(String jobId, String status) {
+        jobRepository.updateStatus(jobId, status);
+    }
+
+    /**
+     * Visits counted since the job row was last written, and the tasks queued right now.
+     */
+    public record LiveCounts(VisitCounters.Delta pending, long queued) {
+    }
+
+    // The thread driving a job, and how it should finish when interrupted.
+    private static final class Driver {
+        final Thread thread = Thread.currentThread();
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile String stopStatus;
+        volatile CrawlRun run;
+    }
+
+    private static int elapsedMs(long startNanos) {
+        return (int) ((System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    private void log(String message, String jobId) {
+        logWriter.log(jobId, message);
+    }
+
+    private void logPage(String message, String jobId) {
+        logWriter.logPage(jobId, message);
+    }
+}
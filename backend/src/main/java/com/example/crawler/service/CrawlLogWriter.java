@@ -0,0 +1,145 @@
+package com.example.crawler.service;
+
+import com.example.crawler.crawl.RingBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes crawl log lines to {@code crawl_log} off the crawling threads.
+ * <p>
+ * Lines go into a bounded {@link RingBuffer} and one background thread inserts them in JDBC
+ * batches. Adding a line never blocks: once the buffer is three quarters full, per-page lines
+ * are kept one in {@code crawler.log.sample-every}, and a full buffer drops lines outright.
+ * Lines lost either way are counted per job and reported in the job's log when the writer
+ * catches up.
+ */
+@Service
+public class CrawlLogWriter implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CrawlLogWriter.class);
+    private static final String INSERT = "insert into crawl_log (job_id, timestamp, message) values (?, ?, ?)";
+    private static final int MAX_LENGTH = 512;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RingBuffer<Line> buffer;
+    private final int highWater;
+    private final int batchSize;
+    private final long flushNanos;
+    private final int sampleEvery;
+    private final Map<String, LongAdder> skipped = new ConcurrentHashMap<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public CrawlLogWriter(JdbcTemplate jdbcTemplate,
+                          @Value("${crawler.log.buffer-size:65536}") int bufferSize,
+                          @Value("${crawler.log.batch-size:500}") int batchSize,
+                          @Value("${crawler.log.flush-ms:200}") long flushMs,
+                          @Value("${crawler.log.sample-every:16}") int sampleEvery) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.buffer = new RingBuffer<>(bufferSize);
+        this.highWater = buffer.capacity() / 4 * 3;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushMs));
+        this.sampleEvery = Math.max(1, sampleEvery);
+        this.writer = Thread.ofPlatform().name("crawl-log-writer").daemon().start(this::drain);
+    }
+
+    /**
+     * Log a job-level line: start, end, failures. Dropped only when the buffer is full.
+     */
+    public void log(String jobId, String message) {
+        add(jobId, message);
+    }
+
+    /**
+     * Log a line about a single page. Sampled while the writer is falling behind.
+     */
+    public void logPage(String jobId, String message) {
+        if (buffer.size() >= highWater && ThreadLocalRandom.current().nextInt(sampleEvery) != 0) {
+            skip(jobId);
+            return;
+        }
+        add(jobId, message);
+    }
+
+    /**
+     * Write out what is buffered and stop the writer thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void add(String jobId, String message) {
+        if (!buffer.offer(new Line(jobId, Instant.now(), message))) {
+            skip(jobId);
+        }
+    }
+
+    private void skip(String jobId) {
+        skipped.computeIfAbsent(jobId, id -> new LongAdder()).increment();
+    }
+
+    private void drain() {
+        List<Line> batch = new ArrayList<>(batchSize);
+        while (true) {
+            boolean stopping = !running;
+            batch.clear();
+            buffer.drainTo(batch, batchSize);
+            reportSkipped(batch);
+            if (!batch.isEmpty()) {
+                write(batch);
+            } else if (stopping) {
+                return;
+            } else {
+                LockSupport.parkNanos(flushNanos);
+            }
+        }
+    }
+
+    private void reportSkipped(List<Line> batch) {
+        skipped.forEach((jobId, count) -> {
+            long lines = count.sumThenReset();
+            if (lines > 0) {
+                batch.add(new Line(jobId, Instant.now(), "LOAD     ┊ %d log lines not written, log writer behind".formatted(lines)));
+            }
+        });
+    }
+
+    private void write(List<Line> batch) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT, batch, batch.size(), (statement, line) -> {
+                String text = "[%s] %s".formatted(line.at(), line.message());
+                statement.setString(1, line.jobId());
+                statement.setTimestamp(2, Timestamp.from(line.at()));
+                statement.setString(3, text.length() > MAX_LENGTH ? text.substring(0, MAX_LENGTH) : text);
+            });
+        } catch (RuntimeException ex) {
+            // Losing log lines is better than stalling the crawl behind a failing database.
+            LOG.warn("Dropped {} crawl log lines: {}", batch.size(), ex.getMessage());
+        }
+    }
+
+    private record Line(String jobId, Instant at, String message) {
+    }
+}
@@ -0,0 +1,444 @@
+package com.example.crawler.service;
+
+import com.example.crawler.crawl.AimdPolicy;
+import com.example.crawler.crawl.CrawlJournal;
+import com.example.crawler.crawl.CrawlTask;
+import com.example.crawler.crawl.DiskFrontier;
+import com.example.crawler.crawl.Fingerprints;
+import com.example.crawler.crawl.HandoffBatch;
+import com.example.crawler.crawl.HostScheduler;
+import com.example.crawler.crawl.NearDuplicateIndex;
+import com.example.crawler.crawl.PageIds;
+import com.example.crawler.crawl.PageStats;
+import com.example.crawler.crawl.RetryPolicy;
+import com.example.crawler.crawl.SeenUrlSet;
+import com.example.crawler.crawl.SpeedPreset;
+import com.example.crawler.crawl.UrlCanonicalizer;
+import com.example.crawler.crawl.VisitCounters;
+import com.example.crawler.entity.CrawlJob;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * State of one running crawl job: the BFS frontier, the off-heap seen-set and the
+ * per-host scheduler the driver loop in {@link CrawlEngine} takes work from.
+ * <p>
+ * Discovered URLs land in the disk-backed {@link DiskFrontier}, one FIFO per depth level.
+ * From there they are fed, shallowest first, into the {@link HostScheduler}, which holds
+ * at most {@code hostBuffer} runnable tasks and decides which host may be fetched next.
+ * Tasks of hosts parked by their circuit breaker don't take up that room, so one dead
+ * host can't starve the others, but the buffer never grows past twice its size.
+ * <p>
+ * With a {@link CrawlJournal}, every queued URL and every finished one is logged, and
+ * {@link #checkpoint} periodically makes the log durable, so a restarted backend can
+ * pick the job up where it stopped.
+ * <p>
+ * Every queued URL gets a dense page id from {@link PageIds}, and every in-scope link becomes
+ * an edge between two ids in the job's link graph, buffered in a {@link LinkBuffer}. Page rows
+ * go through the shared {@link PageWriter}; both are flushed before every checkpoint.
+ * <p>
+ * In a partitioned job the run only crawls the hosts its {@link Partition} owns. URLs of
+ * other hosts are handed off instead of queued. Running dry doesn't end such a run, since other nodes may
+ * still hand it work; it ends when the coordinator calls {@link #finish}.
+ * <p>
+ * Uses a {@link ReentrantLock} rather than {@code synchronized} so fetch workers running on
+ * virtual threads never pin their carrier thread while waiting.
+ */
+final class CrawlRun implements AutoCloseable {
+
+    private final String jobId;
+    private final String seedUrl;
+    private final String seedHost;
+    private final int maxDepth;
+    private final boolean restrictToDomain;
+    private final boolean extractMetadata;
+    private final String previousJobId;
+    private final String owner;
+    private final int maxPages;
+    private final int hostBuffer;
+
+    private final DiskFrontier frontier;
+    private final SeenUrlSet seen;
+    private final NearDuplicateIndex nearDuplicates;
+    private final PageIds ids;
+    private final LinkBuffer links;
+    private final PageWriter pages;
+    private final HostScheduler scheduler;
+    private final RetryPolicy retryPolicy;
+    private final Partition partition;
+    private final CrawlJournal journal;
+    private final long checkpointIntervalNanos;
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    private long lastCheckpoint = System.nanoTime();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Frontier + scheduler tasks; drives termination, so it only drops once a task is in flight.
+    private int queued;
+    private int inFlight;
+    private int dispatched;
+    // Tasks handed back for a retry; their completion is not their final outcome.
+    private final Set<CrawlTask> retried = new HashSet<>();
+
+    // Visit counters, written behind to the job row; their response-time totals are carried
+    // in the journal's checkpoints.
+    private final VisitCounters counters = new VisitCounters();
+    // Analytics histograms, written behind to the job's bucket rows with the counters.
+    private final PageStats pageStats;
+
+    CrawlRun(CrawlJob job, int maxPages, int hostBuffer, DiskFrontier frontier, SeenUrlSet seen,
+             NearDuplicateIndex nearDuplicates, PageIds ids, LinkBuffer links, PageWriter pages, AimdPolicy aimd,
+             RetryPolicy retryPolicy, Partition partition, CrawlJournal journal, long checkpointIntervalMs) {
+        this.jobId = job.getId();
+        this.seedUrl = job.getUrl();
+        this.seedHost = UrlCanonicalizer.hostOf(job.getUrl());
+        this.maxDepth = job.getMaxDepth();
+        this.restrictToDomain = job.isRestrictToDomain();
+        this.extractMetadata = job.isExtractMetadata();
+        this.previousJobId = job.getPreviousJobId();
+        this.owner = job.getOwner() != null ? job.getOwner() : "anonymous";
+        this.maxPages = maxPages;
+        this.hostBuffer = hostBuffer;
+        this.scheduler = new HostScheduler(SpeedPreset.from(job.getSpeed()), aimd, retryPolicy);
+        this.retryPolicy = retryPolicy;
+        this.partition = partition;
+        this.journal = journal;
+        this.checkpointIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkpointIntervalMs);
+        this.frontier = frontier;
+        this.seen = seen;
+        this.nearDuplicates = nearDuplicates;
+        this.ids = ids;
+        this.links = links;
+        this.pages = pages;
+        this.pageStats = new PageStats(job.getCreatedAt() != null ? job.getCreatedAt().toEpochMilli() : System.currentTimeMillis());
+    }
+
+    String jobId() {
+        return jobId;
+    }
+
+    String seedUrl() {
+        return seedUrl;
+    }
+
+    int maxDepth() {
+        return maxDepth;
+    }
+
+    boolean extractMetadata() {
+        return extractMetadata;
+    }
+
+    /**
+     * The job this one revalidates against, or null for a full crawl.
+     */
+    String previousJobId() {
+        return previousJobId;
+    }
+
+    /**
+     * User the job's fetch capacity is accounted to.
+     */
+    String owner() {
+        return owner;
+    }
+
+    NearDuplicateIndex nearDuplicates() {
+        return nearDuplicates;
+    }
+
+    HostScheduler scheduler() {
+        return scheduler;
+    }
+
+    VisitCounters counters() {
+        return counters;
+    }
+
+    PageStats pageStats() {
+        return pageStats;
+    }
+
+    /**
+     * Page id of a queued URL, or -1 if the run never queued it.
+     */
+    int pageId(long fingerprint) {
+        return ids.idOf(fingerprint);
+    }
+
+    RetryPolicy retryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * True if the canonicalizer's current URL may be crawled under this job's scope rules.
+     */
+    boolean inScope(UrlCanonicalizer url) {
+        return !restrictToDomain || url.isSameSite(seedHost);
+    }
+
+    /**
+     * Record the link from page {@code source} (-1 for none) to the canonicalizer's current URL,
+     * and queue the URL unless it was seen before or lies beyond maxDepth. Only URLs that pass
+     * the seen check are materialized as strings.
+     */
+    boolean offer(UrlCanonicalizer url, int depth, int source) {
+        if (depth > maxDepth) {
+            return false;
+        }
+        if (partition != null && !partition.owns(url.host())) {
+            // The owner gives the URL its id and records the edge.
+            partition.handOff(new HandoffBatch.Entry(new CrawlTask(url.url(), url.host(), depth), source, -1));
+            return true;
+        }
+        long fingerprint = url.fingerprint();
+        int id = ids.assign(fingerprint);
+        links.add(source, id);
+        if (!seen.add(fingerprint)) {
+            return false;
+        }
+        enqueue(fingerprint, id, new CrawlTask(url.url(), url.host(), depth));
+        return true;
+    }
+
+    /**
+     * Queue a task another node handed to this one, or pass it on if its host has moved again.
+     */
+    void receive(HandoffBatch.Entry entry) {
+        CrawlTask task = entry.task();
+        if (!partition.owns(task.host())) {
+            partition.handOff(entry);
+            return;
+        }
+        long fingerprint = Fingerprints.fingerprint64(task.url());
+        int id = entry.id() >= 0 ? ids.adopt(fingerprint, entry.id()) : ids.assign(fingerprint);
+        links.add(entry.source(), id);
+        if (seen.add(fingerprint)) {
+            enqueue(fingerprint, id, task);
+        }
+    }
+
+    private void enqueue(long fingerprint, int id, CrawlTask task) {
+        if (journal != null) {
+            journal.queued(fingerprint, id, task);
+        }
+        lock.lock();
+        try {
+            frontier.add(task);
+            queued++;
+            feed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hand out the next task whose host is due. Blocks while no host is ready.
+     * Returns null once nothing is queued or in flight, or the page budget is used up.
+     */
+    CrawlTask next() throws InterruptedException {
+        while (true) {
+            lock.lock();
+            try {
+                if (dispatched >= maxPages || (partition == null && queued + inFlight == 0)) {
+                    scheduler.close();
+                    return null;
+                }
+            } finally {
+                lock.unlock();
+            }
+            CrawlTask task = scheduler.take();
+            if (task == null) {
+                return null;
+            }
+            if (partition != null && !partition.owns(task.host())) {
+                // The host moved to another node since the task was queued.
+                scheduler.release(task);
+                forward(List.of(task));
+                continue;
+            }
+            lock.lock();
+            try {
+                queued--;
+                inFlight++;
+                dispatched++;
+                return task;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Queue the next attempt of a task handed out by {@link #next()} after {@code delayNanos}.
+     * The task must still be completed as usual; the retry doesn't count against maxPages.
+     */
+    void retry(CrawlTask task, long delayNanos) {
+        lock.lock();
+        try {
+            queued++;
+            dispatched--;
+            retried.add(task);
+            scheduler.retry(task.retry(), delayNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Mark a task handed out by {@link #next()} as finished and give its host slot back.
+     */
+    void complete(CrawlTask task) {
+        scheduler.release(task);
+        lock.lock();
+        try {
+            // An interrupted fetch (shutdown) did not finish; leave it queued in the journal.
+            if (!retried.remove(task) && journal != null && !Thread.currentThread().isInterrupted()) {
+                journal.done(Fingerprints.fingerprint64(task.url()));
+            }
+            inFlight--;
+            feed();
+            if (partition == null && queued + inFlight == 0) {
+                scheduler.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * True while nothing is queued or in flight.
+     */
+    boolean idle() {
+        lock.lock();
+        try {
+            return queued + inFlight == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * End a partitioned run: {@link #next()} returns null from now on.
+     */
+    void finish() {
+        scheduler.close();
+    }
+
+    /**
+     * After the partition's ring changed, hand off the buffered tasks of hosts this node
+     * lost. Tasks still in the frontier are checked as they are fed.
+     */
+    void rebalance() {
+        forward(scheduler.evict(host -> !partition.owns(host)));
+    }
+
+    /**
+     * Take over the state {@link CrawlJournal#replay} put into the frontier and seen-set.
+     */
+    void resume(CrawlJournal.Recovered recovered) {
+        lock.lock();
+        try {
+            queued += (int) recovered.queued();
+            dispatched += (int) recovered.done();
+            feed();
+        } finally {
+            lock.unlock();
+        }
+        counters.restore(recovered.responses(), recovered.totalResponseMs());
+    }
+
+    /**
+     * Make the journal durable if the checkpoint interval has passed. Skipped while another
+     * worker is already writing one.
+     */
+    void checkpoint(boolean force) {
+        if (journal == null || !checkpointLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            if (!force && now - lastCheckpoint < checkpointIntervalNanos) {
+                return;
+            }
+            lastCheckpoint = now;
+            links.flush();
+            pages.flush();
+            journal.checkpoint(counters.visits(), counters.responseMs());
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    /**
+     * Tasks waiting to be fetched: the frontier's on-disk read/write positions plus whatever
+     * already sits in host queues.
+     */
+    long queued() {
+        lock.lock();
+        try {
+            return frontier.size() + scheduler.buffered();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            links.flush();
+            pages.flush();
+        } finally {
+            lock.lock();
+            try {
+                scheduler.close();
+                frontier.close();
+                if (journal != null) {
+                    journal.close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Move tasks from the frontier into the host scheduler. Caller holds the lock.
+    private void feed() {
+        int buffered = scheduler.buffered();
+        int room = Math.min(hostBuffer - (buffered - scheduler.parked()), 2 * hostBuffer - buffered);
+        while (room > 0) {
+            CrawlTask task = frontier.poll();
+            if (task == null) {
+                return;
+            }
+            if (partition != null && !partition.owns(task.host())) {
+                forward(List.of(task));
+                continue;
+            }
+            scheduler.submit(task);
+            room--;
+        }
+    }
+
+    // Hand queued tasks to their hosts' new owners. For this node they are done, so they are
+    // not requeued from the journal after a restart.
+    private void forward(List<CrawlTask> tasks) {
+        for (CrawlTask task : tasks) {
+            long fingerprint = Fingerprints.fingerprint64(task.url());
+            // The id goes along, so edges already recorded to it stay valid on the new owner.
+            partition.handOff(new HandoffBatch.Entry(task, -1, ids.idOf(fingerprint)));
+            if (journal != null) {
+                journal.done(fingerprint);
+            }
+        }
+        lock.lock();
+        try {
+            queued -= tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,42 +1,84 @@
 package com.example.crawler.service;
 
+import com.example.crawler.crawl.FetchMetrics;
+import com.example.crawler.crawl.PageMetadata;
+import com.example.crawler.crawl.PageStats;
+import com.example.crawler.crawl.UrlCanonicalizer;
+import com.example.crawler.crawl.VisitCounters;
 import com.example.crawler.entity.CrawlJob;
 import com.example.crawler.entity.CrawlLog;
+import com.example.crawler.entity.CrawlPage;
 import com.example.crawler.model.*;
 import com.example.crawler.repository.CrawlJobRepository;
 import com.example.crawler.repository.CrawlLogRepository;
+import com.example.crawler.repository.CrawlPageRepository;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Instant;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class CrawlService {
 
     private final CrawlJobRepository jobRepository;
     private final CrawlLogRepository logRepository;
+    private final CrawlPageRepository pageRepository;
+    private final CrawlEngine crawlEngine;
     private final Executor crawlExecutor;
+    private final FetchMetrics fetchMetrics;
+    private final JobLeases jobLeases;
+    private final PartitionExchange partitionExchange;
+    private final PageGraph pageGraph;
+    private final JobAnalytics jobAnalytics;
+
+    @Value("${crawler.fair.max-active-jobs:4}")
+    private int maxActiveJobs;
+
+    // Jobs this node holds a lease on or helps with, and has handed to crawlExecutor.
+    private final Set<String> admitted = new HashSet<>();
+    // Partitioned jobs among them that another node coordinates.
+    private final Set<String> helping = new HashSet<>();
+    private final ReentrantLock admissionLock = new ReentrantLock();
 
     public CrawlService(CrawlJobRepository jobRepository,
                         CrawlLogRepository logRepository,
-                        @Qualifier("crawlExecutor") Executor crawlExecutor) {
+                        CrawlPageRepository pageRepository,
+                        CrawlEngine crawlEngine,
+                        @Qualifier("crawlExecutor") Executor crawlExecutor,
+                        FetchMetrics fetchMetrics,
+                        JobLeases jobLeases,
+                        PartitionExchange partitionExchange,
+                        PageGraph pageGraph,
+                        JobAnalytics jobAnalytics) {
         this.jobRepository = jobRepository;
         this.logRepository = logRepository;
+        this.pageRepository = pageRepository;
+        this.crawlEngine = crawlEngine;
         this.crawlExecutor = crawlExecutor;
+        this.fetchMetrics = fetchMetrics;
+        this.jobLeases = jobLeases;
+        this.partitionExchange = partitionExchange;
+        this.pageGraph = pageGraph;
+        this.jobAnalytics = jobAnalytics;
     }
 
     /**
-     * Start a new crawl job and simulate progress asynchronously.
-     * In a real implementation, you would call your crawler engine here instead
-     * of the simulateCrawl(...) method.
+     * Queue a new crawl job for {@code owner}. It starts right away if a driver thread is
+     * free and otherwise waits in the database; see {@link #admit()}. The job's driver loop
+     * runs on crawlExecutor, the individual fetches on virtual threads inside {@link CrawlEngine}.
      */
-    @Transactional
-    public CrawlJobStatus startCrawl(CrawlRequest request) {
+    public CrawlJobStatus startCrawl(CrawlRequest request, String owner) {
         if (request == null) {
             throw new IllegalArgumentException("Crawl request cannot be null");
         }
@@ -44,24 +86,210 @@ public class CrawlService {
             throw new IllegalArgumentException("URL is required");
         }
         
+        UrlCanonicalizer seed = new UrlCanonicalizer();
+        if (!seed.canonicalize(request.getUrl())) {
+            throw new IllegalArgumentException("URL must be an absolute http(s) URL with a host");
+        }
+
         CrawlJob job = new CrawlJob();
-        job.setUrl(request.getUrl().trim());
+        job.setUrl(seed.url());
         job.setMaxDepth(Math.max(1, Math.min(10, request.getMaxDepth()))); // Clamp between 1-10
         job.setRestrictToDomain(request.isRestrictToDomain());
         job.setSpeed(request.getSpeed() != null ? request.getSpeed() : "medium");
         job.setExtractMetadata(request.isExtractMetadata());
+        job.setOwner(owner);
+        job.setPartitioned(request.isPartitioned());
+        if (request.isIncremental()) {
+            jobRepository.findTopByUrlAndStatusOrderByCreatedAtDesc(job.getUrl(), "COMPLETED")
+                    .ifPresent(previous -> job.setPreviousJobId(previous.getId()));
+        }
         job.setStatus("QUEUED");
         job.setProgress(0);
         CrawlJob saved = jobRepository.save(job);
+        admit();
+        return mapToStatus(saved);
+    }
 
-        // Kick off simulation in background
-        crawlExecutor.execute(() -> simulateCrawl(saved.getId()));
+    /**
+     * Pause a queued or running job of {@code user}. In-flight fetches are aborted and the
+     * job's checkpoint is kept, so {@link #resumeCrawl} continues where it stopped.
+     */
+    public CrawlJobStatus pauseCrawl(String jobId, String user) throws InterruptedException {
+        CrawlJob job = ownedJob(jobId, user);
+        crawlEngine.pause(job.getId());
+        return getLiveStatus(job.getId());
+    }
 
-        return mapToStatus(saved);
+    /**
+     * Queue a paused job of {@code user} again; once admitted it continues from its
+     * checkpoint if it has one.
+     */
+    public CrawlJobStatus resumeCrawl(String jobId, String user) {
+        CrawlJob job = ownedJob(jobId, user);
+        if (!"PAUSED".equals(job.getStatus())) {
+            throw new IllegalStateException("Only a PAUSED job can be resumed, this one is " + job.getStatus());
+        }
+        jobRepository.updateStatus(job.getId(), "QUEUED");
+        admit();
+        return getLiveStatus(job.getId());
+    }
+
+    /**
+     * Cancel a queued, running or paused job of {@code user} for good. In-flight fetches are
+     * aborted and the rest of its frontier is dropped.
+     */
+    public CrawlJobStatus cancelCrawl(String jobId, String user) throws InterruptedException {
+        CrawlJob job = ownedJob(jobId, user);
+        crawlEngine.cancel(job.getId());
+        return getLiveStatus(job.getId());
+    }
+
+    /**
+     * Pick up the jobs a previous process left behind: RUNNING jobs resume from their
+     * checkpoint once their lease is free, QUEUED ones are admitted as driver threads free up.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedJobs() {
+        admit();
+    }
+
+    /**
+     * Renew the leases of the jobs running here and look for more work. A job whose lease
+     * another node took over, or that another node paused or cancelled, is stopped here, and
+     * so is this node's part of a partitioned job that is no longer RUNNING. Stops are only
+     * signalled, not waited for, since this shares the scheduler thread with the counter
+     * flush and the handoff exchange.
+     */
+    @Scheduled(fixedDelayString = "${crawler.lease.heartbeat-ms:10000}")
+    public void heartbeat() {
+        Set<String> leased;
+        Set<String> helped;
+        admissionLock.lock();
+        try {
+            leased = new HashSet<>(admitted);
+            leased.removeAll(helping);
+            helped = new HashSet<>(helping);
+        } finally {
+            admissionLock.unlock();
+        }
+        if (!leased.isEmpty()) {
+            for (CrawlJob job : jobLeases.renew(leased)) {
+                if (!jobLeases.nodeId().equals(job.getLeaseOwner())) {
+                    crawlEngine.signalStop(job.getId(), "ABANDONED");
+                } else if ("PAUSED".equals(job.getStatus()) || "CANCELLED".equals(job.getStatus())) {
+                    crawlEngine.signalStop(job.getId(), job.getStatus());
+                }
+            }
+        }
+        if (!helped.isEmpty()) {
+            for (CrawlJob job : jobRepository.findAllById(helped)) {
+                if (!"RUNNING".equals(job.getStatus())) {
+                    crawlEngine.signalStop(job.getId(), job.getStatus());
+                }
+            }
+        }
+        admit();
+        joinPartitions();
+    }
+
+    /**
+     * Move URLs between this node and the other nodes of its partitioned jobs.
+     */
+    @Scheduled(fixedDelayString = "${crawler.partition.exchange-ms:500}")
+    public void exchangeHandoffs() {
+        for (String jobId : partitionExchange.jobIds()) {
+            partitionExchange.exchange(jobId);
+        }
+    }
+
+    /**
+     * Write the visit counters of the jobs running here to the database.
+     */
+    @Scheduled(fixedDelayString = "${crawler.counters.flush-ms:1000}")
+    public void flushCounters() {
+        crawlEngine.flushCounters();
+    }
+
+    /**
+     * Claim jobs from the database while fewer than {@code crawler.fair.max-active-jobs} run
+     * here. Across the cluster, the owner with the fewest running jobs goes first, and within
+     * an owner the oldest job, so one user's backlog cannot hold back another user's first job.
+     * RUNNING jobs claimed here were abandoned by another node and resume from its checkpoint;
+     * if this node already crawls part of such a job, that part takes over coordinating it.
+     */
+    private void admit() {
+        admissionLock.lock();
+        try {
+            if (!helping.isEmpty()) {
+                for (String jobId : jobLeases.takeOver(helping)) {
+                    if (crawlEngine.promote(jobId)) {
+                        helping.remove(jobId);
+                    } else {
+                        jobLeases.release(jobId);
+                    }
+                }
+            }
+            int free = maxActiveJobs - admitted.size();
+            if (free <= 0) {
+                return;
+            }
+            for (CrawlJob job : jobLeases.claim(free, admitted)) {
+                launch(job.getId(), "RUNNING".equals(job.getStatus()) || crawlEngine.hasCheckpoint(job), false);
+            }
+        } finally {
+            admissionLock.unlock();
+        }
+    }
+
+    /**
+     * Take part in partitioned jobs other nodes coordinate, while driver threads are free.
+     */
+    private void joinPartitions() {
+        admissionLock.lock();
+        try {
+            for (CrawlJob job : jobRepository.findByStatusAndPartitionedTrue("RUNNING")) {
+                if (admitted.size() >= maxActiveJobs) {
+                    return;
+                }
+                if (!admitted.contains(job.getId())) {
+                    helping.add(job.getId());
+                    launch(job.getId(), false, true);
+                }
+            }
+        } finally {
+            admissionLock.unlock();
+        }
+    }
+
+    // Hand a job to crawlExecutor, and release its lease and admit the next one when it ends.
+    // Caller holds admissionLock.
+    private void launch(String jobId, boolean resume, boolean helper) {
+        admitted.add(jobId);
+        crawlExecutor.execute(() -> {
+            try {
+                if (helper) {
+                    crawlEngine.help(jobId);
+                } else if (resume) {
+                    crawlEngine.resume(jobId);
+                } else {
+                    crawlEngine.run(jobId);
+                }
+            } finally {
+                jobLeases.release(jobId);
+                admissionLock.lock();
+                try {
+                    admitted.remove(jobId);
+                    helping.remove(jobId);
+                } finally {
+                    admissionLock.unlock();
+                }
+                admit();
+            }
+        });
     }
 
     private CrawlJobStatus mapToStatus(CrawlJob job) {
-        return new CrawlJobStatus(
+        CrawlJobStatus status = new CrawlJobStatus(
                 job.getId(),
                 job.getStatus(),
                 job.getProgress(),
@@ -70,6 +298,8 @@ public class CrawlService {
                 job.getErrors(),
                 job.getAvgResponseMs()
         );
+        status.setDuplicates(job.getDuplicates());
+        return status;
     }
 
     public CrawlSummary getSummary() {
@@ -84,9 +314,27 @@ public class CrawlService {
                 .orElseGet(() -> new CrawlSummary(0L, 0L, 0, 0));
     }
 
+    /**
+     * The job's row, plus the visits a run on this node counted since it last wrote the row.
+     */
     public CrawlJobStatus getLiveStatus(String jobId) {
         CrawlJob job = resolveJob(jobId);
-        return mapToStatus(job);
+        CrawlJobStatus status = mapToStatus(job);
+        CrawlEngine.LiveCounts live = crawlEngine.liveCounts(job.getId());
+        if (live != null && "RUNNING".equals(job.getStatus())) {
+            VisitCounters.Delta pending = live.pending();
+            long visited = job.getPagesVisited() + pending.visits();
+            if (visited > 0) {
+                status.setAvgResponseMs((int) (((long) job.getAvgResponseMs() * job.getPagesVisited()
+                        + pending.responseMs()) / visited));
+                status.setProgress((int) Math.min(99, visited * 100 / (visited + live.queued())));
+            }
+            status.setPagesVisited((int) visited);
+            status.setPagesQueued((int) Math.min(Integer.MAX_VALUE, live.queued()));
+            status.setErrors((int) (job.getErrors() + pending.errors()));
+            status.setDuplicates((int) (job.getDuplicates() + pending.duplicates()));
+        }
+        return status;
     }
 
     public List<String> getLiveLogs(String jobId) {
@@ -97,68 +345,48 @@ public class CrawlService {
                 .toList();
     }
 
-    public GraphResponse getGraph(String jobId) {
-        // Still returns demo graph for now; you can persist nodes/links per job
-        // later and build this from your database instead.
-        List<GraphNode> nodes = List.of(
-                new GraphNode("home", "Home", "home"),
-                new GraphNode("blog", "Blog", "internal"),
-                new GraphNode("pricing", "Pricing", "internal"),
-                new GraphNode("status", "Status", "internal"),
-                new GraphNode("404", "404", "error"),
-                new GraphNode("external-docs", "Docs", "external")
-        );
+    /**
+     * Head metadata stored for a page of the job, if the page was fetched with metadata
+     * extraction on and declared any.
+     */
+    public Optional<PageMetadata> getPageMetadata(String jobId, String url) {
+        CrawlJob job = resolveJob(jobId);
+        UrlCanonicalizer canonical = new UrlCanonicalizer();
+        if (!canonical.canonicalize(url)) {
+            throw new IllegalArgumentException("Not an absolute http(s) URL: " + url);
+        }
+        return pageRepository.findFirstByJobIdAndUrlHash(job.getId(), canonical.fingerprint())
+                .map(CrawlPage::getMetadata);
+    }
 
-        List<GraphLink> links = List.of(
-                new GraphLink("home", "blog"),
-                new GraphLink("home", "pricing"),
-                new GraphLink("home", "status"),
-                new GraphLink("blog", "404"),
-                new GraphLink("blog", "external-docs"),
-                new GraphLink("pricing", "status")
-        );
+    /**
+     * Connection reuse, HTTP/2 and DNS cache counters of the shared fetch client since startup.
+     */
+    public FetchMetrics.Snapshot getFetchStats() {
+        return fetchMetrics.snapshot();
+    }
 
-        return new GraphResponse(nodes, links);
+    public GraphResponse getGraph(String jobId, PageGraph.View view) {
+        return pageGraph.graph(resolveJob(jobId), view);
     }
 
+    /**
+     * The job's histograms from its bucket rows, plus what a run on this node has counted
+     * since it last wrote them.
+     */
     public AnalyticsResponse getAnalytics(String jobId) {
-        // Still returns demo analytics for now; wire this to real aggregates from DB later.
-        AnalyticsResponse resp = new AnalyticsResponse();
-        resp.setDepthHistogram(Map.of(
-                "1", 58L,
-                "2", 142L,
-                "3", 310L,
-                "4", 210L,
-                "5+", 89L
-        ));
-        resp.setMimeHistogram(Map.of(
-                "HTML", 480L,
-                "Images", 210L,
-                "CSS", 66L,
-                "JS", 128L
-        ));
-        resp.setResponseTimeline(Map.of(
-                "t0", 180,
-                "t1", 220,
-                "t2", 160,
-                "t3", 210,
-                "t4", 260,
-                "t5", 190,
-                "t6", 205,
-                "t7", 175
-        ));
-
-        List<AnalyticsResponse.StatusRow> rows = List.of(
-                new AnalyticsResponse.StatusRow("/", 200, "HTML", 1),
-                new AnalyticsResponse.StatusRow("/blog", 200, "HTML", 2),
-                new AnalyticsResponse.StatusRow("/blog/legacy", 404, "HTML", 3),
-                new AnalyticsResponse.StatusRow("/api/internal", 500, "JSON", 2),
-                new AnalyticsResponse.StatusRow("/pricing", 200, "HTML", 2),
-                new AnalyticsResponse.StatusRow("/cdn/logo.png", 200, "Image", 2),
-                new AnalyticsResponse.StatusRow("/static/old.css", 301, "CSS", 3)
-        );
-        resp.setStatusRows(rows);
-        return resp;
+        CrawlJob job = resolveJob(jobId);
+        PageStats.Delta pending = "RUNNING".equals(job.getStatus()) ? crawlEngine.pendingPageStats(job.getId()) : null;
+        return jobAnalytics.analytics(job.getId(), pending);
+    }
+
+    // A job that only its owner may pause, resume or cancel.
+    private CrawlJob ownedJob(String jobId, String user) {
+        CrawlJob job = resolveJob(jobId);
+        if (!Objects.equals(job.getOwner(), user)) {
+            throw new AccessDeniedException("Job " + job.getId() + " belongs to another user");
+        }
+        return job;
     }
 
     private CrawlJob resolveJob(String jobId) {
@@ -169,54 +397,4 @@ public class CrawlService {
         return jobRepository.findTopByOrderByCreatedAtDesc()
                 .orElseThrow(() -> new IllegalStateException("No crawl jobs found yet."));
     }
-
-    /**
-     * Very simple simulated crawler that updates job progress, counters, and logs.
-     * Replace this with your actual crawling implementation.
-     */
-    @Transactional
-    protected void simulateCrawl(String jobId) {
-        try {
-            CrawlJob job = jobRepository.findById(jobId).orElseThrow();
-            job.setStatus("RUNNING");
-            jobRepository.save(job);
-            log("INIT     ┊ bootstrap crawler session   ┊ seed=%s".formatted(job.getUrl()), jobId);
-
-            int totalSteps = 20;
-            for (int i = 1; i <= totalSteps; i++) {
-                Thread.sleep(1000L);
-                job = jobRepository.findById(jobId).orElseThrow();
-                job.setProgress((i * 100) / totalSteps);
-                job.setPagesVisited(job.getPagesVisited() + (int) (Math.random() * 20) + 5);
-                job.setPagesQueued(Math.max(0, job.getPagesQueued() + (int) (Math.random() * 10) - 5));
-                if (Math.random() < 0.2) {
-                    job.setErrors(job.getErrors() + 1);
-                    log("ERROR    ┊ simulated 5xx response         ┊ /api/legacy", jobId);
-                } else {
-                    log("VISIT    ┊ GET 200 %3dms              ┊ /page-%d"
-                            .formatted(100 + (int) (Math.random() * 200), job.getPagesVisited()), jobId);
-                }
-                job.setAvgResponseMs(150 + (int) (Math.random() * 120));
-                jobRepository.save(job);
-            }
-            job = jobRepository.findById(jobId).orElseThrow();
-            job.setStatus("COMPLETED");
-            job.setProgress(100);
-            jobRepository.save(job);
-            log("DONE     ┊ crawl completed                ┊ visited=%d, errors=%d"
-                    .formatted(job.getPagesVisited(), job.getErrors()), jobId);
-        } catch (InterruptedException ex) {
-            Thread.currentThread().interrupt();
-        } catch (Exception ex) {
-            log("ERROR    ┊ simulation failed: " + ex.getMessage(), jobId);
-        }
-    }
-
-    private void log(String message, String jobId) {
-        CrawlLog log = new CrawlLog(jobId, Instant.now(), "[%s] %s"
-                .formatted(Instant.now().toString(), message));
-        logRepository.save(log);
-    }
 }
-
-
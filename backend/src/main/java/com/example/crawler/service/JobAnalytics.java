@@ -0,0 +1,170 @@
+package com.example.crawler.service;
+
+import com.example.crawler.crawl.PageStats;
+import com.example.crawler.entity.CrawlJobStat;
+import com.example.crawler.model.AnalyticsResponse;
+import com.example.crawler.repository.CrawlJobStatRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A job's analytics histograms: {@link PageStats} buckets, stored as one
+ * {@link CrawlJobStat} row per bucket that has pages.
+ */
+@Service
+public class JobAnalytics {
+
+    // Points of the response-time timeline, the job's last minutes with pages.
+    private static final int TIMELINE_POINTS = 60;
+
+    private final CrawlJobStatRepository statRepository;
+
+    public JobAnalytics(CrawlJobStatRepository statRepository) {
+        this.statRepository = statRepository;
+    }
+
+    /**
+     * Add a run's flushed increments to the job's bucket rows, all or none.
+     */
+    @Transactional
+    public void add(String jobId, PageStats.Delta delta) {
+        for (int depth = 0; depth < PageStats.DEPTHS; depth++) {
+            add(jobId, "depth", Integer.toString(depth), delta, PageStats.depthBucket(depth), null);
+        }
+        for (int mime = 0; mime < PageStats.MIME_TYPES.length; mime++) {
+            add(jobId, "mime", PageStats.MIME_TYPES[mime], delta, PageStats.mimeBucket(mime), null);
+        }
+        for (int status = 0; status < PageStats.STATUSES; status++) {
+            add(jobId, "status", Integer.toString(status), delta, PageStats.statusBucket(status), delta.example(status));
+        }
+        for (int minute = 0; minute < PageStats.MINUTES; minute++) {
+            add(jobId, "minute", Integer.toString(minute), delta, PageStats.minuteBucket(minute), null);
+        }
+    }
+
+    /**
+     * The job's histograms from its bucket rows, plus {@code pending} increments a run on
+     * this node has not flushed yet, if any.
+     */
+    public AnalyticsResponse analytics(String jobId, PageStats.Delta pending) {
+        long[] pages = new long[PageStats.BUCKETS];
+        long[] responseMs = new long[PageStats.BUCKETS];
+        PageStats.Example[] examples = new PageStats.Example[PageStats.STATUSES];
+        for (CrawlJobStat stat : statRepository.findByJobId(jobId)) {
+            int bucket = bucketOf(stat.getKind(), stat.getBucket());
+            if (bucket < 0) {
+                continue;
+            }
+            pages[bucket] += stat.getPages();
+            responseMs[bucket] += stat.getResponseMs();
+            if (stat.getExampleUrl() != null && "status".equals(stat.getKind())) {
+                examples[Integer.parseInt(stat.getBucket())] = new PageStats.Example(stat.getExampleUrl(),
+                        stat.getExampleType(), stat.getExampleDepth() != null ? stat.getExampleDepth() : 0);
+            }
+        }
+        if (pending != null) {
+            for (int bucket = 0; bucket < PageStats.BUCKETS; bucket++) {
+                pages[bucket] += pending.pages(bucket);
+                responseMs[bucket] += pending.responseMs(bucket);
+            }
+            for (int status = 0; status < PageStats.STATUSES; status++) {
+                if (examples[status] == null) {
+                    examples[status] = pending.example(status);
+                }
+            }
+        }
+
+        AnalyticsResponse resp = new AnalyticsResponse();
+        Map<String, Long> depths = new LinkedHashMap<>();
+        for (int depth = 0; depth < PageStats.DEPTHS; depth++) {
+            long count = pages[PageStats.depthBucket(depth)];
+            if (count > 0) {
+                depths.put(depth == PageStats.DEPTHS - 1 ? depth + "+" : Integer.toString(depth), count);
+            }
+        }
+        resp.setDepthHistogram(depths);
+
+        Map<String, Long> mimes = new LinkedHashMap<>();
+        for (int mime = 0; mime < PageStats.MIME_TYPES.length; mime++) {
+            long count = pages[PageStats.mimeBucket(mime)];
+            if (count > 0) {
+                mimes.put(PageStats.MIME_TYPES[mime], count);
+            }
+        }
+        resp.setMimeHistogram(mimes);
+
+        Map<String, Long> statuses = new LinkedHashMap<>();
+        List<AnalyticsResponse.StatusRow> rows = new ArrayList<>();
+        for (int status = 0; status < PageStats.STATUSES; status++) {
+            long count = pages[PageStats.statusBucket(status)];
+            if (count == 0) {
+                continue;
+            }
+            statuses.put(Integer.toString(status), count);
+            PageStats.Example example = examples[status];
+            if (example != null) {
+                rows.add(new AnalyticsResponse.StatusRow(example.url(), status, example.type(), example.depth()));
+            }
+        }
+        resp.setStatusCounts(statuses);
+        resp.setStatusRows(rows);
+
+        int last = PageStats.MINUTES - 1;
+        while (last >= 0 && pages[PageStats.minuteBucket(last)] == 0) {
+            last--;
+        }
+        Map<String, Integer> timeline = new LinkedHashMap<>();
+        for (int minute = Math.max(0, last - TIMELINE_POINTS + 1); minute <= last; minute++) {
+            int bucket = PageStats.minuteBucket(minute);
+            if (pages[bucket] > 0) {
+                timeline.put("t" + minute, (int) (responseMs[bucket] / pages[bucket]));
+            }
+        }
+        resp.setResponseTimeline(timeline);
+        return resp;
+    }
+
+    private void add(String jobId, String kind, String key, PageStats.Delta delta, int bucket, PageStats.Example example) {
+        long pages = delta.pages(bucket);
+        if (pages == 0 && example == null) {
+            return;
+        }
+        String id = jobId + "/" + kind + "/" + key;
+        String url = example != null ? example.url() : null;
+        String type = example != null ? example.type() : null;
+        Integer depth = example != null ? example.depth() : null;
+        // Update, then insert: portable across PostgreSQL and H2, unlike an upsert.
+        if (statRepository.add(id, pages, delta.responseMs(bucket), url, type, depth) == 0) {
+            statRepository.insert(id, jobId, kind, key, pages, delta.responseMs(bucket), url, type, depth);
+        }
+    }
+
+    // The PageStats bucket of a stored row, or -1 for a row this version does not know.
+    private static int bucketOf(String kind, String key) {
+        if ("mime".equals(kind)) {
+            for (int mime = 0; mime < PageStats.MIME_TYPES.length; mime++) {
+                if (PageStats.MIME_TYPES[mime].equals(key)) {
+                    return PageStats.mimeBucket(mime);
+                }
+            }
+            return -1;
+        }
+        int value;
+        try {
+            value = Integer.parseInt(key);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+        return switch (kind) {
+            case "depth" -> value >= 0 && value < PageStats.DEPTHS ? PageStats.depthBucket(value) : -1;
+            case "status" -> value >= 0 && value < PageStats.STATUSES ? PageStats.statusBucket(value) : -1;
+            case "minute" -> value >= 0 && value < PageStats.MINUTES ? PageStats.minuteBucket(value) : -1;
+            default -> -1;
+        };
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.crawler.service;
+
+import com.example.crawler.entity.CrawlJob;
+import com.example.crawler.repository.CrawlJobRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Database leases that decide which backend node runs which job, so several instances can
+ * share one database.
+ * <p>
+ * A node claims jobs with {@code SELECT ... FOR UPDATE SKIP LOCKED}: concurrent claims on
+ * different nodes lock disjoint rows instead of queueing behind each other, and a row is
+ * only ever claimed by one of them. A claim is a lease that expires after
+ * {@code crawler.lease.ttl-ms} unless its holder renews it. A RUNNING job whose lease has
+ * expired belongs to a node that died, and the next node to claim it resumes it from its
+ * checkpoint.
+ */
+@Service
+public class JobLeases {
+
+    private final CrawlJobRepository jobRepository;
+    private final String nodeId;
+
+    @Value("${crawler.lease.ttl-ms:30000}")
+    private long ttlMs;
+
+    public JobLeases(CrawlJobRepository jobRepository, @Value("${crawler.lease.node-id:}") String nodeId) {
+        this.jobRepository = jobRepository;
+        this.nodeId = nodeId.isBlank() ? generatedNodeId() : nodeId;
+    }
+
+    /**
+     * Name of this backend instance in the lease columns.
+     */
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Claim up to {@code slots} jobs for this node. Among the claimable jobs, the owner with
+     * the fewest running jobs across all nodes goes first, and within an owner the oldest job.
+     *
+     * @param runningHere jobs this node already runs; their own lease makes them claimable,
+     *                    but they are not claimed again
+     */
+    @Transactional
+    public List<CrawlJob> claim(int slots, Set<String> runningHere) {
+        Instant now = Instant.now();
+        List<CrawlJob> candidates = jobRepository.lockClaimable(nodeId, now, slots * 8 + runningHere.size());
+        Map<String, Long> running = new HashMap<>();
+        for (Object[] row : jobRepository.countRunningByOwner()) {
+            running.put(ownerOf((String) row[0]), (Long) row[1]);
+        }
+        List<CrawlJob> claimed = new ArrayList<>();
+        while (claimed.size() < slots) {
+            CrawlJob next = null;
+            long fewest = Long.MAX_VALUE;
+            for (CrawlJob job : candidates) {
+                long jobs = running.getOrDefault(ownerOf(job.getOwner()), 0L);
+                if (!runningHere.contains(job.getId()) && !claimed.contains(job) && jobs < fewest) {
+                    next = job;
+                    fewest = jobs;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            claimed.add(next);
+            running.merge(ownerOf(next.getOwner()), 1L, Long::sum);
+        }
+        if (!claimed.isEmpty()) {
+            jobRepository.claim(claimed.stream().map(CrawlJob::getId).toList(), nodeId, now.plusMillis(ttlMs));
+        }
+        return claimed;
+    }
+
+    /**
+     * Claim those of {@code jobIds} that are RUNNING under an expired lease, and return the
+     * ones this node holds now. Used by nodes that help with a partitioned job to take over
+     * coordinating it when its coordinator is gone.
+     */
+    @Transactional
+    public List<String> takeOver(Collection<String> jobIds) {
+        Instant now = Instant.now();
+        if (jobRepository.takeOver(jobIds, nodeId, now, now.plusMillis(ttlMs)) == 0) {
+            return List.of();
+        }
+        return jobRepository.findAllById(jobIds).stream()
+                .filter(job -> nodeId.equals(job.getLeaseOwner()))
+                .map(CrawlJob::getId)
+                .toList();
+    }
+
+    /**
+     * Extend this node's leases on {@code jobIds} and return the jobs as they are now.
+     * A job whose lease owner is no longer this node was taken over.
+     */
+    @Transactional
+    public List<CrawlJob> renew(Collection<String> jobIds) {
+        jobRepository.renew(jobIds, nodeId, Instant.now().plusMillis(ttlMs));
+        return jobRepository.findAllById(jobIds);
+    }
+
+    /**
+     * Drop this node's lease on a job that stopped running here.
+     */
+    @Transactional
+    public void release(String jobId) {
+        jobRepository.releaseLease(jobId, nodeId);
+    }
+
+    static String ownerOf(String owner) {
+        return owner != null ? owner : "anonymous";
+    }
+
+    private static String generatedNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            host = "node";
+        }
+        String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        String id = host + "-" + pid + "-" + UUID.randomUUID().toString().substring(0, 8);
+        return id.length() <= 64 ? id : id.substring(id.length() - 64);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.crawler.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Edges of a running job's link graph on their way to the database. A full batch is saved
+ * right away by the worker that filled it; {@link CrawlRun} flushes the rest at every
+ * checkpoint and when the run ends.
+ */
+final class LinkBuffer {
+
+    private final String jobId;
+    private final PageGraph graph;
+    private final int batchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private int[] pairs;
+    private int edges;
+
+    LinkBuffer(String jobId, PageGraph graph, int batchSize) {
+        this.jobId = jobId;
+        this.graph = graph;
+        this.batchSize = Math.max(1, batchSize);
+        this.pairs = new int[this.batchSize * 2];
+    }
+
+    /**
+     * Record that page {@code source} links to page {@code target}. Negative ids mean "no
+     * page", as for the seed, and self-links are not kept.
+     */
+    void add(int source, int target) {
+        if (source < 0 || target < 0 || source == target) {
+            return;
+        }
+        int[] full;
+        lock.lock();
+        try {
+            pairs[edges * 2] = source;
+            pairs[edges * 2 + 1] = target;
+            if (++edges < batchSize) {
+                return;
+            }
+            full = pairs;
+            pairs = new int[batchSize * 2];
+            edges = 0;
+        } finally {
+            lock.unlock();
+        }
+        graph.saveLinks(jobId, full, batchSize);
+    }
+
+    void flush() {
+        int[] rest;
+        int count;
+        lock.lock();
+        try {
+            if (edges == 0) {
+                return;
+            }
+            rest = pairs;
+            count = edges;
+            pairs = new int[batchSize * 2];
+            edges = 0;
+        } finally {
+            lock.unlock();
+        }
+        graph.saveLinks(jobId, rest, count);
+    }
+}
@@ -0,0 +1,386 @@
+package com.example.crawler.service;
+
+import com.example.crawler.crawl.ForceLayout;
+import com.example.crawler.crawl.GraphIndex;
+import com.example.crawler.crawl.LinkBatch;
+import com.example.crawler.crawl.UrlCanonicalizer;
+import com.example.crawler.entity.CrawlJob;
+import com.example.crawler.entity.CrawlLinkBatch;
+import com.example.crawler.model.GraphLink;
+import com.example.crawler.model.GraphNode;
+import com.example.crawler.model.GraphResponse;
+import com.example.crawler.repository.CrawlJobRepository;
+import com.example.crawler.repository.CrawlLinkBatchRepository;
+import com.example.crawler.repository.CrawlPageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The link graph of a job: its stored pages as nodes, keyed by their dense page ids, and the
+ * edges between them, stored as batches of id pairs while the job runs.
+ * <p>
+ * Views are served from a {@link GraphIndex} of the whole graph, built once and kept for the
+ * few jobs viewed last. A running job's index is rebuilt in the background once it is
+ * index-ttl-ms old, one rebuild per job at a time, and views keep using the old index until
+ * the new one replaces it, so a view costs the same however large the graph has grown. Each
+ * index gets a {@link ForceLayout}, computed in the background from the previous index's
+ * layout, and views carry its latest positions, so the frontend only draws.
+ */
+@Service
+public class PageGraph {
+
+    private static final Logger log = LoggerFactory.getLogger(PageGraph.class);
+
+    private final CrawlJobRepository jobRepository;
+    private final CrawlPageRepository pageRepository;
+    private final CrawlLinkBatchRepository linkRepository;
+    private final int maxNodes;
+    private final long indexTtlMs;
+    private final int layoutSteps;
+    private final ForkJoinPool layoutPool;
+
+    // Adjacency indexes of the jobs viewed last, least recently viewed first.
+    private final Map<String, Cached> indexes;
+    // Index builds in progress, at most one per job.
+    private final Map<String, CompletableFuture<Cached>> rebuilds = new ConcurrentHashMap<>();
+    private final ExecutorService rebuildExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public PageGraph(CrawlJobRepository jobRepository,
+                     CrawlPageRepository pageRepository,
+                     CrawlLinkBatchRepository linkRepository,
+                     @Value("${crawler.graph.max-nodes:2000}") int maxNodes,
+                     @Value("${crawler.graph.index-cache:4}") int indexCache,
+                     @Value("${crawler.graph.index-ttl-ms:5000}") long indexTtlMs,
+                     @Value("${crawler.graph.layout-steps:300}") int layoutSteps,
+                     @Value("${crawler.graph.layout-threads:0}") int layoutThreads) {
+        this.jobRepository = jobRepository;
+        this.pageRepository = pageRepository;
+        this.linkRepository = linkRepository;
+        this.maxNodes = Math.max(1, maxNodes);
+        this.indexTtlMs = indexTtlMs;
+        this.layoutSteps = Math.max(1, layoutSteps);
+        this.layoutPool = new ForkJoinPool(layoutThreads > 0 ? layoutThreads : Runtime.getRuntime().availableProcessors());
+        this.indexes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                if (size() > indexCache) {
+                    eldest.getValue().layout().cancel();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Reserve {@code count} page ids for a job and return the first; ids start at 1.
+     */
+    @Transactional
+    public int reserve(String jobId, int count) {
+        if (jobRepository.reservePageIds(jobId, count) == 0) {
+            throw new IllegalStateException("Job " + jobId + " no longer exists");
+        }
+        return jobRepository.findPageIdsReserved(jobId) - count + 1;
+    }
+
+    /**
+     * Store the first {@code edges} source/target pairs of {@code pairs} as one batch.
+     */
+    public void saveLinks(String jobId, int[] pairs, int edges) {
+        linkRepository.save(new CrawlLinkBatch(jobId, edges, LinkBatch.encode(pairs, edges)));
+    }
+
+    /**
+     * A level-of-detail view of the job's graph, cut from its cached adjacency index:
+     * <ul>
+     *   <li>with {@code focus}, that page and the pages within {@code hops} links of it;</li>
+     *   <li>with {@code groupBy} "host" or "path", pages collapsed into one node per host or
+     *   per path prefix of {@code pathDepth} segments, and links merged between them;</li>
+     *   <li>with {@code viewport}, the most linked pages positioned inside it;</li>
+     *   <li>otherwise every page, or the {@code limit} most linked ones if there are more.</li>
+     * </ul>
+     * No view returns more than {@code limit} nodes. Links to URLs that were never fetched,
+     * because the job stopped first, are left out.
+     */
+    public GraphResponse graph(CrawlJob job, View view) {
+        if ((view.focus() != null ? 1 : 0) + (view.groupBy() != null ? 1 : 0) + (view.viewport() != null ? 1 : 0) > 1) {
+            throw new IllegalArgumentException("Only one of focus, groupBy and viewport can be given");
+        }
+        if (view.viewport() != null && view.viewport().length != 4) {
+            throw new IllegalArgumentException("viewport must be minX,minY,maxX,maxY");
+        }
+        int limit = Math.min(view.limit() > 0 ? view.limit() : maxNodes, maxNodes);
+        Cached cached = index(job);
+        GraphIndex index = cached.index();
+        GraphResponse response;
+        if (view.focus() != null) {
+            int center = index.node(view.focus());
+            if (center < 0) {
+                throw new IllegalArgumentException("Page " + view.focus() + " is not in the graph of job " + job.getId());
+            }
+            response = pages(cached, index.neighborhood(center, Math.max(0, view.hops()), limit));
+        } else if (view.viewport() != null) {
+            double[] box = view.viewport();
+            float[] positions = cached.layout().positions();
+            response = pages(cached, index.topByDegree(limit, node -> positions[2 * node] >= box[0]
+                    && positions[2 * node + 1] >= box[1] && positions[2 * node] <= box[2]
+                    && positions[2 * node + 1] <= box[3]));
+        } else if (view.groupBy() == null) {
+            response = pages(cached, index.size() <= limit ? index.all() : index.topByDegree(limit));
+        } else if ("host".equals(view.groupBy())) {
+            response = groups(cached, index.grouping("host", UrlCanonicalizer::hostOf), "host", limit);
+        } else if ("path".equals(view.groupBy())) {
+            int depth = Math.max(1, view.pathDepth());
+            response = groups(cached, index.grouping("path/" + depth, url -> pathPrefix(url, depth)), "path", limit);
+        } else {
+            throw new IllegalArgumentException("groupBy must be host or path, not " + view.groupBy());
+        }
+        response.setTotalNodes(index.size());
+        response.setTotalLinks(index.edgeCount());
+        return response;
+    }
+
+    /**
+     * What to cut from the graph; see {@link #graph}. A {@code limit} of 0 means the
+     * configured maximum; a viewport is minX, minY, maxX, maxY in layout coordinates.
+     */
+    public record View(Integer focus, int hops, String groupBy, int pathDepth, double[] viewport, int limit) {
+    }
+
+    private GraphResponse pages(Cached cached, int[] selected) {
+        GraphIndex index = cached.index();
+        float[] positions = cached.layout().positions();
+        List<GraphNode> nodes = new ArrayList<>(selected.length);
+        for (int node : selected) {
+            String url = index.url(node);
+            boolean external = !cached.seedHost().equals(UrlCanonicalizer.hostOf(url));
+            GraphNode graphNode = new GraphNode(Integer.toString(index.pageId(node)), label(url, external),
+                    type(index.depth(node), index.statusCode(node), external));
+            graphNode.setDegree(index.degree(node));
+            graphNode.setX(positions[2 * node]);
+            graphNode.setY(positions[2 * node + 1]);
+            nodes.add(graphNode);
+        }
+        int[] pairs = index.linksAmong(selected);
+        List<GraphLink> links = new ArrayList<>(pairs.length / 2);
+        for (int i = 0; i < pairs.length; i += 2) {
+            links.add(new GraphLink(Integer.toString(index.pageId(pairs[i])), Integer.toString(index.pageId(pairs[i + 1]))));
+        }
+        return new GraphResponse(nodes, links);
+    }
+
+    private GraphResponse groups(Cached cached, GraphIndex.Grouping grouping, String kind, int limit) {
+        int[] selected = grouping.size() <= limit ? allOf(grouping.size()) : grouping.largest(limit);
+        int home = cached.home() < 0 ? -1 : grouping.groupOf(cached.home());
+        int[] triples = grouping.linksAmong(selected);
+        int[] degrees = new int[grouping.size()];
+        List<GraphLink> links = new ArrayList<>(triples.length / 3);
+        for (int i = 0; i < triples.length; i += 3) {
+            GraphLink link = new GraphLink(kind + ":" + grouping.key(triples[i]), kind + ":" + grouping.key(triples[i + 1]));
+            link.setWeight(triples[i + 2]);
+            links.add(link);
+            degrees[triples[i]] += triples[i + 2];
+            degrees[triples[i + 1]] += triples[i + 2];
+        }
+        // A group sits at the centre of its pages.
+        float[] positions = cached.layout().positions();
+        double[] sumX = new double[grouping.size()];
+        double[] sumY = new double[grouping.size()];
+        for (int i = 0; i < cached.index().size(); i++) {
+            sumX[grouping.groupOf(i)] += positions[2 * i];
+            sumY[grouping.groupOf(i)] += positions[2 * i + 1];
+        }
+        List<GraphNode> nodes = new ArrayList<>(selected.length);
+        for (int group : selected) {
+            String key = grouping.key(group);
+            boolean external = !cached.seedHost().equals(UrlCanonicalizer.hostOf("http://" + key));
+            GraphNode node = new GraphNode(kind + ":" + key, external || "host".equals(kind) ? key : key.substring(key.indexOf('/')),
+                    group == home ? "home" : external ? "external" : "internal");
+            node.setSize(grouping.members(group));
+            node.setDegree(degrees[group]);
+            node.setX(sumX[group] / grouping.members(group));
+            node.setY(sumY[group] / grouping.members(group));
+            nodes.add(node);
+        }
+        return new GraphResponse(nodes, links);
+    }
+
+    // The cached index of the job. One that is stale, because the job has changed status since
+    // or has been running for longer than the index TTL, is still served while a background
+    // rebuild replaces it; only a job's first view waits for its index to be built.
+    private Cached index(CrawlJob job) {
+        Cached current;
+        synchronized (indexes) {
+            current = indexes.get(job.getId());
+        }
+        if (current != null) {
+            if (!current.status().equals(job.getStatus())
+                    || ("RUNNING".equals(current.status()) && System.currentTimeMillis() - current.builtAt() >= indexTtlMs)) {
+                rebuild(job, current);
+            }
+            return current;
+        }
+        try {
+            return rebuild(job, null).join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof RuntimeException cause ? cause : ex;
+        }
+    }
+
+    // Start rebuilding the job's index, unless a rebuild of it is already running; either way,
+    // return the rebuild in progress. Built off the request thread and outside the lock, so
+    // neither viewers nor the views of other jobs wait for a large graph.
+    private CompletableFuture<Cached> rebuild(CrawlJob job, Cached previous) {
+        CompletableFuture<Cached> rebuild = new CompletableFuture<>();
+        CompletableFuture<Cached> running = rebuilds.putIfAbsent(job.getId(), rebuild);
+        if (running != null) {
+            return running;
+        }
+        rebuildExecutor.execute(() -> {
+            try {
+                Cached built = build(job, previous, System.currentTimeMillis());
+                install(job.getId(), built);
+                rebuilds.remove(job.getId(), rebuild);
+                rebuild.complete(built);
+            } catch (RuntimeException ex) {
+                rebuilds.remove(job.getId(), rebuild);
+                if (previous != null) {
+                    log.warn("Graph index of job {} not rebuilt", job.getId(), ex);
+                }
+                rebuild.completeExceptionally(ex);
+            }
+        });
+        return rebuild;
+    }
+
+    private void install(String jobId, Cached built) {
+        Cached replaced;
+        synchronized (indexes) {
+            replaced = indexes.put(jobId, built);
+        }
+        if (replaced != null) {
+            replaced.layout().cancel();
+        }
+        ForceLayout layout = built.layout();
+        layoutPool.execute(() -> {
+            try {
+                layout.run(layoutPool);
+            } catch (RuntimeException ex) {
+                log.warn("Graph layout of job {} failed", jobId, ex);
+            }
+        });
+    }
+
+    private Cached build(CrawlJob job, Cached previous, long now) {
+        List<Object[]> rows = pageRepository.findGraphNodes(job.getId());
+        int maxId = 0;
+        for (Object[] row : rows) {
+            maxId = Math.max(maxId, (Integer) row[0]);
+        }
+        boolean[] present = new boolean[maxId + 1];
+        int[] ids = new int[rows.size()];
+        String[] urls = new String[rows.size()];
+        int[] depths = new int[rows.size()];
+        int[] statusCodes = new int[rows.size()];
+        int n = 0;
+        int home = -1;
+        for (Object[] row : rows) {
+            int id = (Integer) row[0];
+            if (present[id]) {
+                // fetched again after a resume
+                continue;
+            }
+            present[id] = true;
+            ids[n] = id;
+            urls[n] = (String) row[1];
+            depths[n] = (Integer) row[2];
+            statusCodes[n] = (Integer) row[3];
+            if (depths[n] == 0 && home < 0) {
+                home = n;
+            }
+            n++;
+        }
+
+        int[] pairs = new int[2048];
+        int edges = 0;
+        for (byte[] payload : linkRepository.findPayloads(job.getId())) {
+            int[] batch = LinkBatch.decode(payload);
+            if (edges * 2 + batch.length > pairs.length) {
+                pairs = Arrays.copyOf(pairs, Math.max(pairs.length * 2, edges * 2 + batch.length));
+            }
+            System.arraycopy(batch, 0, pairs, edges * 2, batch.length);
+            edges += batch.length / 2;
+        }
+        GraphIndex index = new GraphIndex(Arrays.copyOf(ids, n), Arrays.copyOf(urls, n),
+                Arrays.copyOf(depths, n), Arrays.copyOf(statusCodes, n), pairs, edges);
+        ForceLayout layout = new ForceLayout(index, previous == null ? null : previous.layout(), layoutSteps);
+        return new Cached(index, layout, home, UrlCanonicalizer.hostOf(job.getUrl()), job.getStatus(), now);
+    }
+
+    private record Cached(GraphIndex index, ForceLayout layout, int home, String seedHost, String status,
+                          long builtAt) {
+    }
+
+    private static int[] allOf(int count) {
+        int[] all = new int[count];
+        Arrays.setAll(all, i -> i);
+        return all;
+    }
+
+    // Host and the first segments of the path, without query: "example.com/blog/2024".
+    private static String pathPrefix(String url, int segments) {
+        int host = url.indexOf("://") + 3;
+        int end = url.length();
+        for (char stop : new char[]{'?', '#'}) {
+            int at = url.indexOf(stop, host);
+            if (at >= 0) {
+                end = Math.min(end, at);
+            }
+        }
+        int slash = url.indexOf('/', host);
+        if (slash < 0 || slash >= end) {
+            return url.substring(host, end) + "/";
+        }
+        int cut = slash;
+        for (int i = 0; i < segments && cut < end; i++) {
+            int next = url.indexOf('/', cut + 1);
+            cut = next < 0 || next > end ? end : next;
+        }
+        return cut == slash ? url.substring(host, slash) + "/" : url.substring(host, cut);
+    }
+
+    private static String type(int depth, int statusCode, boolean external) {
+        if (depth == 0) {
+            return "home";
+        }
+        if (statusCode >= 400) {
+            return "error";
+        }
+        return external ? "external" : "internal";
+    }
+
+    // Path and query for pages on the seed's host, host included for the others.
+    private static String label(String url, boolean external) {
+        int host = url.indexOf("://") + 3;
+        int path = url.indexOf('/', host);
+        if (external) {
+            return url.substring(host);
+        }
+        return path < 0 ? "/" : url.substring(path);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.crawler.service;
+
+import com.example.crawler.crawl.HtmlLinkScanner;
+import com.example.crawler.crawl.PageMetadata;
+import com.example.crawler.crawl.SimHash;
+import com.example.crawler.crawl.UrlCanonicalizer;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-fetch parsing state: a streaming link scanner, the canonicalizer its links go through
+ * and the SimHash of the page text. Instances are pooled by {@link CrawlEngine} and reset
+ * between pages.
+ * <p>
+ * Links are collected, not queued: every distinct resolved page link is kept as
+ * newline-separated text, which {@link CrawlEngine} queues once the whole page has been seen
+ * and found not to be a near-duplicate. Sub-resource links (images, scripts, stylesheets)
+ * are dropped. The same text is stored on the page record, so an incremental re-crawl can
+ * replay the links of an unchanged page.
+ * <p>
+ * With metadata on, head fields are collected into a {@link PageMetadata}; a robots meta
+ * of {@code nofollow} drops any further links of the page.
+ */
+final class PageParser implements HtmlLinkScanner.Listener {
+
+    final HtmlLinkScanner scanner = new HtmlLinkScanner(this);
+    final UrlCanonicalizer link = new UrlCanonicalizer();
+    final SimHash textHash = new SimHash();
+
+    private String base;
+    private int linksFound;
+    private boolean links;
+    private boolean noFollow;
+    private StringBuilder outlinks = new StringBuilder(1024);
+    private final Set<Long> outlinkHashes = new HashSet<>();
+
+    private String title;
+    private String description;
+    private String robots;
+    private String canonical;
+    private final Map<String, String> hreflang = new LinkedHashMap<>();
+    private final Map<String, String> openGraph = new LinkedHashMap<>();
+
+    /**
+     * Prepare for a page at {@code pageUrl}.
+     *
+     * @param links           collect the page's links and hash its text
+     * @param metadataByteCap head bytes to scan for metadata; 0 skips metadata
+     */
+    PageParser reset(String pageUrl, boolean links, long metadataByteCap) {
+        this.base = pageUrl;
+        this.linksFound = 0;
+        this.links = links;
+        this.noFollow = false;
+        outlinks.setLength(0);
+        outlinkHashes.clear();
+        this.title = null;
+        this.description = null;
+        this.robots = null;
+        this.canonical = null;
+        hreflang.clear();
+        openGraph.clear();
+        textHash.reset();
+        scanner.reset(this, links, metadataByteCap, links ? textHash : null);
+        return this;
+    }
+
+    /**
+     * Drop references to the finished page before going back to the pool.
+     */
+    PageParser clear() {
+        this.base = null;
+        if (outlinks.capacity() > 64 * 1024) {
+            // don't let one huge page pin its buffer in the pool
+            outlinks = new StringBuilder(1024);
+        }
+        return this;
+    }
+
+    int linksFound() {
+        return linksFound;
+    }
+
+    /**
+     * Distinct absolute outlinks, one per line, or null if links were not extracted.
+     */
+    String outlinks() {
+        return links ? outlinks.toString() : null;
+    }
+
+    /**
+     * Metadata of the page just parsed, or null if it declared none.
+     */
+    PageMetadata metadata() {
+        if (title == null && description == null && robots == null && canonical == null
+                && hreflang.isEmpty() && openGraph.isEmpty()) {
+            return null;
+        }
+        return new PageMetadata(title, description, robots, canonical, hreflang, openGraph);
+    }
+
+    @Override
+    public void onLink(CharSequence url, HtmlLinkScanner.LinkKind kind) {
+        // Images, scripts and stylesheets are not pages: never queued, stored or graphed.
+        if (kind != HtmlLinkScanner.LinkKind.PAGE) {
+            return;
+        }
+        linksFound++;
+        if (noFollow || !link.resolve(base, url)) {
+            return;
+        }
+        if (outlinkHashes.add(link.fingerprint())) {
+            link.appendTo(outlinks);
+            outlinks.append('\n');
+        }
+    }
+
+    @Override
+    public void onBase(CharSequence url) {
+        if (link.resolve(base, url)) {
+            base = link.url();
+        }
+    }
+
+    @Override
+    public void onMetadata(HtmlLinkScanner.MetaField field, String key, String value) {
+        switch (field) {
+            case TITLE -> title = value.replaceAll("\\s+", " ");
+            case DESCRIPTION -> description = value;
+            case ROBOTS -> {
+                robots = value;
+                noFollow = PageMetadata.isNoFollow(value);
+            }
+            case CANONICAL -> canonical = absolute(value);
+            case HREFLANG -> {
+                String href = absolute(value);
+                if (href != null) {
+                    hreflang.putIfAbsent(key, href);
+                }
+            }
+            case OPEN_GRAPH -> openGraph.putIfAbsent(key, value);
+        }
+    }
+
+    private String absolute(String href) {
+        return link.resolve(base, href) ? link.url() : null;
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.crawler.service;
+
+import com.example.crawler.crawl.RingBuffer;
+import com.example.crawler.entity.CrawlPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.lob.DefaultLobHandler;
+import org.springframework.jdbc.support.lob.LobCreator;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Inserts {@code crawl_page} rows off the crawling threads.
+ * <p>
+ * Page ids are IDENTITY columns, so JPA would insert pages one statement at a time. Instead,
+ * workers hand their pages to a bounded {@link RingBuffer} and one background thread inserts
+ * them in JDBC batches, like {@link CrawlLogWriter} does for log lines. Pages are never
+ * dropped: a worker that finds the buffer full waits for the writer. {@link #flush} waits
+ * until every page handed over before it is written; {@link CrawlRun} calls it before each
+ * checkpoint, so the journal never counts a page whose row is not stored.
+ */
+@Service
+public class PageWriter implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PageWriter.class);
+    private static final String INSERT = "insert into crawl_page (job_id, url, url_hash, page_id, depth, status_code, "
+            + "etag, last_modified, fetched_at, sim_hash, duplicate, outlinks, meta_title, meta_description, "
+            + "meta_robots, meta_canonical, meta_hreflang, meta_open_graph) "
+            + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    // outlinks is a @Lob: an oid large object on PostgreSQL, which must be written as a Clob.
+    private final DefaultLobHandler lobHandler = new DefaultLobHandler();
+    private final RingBuffer<Object> buffer;
+    private final int batchSize;
+    private final long flushNanos;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public PageWriter(JdbcTemplate jdbcTemplate,
+                      PlatformTransactionManager transactionManager,
+                      @Value("${crawler.page.buffer-size:16384}") int bufferSize,
+                      @Value("${crawler.page.batch-size:200}") int batchSize,
+                      @Value("${crawler.page.flush-ms:200}") long flushMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.lobHandler.setWrapAsLob(true);
+        this.buffer = new RingBuffer<>(bufferSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushMs));
+        this.writer = Thread.ofPlatform().name("crawl-page-writer").daemon().start(this::drain);
+    }
+
+    /**
+     * Queue a page row for insertion. Waits while the buffer is full.
+     */
+    public void save(CrawlPage page) {
+        if (!running) {
+            write(List.of(page));
+            return;
+        }
+        put(page);
+    }
+
+    /**
+     * Wait until every page queued before this call is written, or failed to be.
+     */
+    public void flush() {
+        if (!running) {
+            return;
+        }
+        CountDownLatch written = new CountDownLatch(1);
+        put(written);
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                written.await();
+                break;
+            } catch (InterruptedException ex) {
+                // A stopping job still needs its pages stored before it finishes.
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write out what is buffered and stop the writer thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void put(Object element) {
+        while (!buffer.offer(element)) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private void drain() {
+        List<Object> drained = new ArrayList<>(batchSize);
+        List<CrawlPage> batch = new ArrayList<>(batchSize);
+        while (true) {
+            boolean stopping = !running;
+            drained.clear();
+            buffer.drainTo(drained, batchSize);
+            if (drained.isEmpty()) {
+                if (stopping) {
+                    return;
+                }
+                LockSupport.parkNanos(flushNanos);
+                continue;
+            }
+            batch.clear();
+            for (Object element : drained) {
+                if (element instanceof CrawlPage page) {
+                    batch.add(page);
+                } else {
+                    // A flush marker: everything queued before it is in this or an earlier batch.
+                    write(batch);
+                    batch.clear();
+                    ((CountDownLatch) element).countDown();
+                }
+            }
+            write(batch);
+        }
+    }
+
+    private void write(List<CrawlPage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            insert(batch);
+        } catch (RuntimeException ex) {
+            // One bad row fails the whole batch; retry row by row so only that one is lost.
+            for (CrawlPage page : batch) {
+                try {
+                    insert(List.of(page));
+                } catch (RuntimeException rowEx) {
+                    LOG.warn("Dropped page {} of job {}: {}", page.getUrl(), page.getJobId(), rowEx.getMessage());
+                }
+            }
+        }
+    }
+
+    // Large objects can only be created inside a transaction on PostgreSQL.
+    private void insert(List<CrawlPage> pages) {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (LobCreator lobs = lobHandler.getLobCreator()) {
+                jdbcTemplate.batchUpdate(INSERT, pages, pages.size(), (statement, page) -> bind(statement, page, lobs));
+            }
+        });
+    }
+
+    private static void bind(PreparedStatement statement, CrawlPage page, LobCreator lobs) throws SQLException {
+        statement.setString(1, page.getJobId());
+        statement.setString(2, page.getUrl());
+        statement.setLong(3, page.getUrlHash());
+        statement.setInt(4, page.getPageId());
+        statement.setInt(5, page.getDepth());
+        statement.setInt(6, page.getStatusCode());
+        statement.setString(7, page.getEtag());
+        statement.setString(8, page.getLastModified());
+        statement.setTimestamp(9, Timestamp.from(page.getFetchedAt()));
+        statement.setLong(10, page.getSimHash());
+        statement.setBoolean(11, page.isDuplicate());
+        lobs.setClobAsString(statement, 12, page.getOutlinks());
+        statement.setString(13, page.getMetaTitle());
+        statement.setString(14, page.getMetaDescription());
+        statement.setString(15, page.getMetaRobots());
+        statement.setString(16, page.getMetaCanonical());
+        statement.setString(17, page.getMetaHreflang());
+        statement.setString(18, page.getMetaOpenGraph());
+    }
+}
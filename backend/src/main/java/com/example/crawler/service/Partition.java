@@ -0,0 +1,187 @@
+package com.example.crawler.service;
+
+import com.example.crawler.crawl.HandoffBatch;
+import com.example.crawler.crawl.HashRing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This node's share of a partitioned job: the hosts it owns under the job's current
+ * {@link HashRing}, and the URLs of other hosts waiting to be handed to their owners.
+ * <p>
+ * Handed-off URLs are buffered per target node. A full batch is sent right away by the
+ * worker that filled it; {@link PartitionExchange} flushes the rest on every exchange.
+ */
+final class Partition {
+
+    private final String jobId;
+    private final String nodeId;
+    private final PartitionExchange exchange;
+    private final int batchSize;
+    private volatile HashRing ring;
+    private volatile boolean coordinator;
+    private volatile CrawlRun run;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, List<HandoffBatch.Entry>> outbound = new HashMap<>();
+    private int buffered;
+    private long sent;
+    private long received;
+
+    // Coordinator only: the counters of the last exchange that found every partition idle.
+    private long quietSent = -1;
+    private long quietReceived = -1;
+
+    Partition(String jobId, String nodeId, boolean coordinator, HashRing ring, PartitionExchange exchange,
+              int batchSize) {
+        this.jobId = jobId;
+        this.nodeId = nodeId;
+        this.coordinator = coordinator;
+        this.ring = ring;
+        this.exchange = exchange;
+        this.batchSize = batchSize;
+    }
+
+    String jobId() {
+        return jobId;
+    }
+
+    String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * True on the node holding the job's lease, which seeds the crawl and decides when it is done.
+     */
+    boolean coordinator() {
+        return coordinator;
+    }
+
+    void promote() {
+        coordinator = true;
+    }
+
+    HashRing ring() {
+        return ring;
+    }
+
+    void ring(HashRing ring) {
+        this.ring = ring;
+    }
+
+    CrawlRun run() {
+        return run;
+    }
+
+    void attach(CrawlRun run) {
+        this.run = run;
+    }
+
+    boolean owns(String host) {
+        return nodeId.equals(ring.ownerOf(host));
+    }
+
+    /**
+     * Queue a task for the node that owns its host. Every link to another node's host is
+     * sent, not just the first one to a URL, since the owner records the link's edge; the
+     * owner deduplicates the tasks against everything it has queued.
+     */
+    void handOff(HandoffBatch.Entry entry) {
+        String target = ring.ownerOf(entry.task().host());
+        List<HandoffBatch.Entry> batch;
+        lock.lock();
+        try {
+            batch = outbound.computeIfAbsent(target, node -> new ArrayList<>());
+            batch.add(entry);
+            buffered++;
+            if (batch.size() < batchSize) {
+                return;
+            }
+            outbound.remove(target);
+            buffered -= batch.size();
+        } finally {
+            lock.unlock();
+        }
+        exchange.send(this, target, batch);
+    }
+
+    /**
+     * Take every buffered batch, by target node.
+     */
+    Map<String, List<HandoffBatch.Entry>> drain() {
+        lock.lock();
+        try {
+            Map<String, List<HandoffBatch.Entry>> batches = new HashMap<>(outbound);
+            outbound.clear();
+            buffered = 0;
+            return batches;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean hasOutbound() {
+        lock.lock();
+        try {
+            return buffered > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void sent(int urls) {
+        lock.lock();
+        try {
+            sent += urls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void received(int urls) {
+        lock.lock();
+        try {
+            received += urls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long sentCount() {
+        lock.lock();
+        try {
+            return sent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long receivedCount() {
+        lock.lock();
+        try {
+            return received;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record an exchange that found the whole job idle with the given cluster-wide counters.
+     * True if the previous exchange found the same, so nothing moved in between.
+     */
+    boolean quietAgain(long sent, long received) {
+        boolean again = sent == quietSent && received == quietReceived;
+        quietSent = sent;
+        quietReceived = received;
+        return again;
+    }
+
+    void noisy() {
+        quietSent = -1;
+        quietReceived = -1;
+    }
+}
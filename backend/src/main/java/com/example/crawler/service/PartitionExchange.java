@@ -0,0 +1,223 @@
+package com.example.crawler.service;
+
+import com.example.crawler.crawl.HandoffBatch;
+import com.example.crawler.crawl.HashRing;
+import com.example.crawler.entity.CrawlHandoff;
+import com.example.crawler.entity.CrawlJob;
+import com.example.crawler.entity.CrawlPartition;
+import com.example.crawler.repository.CrawlHandoffRepository;
+import com.example.crawler.repository.CrawlJobRepository;
+import com.example.crawler.repository.CrawlPartitionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Moves URLs between the nodes of partitioned jobs, through the database they already share.
+ * <p>
+ * A partitioned job runs on every node that has joined it, each node crawling the hosts
+ * the job's {@link HashRing} assigns to it. Every {@code crawler.partition.exchange-ms} a
+ * node sends its buffered handoffs, queues the batches addressed to it and rewrites its
+ * {@link CrawlPartition} row. The ring is rebuilt from the rows that are fresh, so a node
+ * joins the ring by writing its first row and leaves it when its row goes stale or is
+ * deleted; tasks of hosts that change owner are forwarded by the node that still holds them.
+ * <p>
+ * The coordinating node, the one holding the job's lease, also decides when the job is
+ * done: every fresh partition idle, no batch in transit, and the cluster's sent and received
+ * counters unchanged since the previous exchange that saw the same.
+ */
+@Service
+public class PartitionExchange {
+
+    private final CrawlHandoffRepository handoffRepository;
+    private final CrawlPartitionRepository partitionRepository;
+    private final CrawlJobRepository jobRepository;
+    private final CrawlLogWriter logWriter;
+    private final JobLeases jobLeases;
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    @Value("${crawler.partition.virtual-nodes:128}")
+    private int virtualNodes;
+
+    @Value("${crawler.partition.batch-size:512}")
+    private int batchSize;
+
+    @Value("${crawler.lease.ttl-ms:30000}")
+    private long ttlMs;
+
+    @Value("${crawler.max-pages:10000}")
+    private int maxPages;
+
+    public PartitionExchange(CrawlHandoffRepository handoffRepository,
+                             CrawlPartitionRepository partitionRepository,
+                             CrawlJobRepository jobRepository,
+                             CrawlLogWriter logWriter,
+                             JobLeases jobLeases) {
+        this.handoffRepository = handoffRepository;
+        this.partitionRepository = partitionRepository;
+        this.jobRepository = jobRepository;
+        this.logWriter = logWriter;
+        this.jobLeases = jobLeases;
+    }
+
+    /**
+     * Take part in a partitioned job from this node, as its coordinator or as a helper.
+     */
+    Partition join(String jobId, boolean coordinator) {
+        String nodeId = jobLeases.nodeId();
+        CrawlPartition row = partitionRepository.findById(jobId + "/" + nodeId)
+                .orElseGet(() -> new CrawlPartition(jobId, nodeId));
+        row.setIdle(false);
+        row.setUpdatedAt(Instant.now());
+        partitionRepository.save(row);
+        Partition partition = new Partition(jobId, nodeId, coordinator,
+                new HashRing(members(jobId, Instant.now()), virtualNodes), this, batchSize);
+        partitions.put(jobId, partition);
+        return partition;
+    }
+
+    /**
+     * Stop taking part in a job. With {@code flush}, URLs still waiting for their owners are
+     * sent first, so a paused job loses none of them.
+     */
+    void leave(String jobId, boolean flush) {
+        Partition partition = partitions.remove(jobId);
+        if (partition == null) {
+            return;
+        }
+        if (flush) {
+            partition.drain().forEach((target, batch) -> send(partition, target, batch));
+        }
+        partitionRepository.deleteById(partition.jobId() + "/" + partition.nodeId());
+    }
+
+    /**
+     * Hand this node's part of a job to it as the new coordinator, after it took over the
+     * job's lease. False if the job has no partition here.
+     */
+    boolean promote(String jobId) {
+        Partition partition = partitions.get(jobId);
+        if (partition == null) {
+            return false;
+        }
+        partition.promote();
+        return true;
+    }
+
+    /**
+     * Jobs this node currently has a partition of.
+     */
+    public Set<String> jobIds() {
+        return Set.copyOf(partitions.keySet());
+    }
+
+    void send(Partition partition, String target, List<HandoffBatch.Entry> batch) {
+        handoffRepository.save(new CrawlHandoff(partition.jobId(), target, batch.size(), HandoffBatch.encode(batch)));
+        partition.sent(batch.size());
+    }
+
+    /**
+     * One exchange for this node's partition of {@code jobId}: send, receive, report, and
+     * on the coordinator, check whether the job is done. Receiving and reporting share a
+     * transaction, so no other node sees a batch gone before it sees the counter it moved.
+     */
+    @Transactional
+    public void exchange(String jobId) {
+        Partition partition = partitions.get(jobId);
+        CrawlRun run = partition != null ? partition.run() : null;
+        if (run == null) {
+            return;
+        }
+        partition.drain().forEach((target, batch) -> send(partition, target, batch));
+        List<CrawlHandoff> inbound = handoffRepository.findTop32ByJobIdAndTargetNodeOrderByIdAsc(jobId, partition.nodeId());
+        for (CrawlHandoff handoff : inbound) {
+            for (HandoffBatch.Entry entry : HandoffBatch.decode(handoff.getPayload())) {
+                run.receive(entry);
+            }
+            partition.received(handoff.getUrls());
+        }
+        handoffRepository.deleteAllInBatch(inbound);
+        // Batches may have held URLs this node no longer owns; pass them on in the same exchange.
+        partition.drain().forEach((target, batch) -> send(partition, target, batch));
+
+        Instant now = Instant.now();
+        CrawlPartition row = partitionRepository.findById(jobId + "/" + partition.nodeId())
+                .orElseGet(() -> new CrawlPartition(jobId, partition.nodeId()));
+        row.setSent(partition.sentCount());
+        row.setReceived(partition.receivedCount());
+        row.setIdle(run.idle() && !partition.hasOutbound());
+        row.setUpdatedAt(now);
+        partitionRepository.save(row);
+
+        List<CrawlPartition> rows = partitionRepository.findByJobId(jobId);
+        Set<String> members = members(rows, now);
+        if (!members.equals(Set.copyOf(partition.ring().nodes()))) {
+            partition.ring(new HashRing(members, virtualNodes));
+            run.rebalance();
+            log("RING     ┊ %d nodes ┊ %s".formatted(members.size(), String.join(", ", members)), jobId);
+        }
+        if (partition.coordinator()) {
+            checkDone(partition, run, rows, members, now);
+        }
+    }
+
+    /**
+     * Drop what is left of a finished or cancelled job's exchange state.
+     */
+    @Transactional
+    public void clear(String jobId) {
+        handoffRepository.deleteByJob(jobId);
+        partitionRepository.deleteByJob(jobId);
+    }
+
+    private void checkDone(Partition partition, CrawlRun run, List<CrawlPartition> rows, Set<String> members, Instant now) {
+        String jobId = partition.jobId();
+        handoffRepository.retarget(jobId, members, partition.nodeId());
+        CrawlJob job = jobRepository.findById(jobId).orElse(null);
+        if (job != null && job.getPagesVisited() >= maxPages) {
+            run.finish();
+            return;
+        }
+        long sent = 0;
+        long received = 0;
+        boolean idle = true;
+        Instant fresh = now.minusMillis(ttlMs);
+        for (CrawlPartition row : rows) {
+            sent += row.getSent();
+            received += row.getReceived();
+            idle &= row.isIdle() || row.getUpdatedAt().isBefore(fresh);
+        }
+        if (!idle || handoffRepository.countByJobId(jobId) > 0) {
+            partition.noisy();
+        } else if (partition.quietAgain(sent, received)) {
+            run.finish();
+        }
+    }
+
+    private Set<String> members(String jobId, Instant now) {
+        return members(partitionRepository.findByJobId(jobId), now);
+    }
+
+    private Set<String> members(List<CrawlPartition> rows, Instant now) {
+        Instant fresh = now.minusMillis(ttlMs);
+        Set<String> members = new TreeSet<>();
+        members.add(jobLeases.nodeId());
+        for (CrawlPartition row : rows) {
+            if (!row.getUpdatedAt().isBefore(fresh)) {
+                members.add(row.getNodeId());
+            }
+        }
+        return members;
+    }
+
+    private void log(String message, String jobId) {
+        logWriter.log(jobId, message);
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.crawler.crawl;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.http2.Http2Protocol;
+import org.apache.tomcat.util.net.SSLHostConfig;
+import org.apache.tomcat.util.net.SSLHostConfigCertificate;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.spi.InetAddressResolver;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Fetch-layer counters against real TLS servers on localhost: the JDK's HttpsServer for
+ * HTTP/1.1 keep-alive, an embedded Tomcat for HTTP/2 negotiated through ALPN. The client is
+ * built like the crawlHttpClient bean, trusting the test's self-signed certificate.
+ */
+class FetchMetricsTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    @Test
+    void keepAliveReusesOneTlsConnection() throws Exception {
+        HttpsServer server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(serverContext()));
+        server.createContext("/", exchange -> {
+            byte[] body = "ok".getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        try {
+            FetchMetrics metrics = new FetchMetrics();
+            HttpClient client = client(metrics);
+            URI uri = URI.create("https://localhost:" + server.getAddress().getPort() + "/");
+            for (int i = 0; i < 5; i++) {
+                HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                assertEquals(HttpClient.Version.HTTP_1_1, response.version());
+            }
+
+            FetchMetrics.Snapshot snapshot = metrics.snapshot();
+            assertEquals(5, snapshot.requests());
+            assertEquals(5, snapshot.httpsRequests());
+            assertEquals(0, snapshot.http2Responses());
+            assertEquals(1, snapshot.tlsConnections());
+            assertEquals(0.8, snapshot.connectionReuseRate(), 1e-9);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void http2MultiplexesConcurrentRequests() throws Exception {
+        Tomcat tomcat = http2Server();
+        tomcat.start();
+        try {
+            FetchMetrics metrics = new FetchMetrics();
+            HttpClient client = client(metrics);
+            URI uri = URI.create("https://localhost:" + tomcat.getConnector().getLocalPort() + "/");
+            // One request first, so the others find the negotiated connection in the pool.
+            assertEquals(HttpClient.Version.HTTP_2, client.send(HttpRequest.newBuilder(uri).build(),
+                    HttpResponse.BodyHandlers.ofString()).version());
+            List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+            for (int i = 0; i < 9; i++) {
+                responses.add(client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString()));
+            }
+            for (CompletableFuture<HttpResponse<String>> response : responses) {
+                assertEquals(HttpClient.Version.HTTP_2, response.join().version());
+            }
+
+            FetchMetrics.Snapshot snapshot = metrics.snapshot();
+            assertEquals(10, snapshot.requests());
+            assertEquals(10, snapshot.http2Responses());
+            assertEquals(1, snapshot.tlsConnections());
+            assertEquals(0.9, snapshot.connectionReuseRate(), 1e-9);
+        } finally {
+            tomcat.stop();
+            tomcat.destroy();
+        }
+    }
+
+    @Test
+    void dnsCacheAnswersRepeatedLookups() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        InetAddressResolver builtin = new InetAddressResolver() {
+            @Override
+            public Stream<InetAddress> lookupByName(String host, LookupPolicy policy) throws UnknownHostException {
+                lookups.incrementAndGet();
+                if (host.endsWith(".invalid")) {
+                    throw new UnknownHostException(host);
+                }
+                return Stream.of(InetAddress.getByAddress(host, new byte[]{127, 0, 0, 1}));
+            }
+
+            @Override
+            public String lookupByAddress(byte[] addr) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        // The resolver the JDK gets from the provider, in front of a stub instead of the system's.
+        InetAddressResolver resolver = new CachingDnsResolver.Resolver(builtin);
+        InetAddressResolver.LookupPolicy policy = InetAddressResolver.LookupPolicy.of(InetAddressResolver.LookupPolicy.IPV4);
+        // The counters are JVM-wide, so only their change is checked.
+        FetchMetrics metrics = new FetchMetrics();
+        FetchMetrics.Snapshot before = metrics.snapshot();
+        long hits = CachingDnsResolver.hits();
+        long misses = CachingDnsResolver.misses();
+        long negativeHits = CachingDnsResolver.negativeHits();
+
+        String host = "fetch-metrics-" + System.nanoTime() + ".test";
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, resolver.lookupByName(host, policy).count());
+        }
+        String dead = "fetch-metrics-" + System.nanoTime() + ".invalid";
+        for (int i = 0; i < 2; i++) {
+            assertThrows(UnknownHostException.class, () -> resolver.lookupByName(dead, policy));
+        }
+
+        assertEquals(2, lookups.get());
+        assertEquals(2, CachingDnsResolver.hits() - hits);
+        assertEquals(2, CachingDnsResolver.misses() - misses);
+        assertEquals(1, CachingDnsResolver.negativeHits() - negativeHits);
+        FetchMetrics.Snapshot after = metrics.snapshot();
+        assertEquals(2, after.dnsHits() - before.dnsHits());
+        assertEquals(2, after.dnsMisses() - before.dnsMisses());
+        assertEquals(1, after.dnsNegativeHits() - before.dnsNegativeHits());
+    }
+
+    private static HttpClient client(FetchMetrics metrics) throws Exception {
+        TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trust.init(keyStore());
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trust.getTrustManagers(), null);
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .sslContext(metrics.countingContext(context))
+                .build();
+        return new MeteredHttpClient(client, metrics);
+    }
+
+    private static SSLContext serverContext() throws Exception {
+        KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keys.init(keyStore(), PASSWORD);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keys.getKeyManagers(), null, null);
+        return context;
+    }
+
+    private static Tomcat http2Server() throws IOException {
+        Path base = Files.createTempDirectory("fetch-metrics-tomcat");
+        Path keystore = base.resolve("localhost.p12");
+        try (InputStream in = FetchMetricsTest.class.getResourceAsStream("/tls/localhost.p12")) {
+            Files.copy(in, keystore, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(base.toString());
+        Connector connector = new Connector();
+        connector.setPort(0);
+        connector.setScheme("https");
+        connector.setSecure(true);
+        connector.setProperty("SSLEnabled", "true");
+        SSLHostConfig ssl = new SSLHostConfig();
+        SSLHostConfigCertificate certificate = new SSLHostConfigCertificate(ssl, SSLHostConfigCertificate.Type.RSA);
+        certificate.setCertificateKeystoreFile(keystore.toString());
+        certificate.setCertificateKeystorePassword(new String(PASSWORD));
+        certificate.setCertificateKeystoreType("PKCS12");
+        ssl.addCertificate(certificate);
+        connector.addSslHostConfig(ssl);
+        connector.addUpgradeProtocol(new Http2Protocol());
+        tomcat.setConnector(connector);
+        Context context = tomcat.addContext("", base.toString());
+        Tomcat.addServlet(context, "ok", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.getWriter().write("ok");
+            }
+        });
+        context.addServletMappingDecoded("/*", "ok");
+        return tomcat;
+    }
+
+    private static KeyStore keyStore() throws Exception {
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        try (InputStream in = FetchMetricsTest.class.getResourceAsStream("/tls/localhost.p12")) {
+            store.load(in, PASSWORD);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.crawler.crawl;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The scanner sees response bodies in whatever chunks the network delivers, so every case is
+ * also fed one byte, and a few bytes, at a time and must come out the same.
+ */
+class HtmlLinkScannerTest {
+
+    private static final int[] CHUNKS = {Integer.MAX_VALUE, 1, 2, 3, 7};
+
+    @Test
+    void skipsScriptStyleAndComments() {
+        String html = "<script>var s = '<a href=\"/in-script\">';</script >"
+                + "<STYLE>a[href=\"/in-style\"] {}</style><!-- <a href=\"/in-comment\"> -->"
+                + "<script type=module>if (a </b) {}</SCRIPT><a href=\"/after\">";
+        assertLinks(html, "PAGE /after");
+    }
+
+    @Test
+    void readsTitleAsRawText() {
+        String html = "<html><head><title>Tom &amp; Jerry <a href=\"/in-title\"></title>"
+                + "<meta name=description content=\"Cats &amp; mice\"></head><body><a href=\"/body\">";
+        for (int chunk : CHUNKS) {
+            Recorder recorder = scan(html, chunk, 4096);
+            assertEquals(List.of("PAGE /body"), recorder.links, "chunk " + chunk);
+            assertEquals(List.of("TITLE Tom & Jerry <a href=\"/in-title\">", "DESCRIPTION Cats & mice", "END"),
+                    recorder.metadata, "chunk " + chunk);
+        }
+    }
+
+    @Test
+    void titleIsOrdinaryTextWithoutMetadata() {
+        assertLinks("<title><a href=\"/t\"></title>", "PAGE /t");
+    }
+
+    @Test
+    void decodesCharacterReferencesInAttributes() {
+        assertLinks("<a href=\"/q?a=1&amp;b=2&#38;c=&#x33;&quot;\">", "PAGE /q?a=1&b=2&c=3\"");
+        // Unknown or unterminated references stay as written.
+        assertLinks("<a href=\"/q?a=1&copy=2&amp\">", "PAGE /q?a=1&copy=2&amp");
+    }
+
+    @Test
+    void readsUnquotedSingleQuotedAndSpacedAttributes() {
+        assertLinks("<a href=/one class=x><A HREF='/two'><a class=\"x\" href = \"/three\" ><a data-href=\"/no\" href=/four>",
+                "PAGE /one", "PAGE /two", "PAGE /three", "PAGE /four");
+    }
+
+    @Test
+    void decodesMultiByteUtf8SplitAcrossChunks() {
+        assertLinks("<a href=\"/café/日本/😀\">", "PAGE /café/日本/😀");
+    }
+
+    @Test
+    void tellsPagesFromSubResources() {
+        assertLinks("<a href=/a><area href=/area><iframe src=/frame></iframe><link rel=stylesheet href=/s.css>"
+                        + "<img src=/i.png><script src=/j.js></script><video src=/v.mp4></video>",
+                "PAGE /a", "PAGE /area", "PAGE /frame", "RESOURCE /s.css", "RESOURCE /i.png", "RESOURCE /j.js",
+                "RESOURCE /v.mp4");
+    }
+
+    @Test
+    void reportsBaseHref() {
+        assertLinks("<base href=\"/static/\"><a href=\"x\">", "BASE /static/", "PAGE x");
+    }
+
+    @Test
+    void reportsNofollowLinksLikeAnyOther() {
+        // rel=nofollow is a ranking hint about the target, not a crawl directive; only a robots
+        // meta of nofollow stops the page's links from being followed.
+        assertLinks("<a rel=\"nofollow\" href=\"/sponsored\"><a href=\"/plain\">", "PAGE /sponsored", "PAGE /plain");
+        Recorder recorder = scan("<head><meta name=\"ROBOTS\" content=\"noindex, nofollow\"></head>", Integer.MAX_VALUE, 4096);
+        assertEquals(List.of("ROBOTS noindex, nofollow", "END"), recorder.metadata);
+    }
+
+    @Test
+    void directBuffersScanLikeHeapBuffers() {
+        byte[] bytes = "<a href=\"/é\"><img src=/i.png>".getBytes(StandardCharsets.UTF_8);
+        Recorder recorder = new Recorder();
+        HtmlLinkScanner scanner = new HtmlLinkScanner(recorder);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        scanner.feed(direct);
+        assertEquals(List.of("PAGE /é", "RESOURCE /i.png"), recorder.links);
+        assertEquals(bytes.length, scanner.bytesScanned());
+    }
+
+    private static void assertLinks(String html, String... expected) {
+        for (int chunk : CHUNKS) {
+            assertEquals(List.of(expected), scan(html, chunk, 0).links, "chunk " + chunk);
+        }
+    }
+
+    private static Recorder scan(String html, int chunk, long metadataByteCap) {
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        Recorder recorder = new Recorder();
+        HtmlLinkScanner scanner = new HtmlLinkScanner(recorder);
+        scanner.reset(recorder, true, metadataByteCap, null);
+        for (int from = 0; from < bytes.length; from += chunk) {
+            scanner.feed(ByteBuffer.wrap(bytes, from, Math.min(chunk, bytes.length - from)));
+        }
+        return recorder;
+    }
+
+    private static final class Recorder implements HtmlLinkScanner.Listener {
+        final List<String> links = new ArrayList<>();
+        final List<String> metadata = new ArrayList<>();
+
+        @Override
+        public void onLink(CharSequence url, HtmlLinkScanner.LinkKind kind) {
+            links.add(kind + " " + url);
+        }
+
+        @Override
+        public void onBase(CharSequence url) {
+            links.add("BASE " + url);
+        }
+
+        @Override
+        public void onMetadata(HtmlLinkScanner.MetaField field, String key, String value) {
+            metadata.add(field + (key != null ? " " + key : "") + " " + value);
+        }
+
+        @Override
+        public void onHeadEnd() {
+            metadata.add("END");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.crawler.service;
+
+import com.example.crawler.crawl.PageStats;
+import com.example.crawler.model.AnalyticsResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bucket rows written by {@link JobAnalytics#add} on H2, the database of the default and
+ * cluster profiles: first flushes create the rows, later ones and other nodes' add to them.
+ */
+@DataJpaTest
+@Import(JobAnalytics.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JobAnalyticsTest {
+
+    @Autowired
+    private JobAnalytics jobAnalytics;
+
+    @Test
+    void flushesAddUpAcrossRunsAndNodes() {
+        String jobId = UUID.randomUUID().toString();
+        long createdAt = System.currentTimeMillis();
+        PageStats nodeA = new PageStats(createdAt);
+        PageStats nodeB = new PageStats(createdAt);
+
+        nodeA.record("https://example.com/", 0, 200, "text/html; charset=utf-8", 100);
+        nodeA.record("https://example.com/gone", 1, 404, "text/html", 20);
+        nodeA.flush(delta -> jobAnalytics.add(jobId, delta));
+
+        nodeA.record("https://example.com/a.css", 1, 200, "text/css", 50);
+        nodeB.record("https://example.com/missing", 2, 404, "text/plain", 30);
+        nodeB.record("https://example.com/down", 1, 0, null, 0);
+        nodeA.flush(delta -> jobAnalytics.add(jobId, delta));
+        nodeB.flush(delta -> jobAnalytics.add(jobId, delta));
+
+        AnalyticsResponse analytics = jobAnalytics.analytics(jobId, null);
+        assertEquals(Map.of("0", 1L, "1", 3L, "2", 1L), analytics.getDepthHistogram());
+        assertEquals(Map.of("HTML", 2L, "CSS", 1L, "Text", 1L, "None", 1L), analytics.getMimeHistogram());
+        assertEquals(Map.of("0", 1L, "200", 2L, "404", 2L), analytics.getStatusCounts());
+        // Each status keeps the example of its first flush.
+        AnalyticsResponse.StatusRow notFound = analytics.getStatusRows().stream()
+                .filter(row -> row.getStatus() == 404).findFirst().orElseThrow();
+        assertEquals("https://example.com/gone", notFound.getUrl());
+        assertEquals(1, notFound.getDepth());
+        assertEquals(Map.of("t0", 40), analytics.getResponseTimeline());
+    }
+
+    @Test
+    void pendingIncrementsAreAddedToStoredRows() {
+        String jobId = UUID.randomUUID().toString();
+        PageStats stats = new PageStats(System.currentTimeMillis());
+        stats.record("https://example.com/", 0, 200, "text/html", 10);
+        stats.flush(delta -> jobAnalytics.add(jobId, delta));
+        stats.record("https://example.com/b", 1, 200, "text/html", 10);
+
+        assertEquals(Map.of("0", 1L), jobAnalytics.analytics(jobId, null).getDepthHistogram());
+        assertEquals(Map.of("0", 1L, "1", 1L), jobAnalytics.analytics(jobId, stats.pending()).getDepthHistogram());
+        assertTrue(jobAnalytics.analytics(UUID.randomUUID().toString(), null).getStatusCounts().isEmpty());
+    }
+}
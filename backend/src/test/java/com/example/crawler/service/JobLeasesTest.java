@@ -0,0 +1,165 @@
+package com.example.crawler.service;
+
+import com.example.crawler.entity.CrawlJob;
+import com.example.crawler.repository.CrawlJobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two nodes' {@link JobLeases} claiming from one H2 database, as two backends would from one
+ * PostgreSQL. Each call runs in its own transaction, like it does from the scheduler.
+ */
+@DataJpaTest(properties = "crawler.lease.ttl-ms=30000")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JobLeasesTest {
+
+    @TestConfiguration
+    static class Nodes {
+        @Bean
+        JobLeases nodeA(CrawlJobRepository jobRepository) {
+            return new JobLeases(jobRepository, "node-a");
+        }
+
+        @Bean
+        JobLeases nodeB(CrawlJobRepository jobRepository) {
+            return new JobLeases(jobRepository, "node-b");
+        }
+    }
+
+    @Autowired
+    private CrawlJobRepository jobRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    @Qualifier("nodeA")
+    private JobLeases nodeA;
+
+    @Autowired
+    @Qualifier("nodeB")
+    private JobLeases nodeB;
+
+    @BeforeEach
+    void clean() {
+        jobRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentClaimsNeverShareAJob() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ids.add(jobRepository.save(job("QUEUED")).getId());
+        }
+
+        CyclicBarrier start = new CyclicBarrier(2);
+        ExecutorService nodes = Executors.newFixedThreadPool(2);
+        try {
+            Future<Set<String>> a = nodes.submit(claimAll(nodeA, start));
+            Future<Set<String>> b = nodes.submit(claimAll(nodeB, start));
+            Set<String> claimedByA = a.get();
+            Set<String> claimedByB = b.get();
+
+            Set<String> both = new HashSet<>(claimedByA);
+            both.retainAll(claimedByB);
+            assertTrue(both.isEmpty(), "claimed by both nodes: " + both);
+            assertEquals(ids.size(), claimedByA.size() + claimedByB.size());
+            for (CrawlJob job : jobRepository.findAllById(ids)) {
+                String holder = claimedByA.contains(job.getId()) ? "node-a" : "node-b";
+                assertEquals(holder, job.getLeaseOwner());
+            }
+        } finally {
+            nodes.shutdownNow();
+        }
+    }
+
+    @Test
+    void expiredLeaseIsTakenOverByTheOtherNode() {
+        String id = jobRepository.save(job("QUEUED")).getId();
+        assertEquals(List.of(id), ids(nodeA.claim(4, Set.of())));
+        jdbcTemplate.update("update crawl_job set status = 'RUNNING' where id = ?", id);
+
+        // Held by a live node: not claimable, not taken over.
+        assertTrue(nodeB.claim(4, Set.of()).isEmpty());
+        assertTrue(nodeB.takeOver(List.of(id)).isEmpty());
+
+        // Node A stops renewing.
+        expire(id);
+        assertEquals(List.of(id), ids(nodeB.claim(4, Set.of())));
+        CrawlJob renewed = nodeA.renew(List.of(id)).get(0);
+        assertEquals("node-b", renewed.getLeaseOwner());
+        assertTrue(nodeA.claim(4, Set.of()).isEmpty());
+        assertEquals(List.of(id), ids(nodeB.claim(4, Set.of())));
+    }
+
+    @Test
+    void partitionedJobIsTakenOverOnlyAfterItsLeaseExpired() {
+        CrawlJob job = job("RUNNING");
+        job.setPartitioned(true);
+        String id = jobRepository.save(job).getId();
+        assertEquals(List.of(id), ids(nodeA.claim(4, Set.of())));
+
+        assertTrue(nodeB.takeOver(List.of(id)).isEmpty());
+
+        expire(id);
+        assertEquals(List.of(id), nodeB.takeOver(List.of(id)));
+        assertTrue(nodeA.takeOver(List.of(id)).isEmpty());
+        assertEquals("node-b", jobRepository.findById(id).orElseThrow().getLeaseOwner());
+    }
+
+    private void expire(String id) {
+        jdbcTemplate.update("update crawl_job set lease_expires_at = ? where id = ?",
+                Timestamp.from(Instant.now().minusSeconds(1)), id);
+    }
+
+    // Claim in small rounds until nothing is left, keeping what this node already holds.
+    private static Callable<Set<String>> claimAll(JobLeases node, CyclicBarrier start) {
+        return () -> {
+            start.await();
+            Set<String> held = new HashSet<>();
+            List<CrawlJob> claimed;
+            do {
+                claimed = node.claim(3, held);
+                for (CrawlJob job : claimed) {
+                    assertTrue(held.add(job.getId()), "claimed twice by " + node.nodeId());
+                }
+            } while (!claimed.isEmpty());
+            return held;
+        };
+    }
+
+    private static List<String> ids(List<CrawlJob> jobs) {
+        return jobs.stream().map(CrawlJob::getId).toList();
+    }
+
+    private static CrawlJob job(String status) {
+        CrawlJob job = new CrawlJob();
+        job.setUrl("https://example.com/");
+        job.setStatus(status);
+        job.setOwner("alice");
+        return job;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.crawler.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * What a page's outlinks are: its distinct page links, resolved against the page or its
+ * {@code <base>}, without sub-resources, and none after a robots meta of nofollow.
+ */
+class PageParserTest {
+
+    private final PageParser parser = new PageParser();
+
+    @Test
+    void keepsDistinctPageLinksOnly() {
+        parse("https://example.com/dir/page", "<a href=\"next\"><a href=\"next#top\"><a href=\"../up\">"
+                + "<img src=\"i.png\"><script src=\"/j.js\"></script><link rel=stylesheet href=\"/s.css\">"
+                + "<iframe src=\"/frame\"></iframe><a href=\"mailto:someone@example.com\">");
+        assertEquals("https://example.com/dir/next\nhttps://example.com/up\nhttps://example.com/frame\n",
+                parser.outlinks());
+        assertEquals(5, parser.linksFound());
+    }
+
+    @Test
+    void resolvesAgainstTheDocumentBase() {
+        parse("https://example.com/blog/post", "<head><base href=\"/static/\"></head>"
+                + "<a href=\"a.html\"><a href=\"https://other.example/x\">");
+        assertEquals("https://example.com/static/a.html\nhttps://other.example/x\n", parser.outlinks());
+    }
+
+    @Test
+    void robotsNofollowDropsTheLinksAfterIt() {
+        parse("https://example.com/", "<head><meta name=\"robots\" content=\"noindex, nofollow\"></head>"
+                + "<a href=\"/a\"><a rel=\"nofollow\" href=\"/b\">");
+        assertEquals("", parser.outlinks());
+        assertEquals(2, parser.linksFound());
+        assertEquals("noindex, nofollow", parser.metadata().robots());
+    }
+
+    @Test
+    void relNofollowLinksAreStillFollowed() {
+        parse("https://example.com/", "<a rel=\"nofollow\" href=\"/ad\">");
+        assertEquals("https://example.com/ad\n", parser.outlinks());
+    }
+
+    @Test
+    void collectsNothingWithLinksOff() {
+        parser.reset("https://example.com/", false, 0);
+        parser.scanner.feed(ByteBuffer.wrap("<a href=\"/a\">".getBytes(StandardCharsets.UTF_8)));
+        assertNull(parser.outlinks());
+        assertEquals(0, parser.linksFound());
+    }
+
+    private void parse(String url, String html) {
+        parser.reset(url, true, 4096);
+        parser.scanner.feed(ByteBuffer.wrap(html.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.crawler.service;
+
+import com.example.crawler.crawl.AimdPolicy;
+import com.example.crawler.crawl.CrawlTask;
+import com.example.crawler.crawl.DiskFrontier;
+import com.example.crawler.crawl.HandoffBatch;
+import com.example.crawler.crawl.NearDuplicateIndex;
+import com.example.crawler.crawl.PageIds;
+import com.example.crawler.crawl.RetryPolicy;
+import com.example.crawler.crawl.SeenUrlSet;
+import com.example.crawler.entity.CrawlJob;
+import com.example.crawler.repository.CrawlHandoffRepository;
+import com.example.crawler.repository.CrawlJobRepository;
+import com.example.crawler.repository.CrawlPartitionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two nodes of one partitioned job, exchanging URLs through one H2 database while both keep
+ * handing off and exchanging concurrently, as they do while crawling. Small batches make
+ * every exchange move several of them.
+ */
+@DataJpaTest(properties = "crawler.partition.batch-size=16")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PartitionExchangeTest {
+
+    private static final int URLS = 2000;
+
+    @TestConfiguration
+    static class Nodes {
+        @Bean
+        CrawlLogWriter crawlLogWriter(JdbcTemplate jdbcTemplate) {
+            return new CrawlLogWriter(jdbcTemplate, 1024, 100, 200, 16);
+        }
+
+        @Bean
+        PageWriter pageWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+            return new PageWriter(jdbcTemplate, transactionManager, 1024, 100, 200);
+        }
+
+        @Bean
+        PartitionExchange nodeA(CrawlHandoffRepository handoffs, CrawlPartitionRepository partitions,
+                                CrawlJobRepository jobs, CrawlLogWriter logWriter) {
+            return new PartitionExchange(handoffs, partitions, jobs, logWriter, new JobLeases(jobs, "node-a"));
+        }
+
+        @Bean
+        PartitionExchange nodeB(CrawlHandoffRepository handoffs, CrawlPartitionRepository partitions,
+                                CrawlJobRepository jobs, CrawlLogWriter logWriter) {
+            return new PartitionExchange(handoffs, partitions, jobs, logWriter, new JobLeases(jobs, "node-b"));
+        }
+    }
+
+    @Autowired
+    private CrawlJobRepository jobRepository;
+
+    @Autowired
+    private CrawlHandoffRepository handoffRepository;
+
+    @Autowired
+    private PageWriter pageWriter;
+
+    @Autowired
+    @Qualifier("nodeA")
+    private PartitionExchange nodeA;
+
+    @Autowired
+    @Qualifier("nodeB")
+    private PartitionExchange nodeB;
+
+    @Test
+    void handoffsAreDeliveredExactlyOnce() throws Exception {
+        CrawlJob job = new CrawlJob();
+        job.setUrl("https://h0.example/");
+        job.setStatus("RUNNING");
+        job.setPartitioned(true);
+        job.setMaxDepth(2);
+        job.setSpeed("fast");
+        job = jobRepository.save(job);
+        String jobId = job.getId();
+
+        Partition partitionA = nodeA.join(jobId, false);
+        Partition partitionB = nodeB.join(jobId, false);
+        CrawlRun runA = run(job, partitionA);
+        CrawlRun runB = run(job, partitionB);
+        // Node A joined first; its next exchange finds node B's row and rebuilds its ring.
+        nodeA.exchange(jobId);
+        nodeB.exchange(jobId);
+        assertEquals(partitionA.ring().nodes(), partitionB.ring().nodes());
+
+        List<String> hostsOfA = new ArrayList<>();
+        List<String> hostsOfB = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String host = "h" + i + ".example";
+            assertNotEquals(partitionA.owns(host), partitionB.owns(host), host);
+            (partitionA.owns(host) ? hostsOfA : hostsOfB).add(host);
+        }
+        assertTrue(!hostsOfA.isEmpty() && !hostsOfB.isEmpty());
+
+        AtomicBoolean sending = new AtomicBoolean(true);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> work = List.of(
+                    threads.submit(() -> handOff(partitionA, hostsOfB)),
+                    threads.submit(() -> handOff(partitionB, hostsOfA)),
+                    threads.submit(() -> exchangeUntil(nodeA, jobId, sending)),
+                    threads.submit(() -> exchangeUntil(nodeB, jobId, sending)));
+            work.get(0).get(30, TimeUnit.SECONDS);
+            work.get(1).get(30, TimeUnit.SECONDS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while ((partitionA.receivedCount() < URLS || partitionB.receivedCount() < URLS)
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            sending.set(false);
+            work.get(2).get(30, TimeUnit.SECONDS);
+            work.get(3).get(30, TimeUnit.SECONDS);
+        } finally {
+            threads.shutdownNow();
+        }
+        // A few more rounds: nothing may arrive that was not sent.
+        for (int i = 0; i < 3; i++) {
+            nodeA.exchange(jobId);
+            nodeB.exchange(jobId);
+        }
+
+        assertEquals(URLS, partitionA.sentCount());
+        assertEquals(URLS, partitionB.sentCount());
+        assertEquals(URLS, partitionA.receivedCount());
+        assertEquals(URLS, partitionB.receivedCount());
+        assertEquals(0, handoffRepository.countByJobId(jobId));
+        assertEquals(URLS, runA.queued());
+        assertEquals(URLS, runB.queued());
+
+        runA.close();
+        runB.close();
+        nodeA.leave(jobId, false);
+        nodeB.leave(jobId, false);
+        nodeA.clear(jobId);
+    }
+
+    private CrawlRun run(CrawlJob job, Partition partition) throws Exception {
+        AtomicInteger reserved = new AtomicInteger();
+        CrawlRun run = new CrawlRun(job, 10_000, 64,
+                new DiskFrontier(Files.createTempDirectory("partition-exchange"), job.getMaxDepth() + 1, 16, 1 << 20),
+                new SeenUrlSet(4 * URLS), new NearDuplicateIndex(3), new PageIds(64, reserved::getAndAdd),
+                new LinkBuffer(job.getId(), null, 1024), pageWriter, AimdPolicy.DISABLED, RetryPolicy.NONE,
+                partition, null, 5000);
+        partition.attach(run);
+        return run;
+    }
+
+    // Distinct URLs spread over the other node's hosts, each handed off once.
+    private static Void handOff(Partition partition, List<String> hosts) {
+        for (int i = 0; i < URLS; i++) {
+            String host = hosts.get(i % hosts.size());
+            CrawlTask task = new CrawlTask("https://" + host + "/" + partition.nodeId() + "/" + i, host, 1);
+            partition.handOff(new HandoffBatch.Entry(task, -1, -1));
+        }
+        return null;
+    }
+
+    private static Void exchangeUntil(PartitionExchange node, String jobId, AtomicBoolean sending)
+            throws InterruptedException {
+        while (sending.get()) {
+            node.exchange(jobId);
+            Thread.sleep(1);
+        }
+        return null;
+    }
+}
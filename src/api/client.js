@@ -76,9 +76,15 @@ export function fetchLogs(jobId) {
   return request(`/logs${q}`);
 }
 
-export function fetchGraph(jobId) {
-  const q = jobId ? `?jobId=${encodeURIComponent(jobId)}` : '';
-  return request(`/graph${q}`);
+// view: optional { focus, hops, groupBy, depth, limit }, see GET /api/crawl/graph.
+export function fetchGraph(jobId, view = {}) {
+  const params = new URLSearchParams();
+  if (jobId) params.set('jobId', jobId);
+  Object.entries(view).forEach(([key, value]) => {
+    if (value !== undefined && value !== null) params.set(key, value);
+  });
+  const q = params.toString();
+  return request(`/graph${q ? `?${q}` : ''}`);
 }
 
 export function fetchAnalytics(jobId) {
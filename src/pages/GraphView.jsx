@@ -1,27 +1,33 @@
 import React, { useEffect, useMemo, useState } from 'react';
-import { forceSimulation, forceManyBody, forceCenter, forceLink } from 'd3-force';
 import { useSearchParams } from 'react-router-dom';
 import { fetchGraph } from '../api/client';
 
-function layoutGraph(width, height, inputNodes, inputLinks) {
-  const nodes = inputNodes.map((n) => ({ ...n }));
-  const links = inputLinks.map((l) => ({ ...l }));
+// Nodes arrive positioned by the backend layout; scale them into the view box.
+function fitGraph(width, height, inputNodes, inputLinks) {
+  const pad = 40;
+  const xs = inputNodes.map((n) => n.x);
+  const ys = inputNodes.map((n) => n.y);
+  const minX = Math.min(...xs);
+  const minY = Math.min(...ys);
+  const spanX = Math.max(...xs) - minX || 1;
+  const spanY = Math.max(...ys) - minY || 1;
+  const scale = Math.min((width - 2 * pad) / spanX, (height - 2 * pad) / spanY);
+  const offsetX = (width - spanX * scale) / 2;
+  const offsetY = (height - spanY * scale) / 2;
 
-  const sim = forceSimulation(nodes)
-    .force(
-      'link',
-      forceLink(links)
-        .id((d) => d.id)
-        .distance(110)
-    )
-    .force('charge', forceManyBody().strength(-180))
-    .force('center', forceCenter(width / 2, height / 2))
-    .stop();
-
-  // run a few ticks synchronously just for initial layout
-  for (let i = 0; i < 80; i += 1) {
-    sim.tick();
-  }
+  const byId = new Map();
+  const nodes = inputNodes.map((n) => {
+    const node = {
+      ...n,
+      x: offsetX + (n.x - minX) * scale,
+      y: offsetY + (n.y - minY) * scale
+    };
+    byId.set(node.id, node);
+    return node;
+  });
+  const links = inputLinks
+    .map((l) => ({ ...l, source: byId.get(l.source), target: byId.get(l.target) }))
+    .filter((l) => l.source && l.target);
 
   return { nodes, links };
 }
@@ -68,8 +74,8 @@ function GraphView() {
 
   const { nodes, links } = useMemo(
     () =>
-      rawNodes.length && rawLinks.length
-        ? layoutGraph(size.width, size.height, rawNodes, rawLinks)
+      rawNodes.length
+        ? fitGraph(size.width, size.height, rawNodes, rawLinks)
         : { nodes: [], links: [] },
     [rawNodes, rawLinks, size.width, size.height]
   );
@@ -100,8 +106,8 @@ function GraphView() {
               color: 'var(--color-text-muted)'
             }}
           >
-            Visualizes internal links as a force-directed graph. When wired up,
-            each node corresponds to a crawled URL.
+            Visualizes links as a force-directed graph laid out by the backend.
+            Each node corresponds to a crawled URL.
           </div>
         </div>
         <div
@@ -187,25 +193,17 @@ function GraphView() {
             </filter>
           </defs>
 
-          {links.map((l) => {
-            // After forceLink processing, source/target may be node objects or string IDs
-            const source = typeof l.source === 'object' ? l.source : nodes.find((n) => n.id === l.source);
-            const target = typeof l.target === 'object' ? l.target : nodes.find((n) => n.id === l.target);
-            if (!source || !target || !source.x || !source.y || !target.x || !target.y) return null;
-            const sourceId = typeof l.source === 'object' ? l.source.id : l.source;
-            const targetId = typeof l.target === 'object' ? l.target.id : l.target;
-            return (
-              <line
-                key={`${sourceId}-${targetId}`}
-                x1={source.x}
-                y1={source.y}
-                x2={target.x}
-                y2={target.y}
-                stroke="rgba(148,163,184,0.7)"
-                strokeWidth={1.2}
-              />
-            );
-          })}
+          {links.map((l) => (
+            <line
+              key={`${l.source.id}-${l.target.id}`}
+              x1={l.source.x}
+              y1={l.source.y}
+              x2={l.target.x}
+              y2={l.target.y}
+              stroke="rgba(148,163,184,0.7)"
+              strokeWidth={1.2}
+            />
+          ))}
 
           {nodes.map((n) => (
             <g key={n.id}>